@@ -0,0 +1,144 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.Random;
+
+import android.opengl.Matrix;
+
+// Each AffineMath operation next to the android.opengl.Matrix calls it
+// replaces, on random transforms. AffineMathTest checks that the results
+// agree.
+public class AffineMathBenchmark extends Benchmark {
+
+	public static final int MULTIPLY_MM = 0;
+	public static final int MULTIPLY_AFFINE = 1;
+	public static final int MULTIPLY_PROJ_AFFINE = 2;
+	public static final int INVERT_TRANSPOSE = 3;
+	public static final int NORMAL_MATRIX = 4;
+	public static final int NORMAL_MATRIX_RIGID = 5;
+	public static final int INVERT_M = 6;
+	public static final int INVERT_RIGID = 7;
+	public static final int TRS_MATRIX = 8;
+	public static final int TRS_AFFINE = 9;
+	public static final int BATCH_MM = 10;
+	public static final int BATCH_AFFINE = 11;
+
+	private static final String[] NAMES = {
+		"matrix: Matrix.multiplyMM",
+		"matrix: AffineMath.multiplyAffine",
+		"matrix: AffineMath.multiplyProjAffine",
+		"matrix: Matrix.invertM + transposeM",
+		"matrix: AffineMath.normalMatrix",
+		"matrix: AffineMath.normalMatrixRigid",
+		"matrix: Matrix.invertM",
+		"matrix: AffineMath.invertRigid",
+		"matrix: Matrix identity/translate/rotate/scale",
+		"matrix: AffineMath.setTRS",
+		"matrix: Matrix.multiplyMM x 64",
+		"matrix: AffineMath.multiplyAffineBatch x 64",
+	};
+
+	// matrices cycled through, so each call sees different input
+	private static final int MATRICES = 64;
+
+	private final int mOp;
+	private final float[] mProj = new float[16];
+	private final float[] mInputs = new float[MATRICES * 16];
+	private final float[] mParams = new float[MATRICES * 10];
+	private final float[] mResults = new float[MATRICES * 16];
+	private final float[] mTemp = new float[16];
+	private int mNext;
+
+	public AffineMathBenchmark(int op) {
+		super(NAMES[op]);
+		mOp = op;
+	}
+
+	@Override
+	public void setup() {
+		Random random = new Random(7);
+		Matrix.frustumM(mProj, 0, -1.7f, 1.7f, -1, 1, 1, 20);
+		boolean rigid = mOp == NORMAL_MATRIX_RIGID || mOp == INVERT_M || mOp == INVERT_RIGID;
+		for (int k = 0; k < MATRICES; k++) {
+			float[] p = mParams;
+			int o = k * 10;
+			p[o] = random.nextFloat() * 20 - 10;
+			p[o + 1] = random.nextFloat() * 20 - 10;
+			p[o + 2] = random.nextFloat() * 20 - 10;
+			p[o + 3] = random.nextFloat() * 720 - 360;
+			// a quarter of the rotations are about a coordinate axis
+			int axis = random.nextInt(8);
+			p[o + 4] = axis == 0 ? 1 : random.nextFloat() * 2 - 1;
+			p[o + 5] = axis == 1 ? 1 : (axis == 0 ? 0 : random.nextFloat() * 2 - 1);
+			p[o + 6] = axis <= 1 ? 0 : random.nextFloat() * 2 - 1;
+			p[o + 7] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			p[o + 8] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			p[o + 9] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			trsMatrix(mInputs, k * 16, p, o);
+		}
+	}
+
+	// the reference: how the renderer used to compose a transform
+	private static void trsMatrix(float[] m, int offset, float[] p, int o) {
+		Matrix.setIdentityM(m, offset);
+		Matrix.translateM(m, offset, p[o], p[o + 1], p[o + 2]);
+		Matrix.rotateM(m, offset, p[o + 3], p[o + 4], p[o + 5], p[o + 6]);
+		Matrix.scaleM(m, offset, p[o + 7], p[o + 8], p[o + 9]);
+	}
+
+	@Override
+	public int run() {
+		int k = mNext;
+		mNext = (k + 1) & (MATRICES - 1);
+		int a = k * 16;
+		int b = ((k + 1) & (MATRICES - 1)) * 16;
+		float[] in = mInputs;
+		float[] out = mResults;
+
+		switch (mOp) {
+		case MULTIPLY_MM:
+			Matrix.multiplyMM(out, a, in, a, in, b);
+			break;
+		case MULTIPLY_AFFINE:
+			AffineMath.multiplyAffine(out, a, in, a, in, b);
+			break;
+		case MULTIPLY_PROJ_AFFINE:
+			AffineMath.multiplyProjAffine(out, a, mProj, 0, in, b);
+			break;
+		case INVERT_TRANSPOSE:
+			Matrix.invertM(mTemp, 0, in, a);
+			Matrix.transposeM(out, a, mTemp, 0);
+			break;
+		case NORMAL_MATRIX:
+			AffineMath.normalMatrix(out, a, in, a);
+			break;
+		case NORMAL_MATRIX_RIGID:
+			AffineMath.normalMatrixRigid(out, a, in, a);
+			break;
+		case INVERT_M:
+			Matrix.invertM(out, a, in, a);
+			break;
+		case INVERT_RIGID:
+			AffineMath.invertRigid(out, a, in, a);
+			break;
+		case TRS_MATRIX:
+			trsMatrix(out, a, mParams, k * 10);
+			break;
+		case TRS_AFFINE:
+			setTRS(out, a, mParams, k * 10);
+			break;
+		case BATCH_MM:
+			for (int i = 0; i < MATRICES; i++)
+				Matrix.multiplyMM(out, i * 16, in, a, in, i * 16);
+			break;
+		default:
+			AffineMath.multiplyAffineBatch(out, in, a, in, MATRICES);
+			break;
+		}
+		return Float.floatToIntBits(out[a + 12]);
+	}
+
+	private static void setTRS(float[] m, int offset, float[] p, int o) {
+		AffineMath.setTRS(m, offset, p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4], p[o + 5], p[o + 6],
+				p[o + 7], p[o + 8], p[o + 9]);
+	}
+}
@@ -0,0 +1,39 @@
+package graphics.bradley.androidglviewer;
+
+// One measured operation, run over and over by BenchmarkRunner. run() must
+// return something computed from the work it did, which the runner folds
+// into a sink, so the JIT cannot throw the work away. When that is only a
+// size or a count the JIT could work out without doing the rest, run()
+// also passes what it built to consume().
+public abstract class Benchmark {
+
+	// written, never read; a volatile store makes the object escape
+	private static volatile Object sConsumed;
+
+	private final String mName;
+
+	protected Benchmark(String name) {
+		mName = name;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	// Called once before warming up; not measured.
+	public void setup() {
+	}
+
+	// Input consumed by one run(), for benchmarks that stream through data;
+	// the runner then also reports MB/s.
+	public long getBytesPerOp() {
+		return 0;
+	}
+
+	public abstract int run();
+
+	// JMH's Blackhole.consume(), more or less: result has to exist in full.
+	protected static void consume(Object result) {
+		sConsumed = result;
+	}
+}
@@ -0,0 +1,348 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Runs the CPU-side benchmarks on a plain JVM, JMH style: each one is warmed
+// up for a few fixed-time iterations, then measured for a few more, and
+// reported as throughput with its spread plus heap bytes allocated and GCs
+// run per operation. Use bench/run.sh, which builds everything, e.g.
+//
+//     bench/run.sh -o before.csv              # record a baseline
+//     bench/run.sh -b before.csv sphere       # compare the sphere ones to it
+//
+// Options:
+//     -w N        warmup iterations (default 5)
+//     -i N        measured iterations (default 5)
+//     -t MS       length of one iteration (default 500)
+//     -f N        fresh JVMs per benchmark (default 1); 0 runs them all here
+//     -o FILE     write the results as CSV
+//     -b FILE     show the change in throughput against an earlier CSV
+//     anything else only runs the benchmarks whose name contains it
+//
+// Each benchmark gets a JVM of its own by default, because in a shared one
+// the JIT's profile of whatever ran before (the run() call site here turns
+// megamorphic, for a start) changes how the next one is compiled, and so
+// its score. With several forks the error is the spread between them,
+// which also covers compilation that goes differently from run to run.
+//
+// What this does not do, unlike JMH: there is no per-invocation timing or
+// sampling mode, no control over inlining of the harness itself, and only
+// throughput is measured. run() results are folded into a sink and
+// Benchmark.consume() makes built objects escape, which keeps the work
+// from being optimized away, but a benchmark whose input the JIT can see
+// to be constant may still have part of it folded; inputs are kept in
+// fields and cycled for that reason. Numbers are for comparing changes on
+// one machine, not for absolute claims about a device.
+public class BenchmarkRunner {
+
+	private static int sWarmups = 5;
+	private static int sIterations = 5;
+	private static long sIterationNanos = 500 * 1000000L;
+	private static int sForks = 1;
+
+	// every result folds into this so the JIT keeps the work
+	private static volatile int sSink;
+
+	static List<Benchmark> all() {
+		List<Benchmark> list = new ArrayList<Benchmark>();
+		list.add(new SphereBenchmark(10, 20, false));
+		list.add(new SphereBenchmark(30, 60, false));
+		list.add(new SphereBenchmark(100, 200, false));
+		list.add(new SphereBenchmark(100, 200, true));
+		list.add(new SphereBenchmark(300, 300, false));
+		list.add(new SphereBenchmark(300, 300, true));
+		list.add(new MeshFileBenchmark(100, 200));
+		list.add(new MeshFileBenchmark(300, 300));
+		list.add(new ModelParseBenchmark(ModelParseBenchmark.OBJ, 200, 400));
+		list.add(new ModelParseBenchmark(ModelParseBenchmark.PLY, 200, 400));
+		list.add(new SimplifyBenchmark(200, 400));
+		list.add(new VertexCacheBenchmark(100, 200));
+		list.add(new BufferFillBenchmark(BufferFillBenchmark.FLOAT_BUFFER));
+		list.add(new BufferFillBenchmark(BufferFillBenchmark.PACK_FLOAT));
+		list.add(new BufferFillBenchmark(BufferFillBenchmark.PACK_UNIT));
+		list.add(new CameraBenchmark(false));
+		list.add(new CameraBenchmark(true));
+		for (int op = 0; op <= AffineMathBenchmark.BATCH_AFFINE; op++)
+			list.add(new AffineMathBenchmark(op));
+		list.add(new TransformBenchmark(TransformBenchmark.PER_OBJECT));
+		list.add(new TransformBenchmark(TransformBenchmark.SCENE_STATIC));
+		list.add(new TransformBenchmark(TransformBenchmark.SCENE_MOVING));
+		list.add(new RenderQueueBenchmark(100));
+		list.add(new RenderQueueBenchmark(1000));
+		list.add(new RenderQueueBenchmark(16000));
+		list.add(new FrameBenchmark(false));
+		list.add(new FrameBenchmark(true));
+		list.add(new ResumeBenchmark(false));
+		list.add(new ResumeBenchmark(true));
+		return list;
+	}
+
+	public static void main(String[] args) throws IOException {
+		String output = null;
+		String baseline = null;
+		String exact = null;
+		List<String> filters = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-w"))
+				sWarmups = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-i"))
+				sIterations = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-t"))
+				sIterationNanos = Long.parseLong(args[++i]) * 1000000L;
+			else if (args[i].equals("-f"))
+				sForks = Integer.parseInt(args[++i]);
+			else if (args[i].equals("-e"))
+				exact = args[++i];	// a fork's one benchmark
+			else if (args[i].equals("-o"))
+				output = args[++i];
+			else if (args[i].equals("-b"))
+				baseline = args[++i];
+			else
+				filters.add(args[i].toLowerCase(Locale.US));
+		}
+
+		if (exact != null) {
+			// in a fork: measure, and leave the printing to the parent
+			List<Result> results = new ArrayList<Result>();
+			for (Benchmark benchmark : all()) {
+				if (benchmark.getName().equals(exact))
+					results.add(measure(benchmark));
+			}
+			write(output, results);
+			return;
+		}
+
+		Map<String, Result> before = baseline != null ? read(baseline) : new HashMap<String, Result>();
+		if (!allocationSupported())
+			System.out.println("This JVM cannot count allocated bytes; B/op will show as ?");
+
+		List<Result> results = new ArrayList<Result>();
+		System.out.printf("%-44s %14s %12s %12s %10s %9s%n",
+				"Benchmark", "ops/s", "error", "us/op", "B/op", "GC/kop");
+		for (Benchmark benchmark : all()) {
+			if (!matches(benchmark.getName(), filters))
+				continue;
+			Result result = sForks > 0 ? fork(benchmark) : measure(benchmark);
+			results.add(result);
+
+			String change = "";
+			if (benchmark.getBytesPerOp() > 0)
+				change = String.format(Locale.US, "  %.1f MB/s", result.opsPerSecond * benchmark.getBytesPerOp() / 1e6);
+			Result old = before.get(result.name);
+			if (old != null)
+				change += String.format(Locale.US, "  %+6.1f%% vs baseline", 100.0 * (result.opsPerSecond / old.opsPerSecond - 1));
+			System.out.printf(Locale.US, "%-44s %14.1f %12.1f %12.3f %10s %9.3f%s%n",
+					result.name, result.opsPerSecond, result.error, 1e6 / result.opsPerSecond,
+					result.bytesPerOp < 0 ? "?" : String.format(Locale.US, "%.1f", result.bytesPerOp),
+					result.gcsPerOp * 1000, change);
+		}
+
+		if (output != null)
+			write(output, results);
+	}
+
+	private static boolean matches(String name, List<String> filters) {
+		if (filters.isEmpty())
+			return true;
+		for (String filter : filters) {
+			if (name.toLowerCase(Locale.US).contains(filter))
+				return true;
+		}
+		return false;
+	}
+
+	// Measures the benchmark in sForks new JVMs, one after the other, and
+	// combines what they found.
+	private static Result fork(Benchmark benchmark) throws IOException {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		File csv = File.createTempFile("bench", ".csv");
+		try {
+			Result[] forks = new Result[sForks];
+			for (int f = 0; f < sForks; f++) {
+				ProcessBuilder builder = new ProcessBuilder(java,
+						"-cp", System.getProperty("java.class.path"),
+						BenchmarkRunner.class.getName(),
+						"-w", Integer.toString(sWarmups), "-i", Integer.toString(sIterations),
+						"-t", Long.toString(sIterationNanos / 1000000L),
+						"-e", benchmark.getName(), "-o", csv.getPath());
+				builder.inheritIO();
+				int status;
+				try {
+					status = builder.start().waitFor();
+				}
+				catch (InterruptedException e) {
+					throw new IOException("Interrupted while waiting for a fork");
+				}
+				forks[f] = read(csv.getPath()).get(benchmark.getName());
+				if (status != 0 || forks[f] == null)
+					throw new IOException("Fork for \"" + benchmark.getName() + "\" failed");
+			}
+			return combine(forks);
+		}
+		finally {
+			csv.delete();
+		}
+	}
+
+	private static Result combine(Result[] forks) {
+		if (forks.length == 1)
+			return forks[0];
+		Result result = new Result();
+		result.name = forks[0].name;
+		for (Result fork : forks) {
+			result.opsPerSecond += fork.opsPerSecond / forks.length;
+			result.bytesPerOp += fork.bytesPerOp / forks.length;
+			result.gcsPerOp += fork.gcsPerOp / forks.length;
+		}
+		double variance = 0;
+		for (Result fork : forks)
+			variance += (fork.opsPerSecond - result.opsPerSecond) * (fork.opsPerSecond - result.opsPerSecond);
+		variance /= forks.length - 1;
+		result.error = 3.29 * Math.sqrt(variance / forks.length);
+		return result;
+	}
+
+	static class Result {
+		String name;
+		double opsPerSecond;
+		double error;		// half-width of the 99.9% confidence interval
+		double bytesPerOp;	// negative when unknown
+		double gcsPerOp;
+	}
+
+	private static Result measure(Benchmark benchmark) {
+		benchmark.setup();
+
+		// size batches so the clock is read about every 100us
+		int batch = 1;
+		while (batch < (1 << 24)) {
+			long start = System.nanoTime();
+			runBatch(benchmark, batch);
+			if (System.nanoTime() - start >= 100000L)
+				break;
+			batch *= 2;
+		}
+
+		for (int i = 0; i < sWarmups; i++)
+			iteration(benchmark, batch);
+
+		double[] throughput = new double[sIterations];
+		long ops = 0;
+		long gcs = gcCount();
+		long allocated = allocatedBytes();
+		for (int i = 0; i < sIterations; i++) {
+			long start = System.nanoTime();
+			long n = iteration(benchmark, batch);
+			throughput[i] = n * 1e9 / (System.nanoTime() - start);
+			ops += n;
+		}
+		long allocatedAfter = allocatedBytes();
+		gcs = gcCount() - gcs;
+
+		Result result = new Result();
+		result.name = benchmark.getName();
+		double mean = 0;
+		for (int i = 0; i < throughput.length; i++)
+			mean += throughput[i];
+		mean /= throughput.length;
+		double variance = 0;
+		for (int i = 0; i < throughput.length; i++)
+			variance += (throughput[i] - mean) * (throughput[i] - mean);
+		variance = throughput.length > 1 ? variance / (throughput.length - 1) : 0;
+		result.opsPerSecond = mean;
+		result.error = 3.29 * Math.sqrt(variance / throughput.length);
+		result.bytesPerOp = allocated < 0 ? -1 : (double) (allocatedAfter - allocated) / ops;
+		result.gcsPerOp = (double) gcs / ops;
+		return result;
+	}
+
+	// runs whole batches for one iteration's time and returns the ops done
+	private static long iteration(Benchmark benchmark, int batch) {
+		long ops = 0;
+		long end = System.nanoTime() + sIterationNanos;
+		do {
+			runBatch(benchmark, batch);
+			ops += batch;
+		} while (System.nanoTime() < end);
+		return ops;
+	}
+
+	private static void runBatch(Benchmark benchmark, int batch) {
+		int sink = 0;
+		for (int i = 0; i < batch; i++)
+			sink += benchmark.run();
+		sSink += sink;
+	}
+
+	private static long gcCount() {
+		long count = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count += Math.max(0, gc.getCollectionCount());
+		return count;
+	}
+
+	private static boolean allocationSupported() {
+		return allocatedBytes() >= 0;
+	}
+
+	// bytes allocated on the heap by this thread so far, or -1 if the JVM
+	// cannot tell; direct buffers live outside the heap and are not included
+	static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	private static void write(String file, List<Result> results) throws IOException {
+		PrintWriter out = new PrintWriter(new FileWriter(file));
+		try {
+			out.println("benchmark,ops_per_s,error,bytes_per_op,gcs_per_op");
+			for (Result result : results) {
+				out.printf(Locale.US, "\"%s\",%.3f,%.3f,%.3f,%.9f%n", result.name, result.opsPerSecond,
+						result.error, result.bytesPerOp, result.gcsPerOp);
+			}
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static Map<String, Result> read(String file) throws IOException {
+		Map<String, Result> results = new HashMap<String, Result>();
+		BufferedReader in = new BufferedReader(new FileReader(file));
+		try {
+			in.readLine();	// header
+			String line;
+			while ((line = in.readLine()) != null) {
+				int quote = line.lastIndexOf('"');
+				if (!line.startsWith("\"") || quote <= 0)
+					continue;
+				String[] fields = line.substring(quote + 2).split(",");
+				Result result = new Result();
+				result.name = line.substring(1, quote);
+				result.opsPerSecond = Double.parseDouble(fields[0]);
+				result.error = Double.parseDouble(fields[1]);
+				result.bytesPerOp = Double.parseDouble(fields[2]);
+				result.gcsPerOp = Double.parseDouble(fields[3]);
+				results.put(result.name, result);
+			}
+		}
+		finally {
+			in.close();
+		}
+		return results;
+	}
+}
@@ -0,0 +1,84 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+
+// Filling direct buffers with the vertices of a 30x60 sphere, the balls'
+// tessellation: the way the original Sphere did it (one float buffer each
+// for positions, colors and normals) against VertexLayout.pack into an
+// interleaved float or fixed-point layout.
+public class BufferFillBenchmark extends Benchmark {
+
+	public static final int FLOAT_BUFFER = 0;
+	public static final int PACK_FLOAT = 1;
+	public static final int PACK_UNIT = 2;
+
+	private static final String[] NAMES = {
+		"buffer fill, separate FloatBuffers",
+		"buffer fill, VertexLayout float positions",
+		"buffer fill, VertexLayout unit positions",
+	};
+
+	private final int mMethod;
+	private int mVertexCount;
+	private float[] mPositions;
+	private float[] mNormals;
+	private float[] mColors;
+
+	public BufferFillBenchmark(int method) {
+		super(NAMES[method]);
+		mMethod = method;
+	}
+
+	@Override
+	public void setup() {
+		int lats = 30, longs = 60;
+		mVertexCount = (lats + 1) * (longs + 1);
+		mPositions = new float[mVertexCount * 3];
+		mNormals = new float[mVertexCount * 3];
+		mColors = new float[mVertexCount * 4];
+		for (int i = 0; i <= lats; i++) {
+			double lat = Math.PI * (-0.5 + (double) i / lats);
+			for (int c = 0; c <= longs; c++) {
+				double lng = 2 * Math.PI * (c - 1) / longs;
+				int v = i * (longs + 1) + c;
+				mNormals[v * 3] = mPositions[v * 3] = (float) (Math.cos(lng) * Math.cos(lat));
+				mNormals[v * 3 + 1] = mPositions[v * 3 + 1] = (float) (Math.sin(lng) * Math.cos(lat));
+				mNormals[v * 3 + 2] = mPositions[v * 3 + 2] = (float) Math.sin(lat);
+				mColors[v * 4 + 2] = 1;
+				mColors[v * 4 + 3] = 1;
+			}
+		}
+	}
+
+	@Override
+	public int run() {
+		Buffer buffer;
+		switch (mMethod) {
+		case FLOAT_BUFFER:
+			consume(floatBuffer(mPositions));
+			consume(floatBuffer(mColors));
+			buffer = floatBuffer(mNormals);
+			break;
+		case PACK_FLOAT:
+			buffer = VertexLayout.FLOAT_POSITIONS_UNCOLORED.pack(mVertexCount, mPositions, mNormals, null);
+			break;
+		default:
+			buffer = VertexLayout.UNIT_POSITIONS_UNCOLORED.pack(mVertexCount, mPositions, mNormals, null);
+			break;
+		}
+		consume(buffer);
+		return buffer.capacity();
+	}
+
+	private static FloatBuffer floatBuffer(float[] values) {
+		ByteBuffer bb = ByteBuffer.allocateDirect(values.length * 4);
+		bb.order(ByteOrder.nativeOrder());
+		FloatBuffer buffer = bb.asFloatBuffer();
+		buffer.put(values);
+		buffer.position(0);
+		return buffer;
+	}
+}
@@ -0,0 +1,64 @@
+package graphics.bradley.androidglviewer;
+
+import android.opengl.Matrix;
+
+// The camera matrices onDrawFrame computes whenever the view moves: view,
+// the two rotations, MVP, modelview and the normal matrix. Either with
+// general 4x4 operations, as the renderer first did, or with the affine ones
+// MyGL20Renderer.updateCamera uses now.
+public class CameraBenchmark extends Benchmark {
+
+	private final float[] mVMatrix = new float[16];
+	private final float[] mProjMatrix = new float[16];
+	private final float[] mNormalMatrix = new float[16];
+	private final float[] mMVPMatrix = new float[16];
+	private final float[] mRotationMatrixX = new float[16];
+	private final float[] mRotationMatrixY = new float[16];
+	private final float[] mPVMatrix = new float[16];
+	private final float[] mTempMatrix = new float[16];
+	private final float[] mMVMatrix = new float[16];
+
+	private final boolean mAffine;
+	private float mAngle;
+
+	public CameraBenchmark(boolean affine) {
+		super(affine ? "camera matrix chain, affine" : "camera matrix chain, Matrix");
+		mAffine = affine;
+	}
+
+	@Override
+	public void setup() {
+		float ratio = 1280f / 720f;
+		Matrix.frustumM(mProjMatrix, 0, -ratio, ratio, -1, 1, 1, 20);
+	}
+
+	@Override
+	public int run() {
+		// a different angle every time, as while dragging
+		mAngle += 0.5f;
+		if (mAngle > 360)
+			mAngle -= 360;
+		float xAngle = mAngle, yAngle = mAngle * 0.5f, zoom = -6f;
+
+		Matrix.setLookAtM(mVMatrix, 0, 0, 0, zoom, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
+		Matrix.setRotateM(mRotationMatrixX, 0, xAngle, 0, 1.0f, 0f);
+		Matrix.setRotateM(mRotationMatrixY, 0, yAngle, 1.0f, 0, 0);
+		if (mAffine) {
+			AffineMath.multiplyAffine(mTempMatrix, 0, mRotationMatrixX, 0, mRotationMatrixY, 0);
+			AffineMath.multiplyAffine(mMVMatrix, 0, mVMatrix, 0, mTempMatrix, 0);
+			AffineMath.multiplyProjAffine(mMVPMatrix, 0, mProjMatrix, 0, mMVMatrix, 0);
+			AffineMath.normalMatrixRigid(mNormalMatrix, 0, mMVMatrix, 0);
+		}
+		else {
+			Matrix.multiplyMM(mPVMatrix, 0, mProjMatrix, 0, mVMatrix, 0);
+			Matrix.multiplyMM(mTempMatrix, 0, mPVMatrix, 0, mRotationMatrixX, 0);
+			Matrix.multiplyMM(mMVPMatrix, 0, mTempMatrix, 0, mRotationMatrixY, 0);
+			Matrix.multiplyMM(mTempMatrix, 0, mVMatrix, 0, mRotationMatrixX, 0);
+			Matrix.multiplyMM(mMVMatrix, 0, mTempMatrix, 0, mRotationMatrixY, 0);
+			Matrix.invertM(mTempMatrix, 0, mMVMatrix, 0);
+			Matrix.transposeM(mNormalMatrix, 0, mTempMatrix, 0);
+		}
+
+		return Float.floatToIntBits(mMVPMatrix[0] + mNormalMatrix[5]);
+	}
+}
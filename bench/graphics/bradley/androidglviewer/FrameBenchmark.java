@@ -0,0 +1,43 @@
+package graphics.bradley.androidglviewer;
+
+// One whole onDrawFrame on a RecordingBackend: camera, scene update,
+// culling, LOD selection, sorting and command submission through the state
+// cache, without a GPU. Either the camera stays put or it moves every frame.
+public class FrameBenchmark extends Benchmark {
+
+	private final boolean mMoving;
+	private RecordingBackend mBackend;
+	private MyGL20Renderer mRenderer;
+
+	public FrameBenchmark(boolean moving) {
+		super(moving ? "onDrawFrame, camera moving" : "onDrawFrame, camera still");
+		mMoving = moving;
+	}
+
+	@Override
+	public void setup() {
+		mBackend = new RecordingBackend();
+		mRenderer = new MyGL20Renderer(mBackend);
+		// measure the frame, not the wait for the next one
+		mRenderer.getFramePacer().setTargetRate(0);
+		mRenderer.onSurfaceCreated(null, null);
+		mRenderer.onSurfaceChanged(null, 1280, 720);
+		// the spheres are built in the background; wait for all of them
+		while (MeshLoader.getPendingCount() > 0) {
+			MeshLoader.poll();
+			Thread.yield();
+		}
+		mRenderer.onDrawFrame(null);
+	}
+
+	@Override
+	public int run() {
+		if (mMoving) {
+			mRenderer.getCameraInput().rotate(0.5f, 0, System.currentTimeMillis());
+			mRenderer.getCameraInput().publish();
+		}
+		mBackend.beginFrame();
+		mRenderer.onDrawFrame(null);
+		return mBackend.getCommandCount();
+	}
+}
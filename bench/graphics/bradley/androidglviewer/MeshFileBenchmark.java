@@ -0,0 +1,44 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.File;
+import java.io.IOException;
+
+// Loading a sphere mesh from a MeshFile instead of generating it: mapping
+// the file, checking its header and checksum and building the Mesh around
+// views of the mapping. Compare with Sphere.createSphere of the same size.
+public class MeshFileBenchmark extends Benchmark {
+
+	private final int mLats;
+	private final int mLongs;
+	private File mFile;
+
+	public MeshFileBenchmark(int lats, int longs) {
+		super("MeshFile.map sphere " + lats + "x" + longs);
+		mLats = lats;
+		mLongs = longs;
+	}
+
+	@Override
+	public void setup() {
+		try {
+			mFile = File.createTempFile("sphere", ".mesh");
+			mFile.deleteOnExit();
+			MeshFile.write(Sphere.createSphere(1, mLats, mLongs), mFile);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int run() {
+		try {
+			Mesh mesh = MeshFile.map(mFile);
+			consume(mesh);
+			return mesh.getVertexCount() + mesh.getIndexCount();
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
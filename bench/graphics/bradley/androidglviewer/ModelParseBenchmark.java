@@ -0,0 +1,164 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+
+// Parsing a whole model file into chunked meshes, as ModelLoader does but
+// without the GL side: a sphere of lats x longs quads with normals, written
+// as OBJ (v, vn and f p//n lines) or as little-endian binary PLY.
+public class ModelParseBenchmark extends Benchmark {
+
+	public static final int OBJ = 0;
+	public static final int PLY = 1;
+
+	private final int mFormat;
+	private final int mLats;
+	private final int mLongs;
+	private File mFile;
+
+	private final MeshChunker.Listener mDiscard = new MeshChunker.Listener() {
+		public void onChunk(Mesh mesh) {
+		}
+	};
+
+	public ModelParseBenchmark(int format, int lats, int longs) {
+		super((format == OBJ ? "ObjReader " : "PlyReader ") + lats + "x" + longs);
+		mFormat = format;
+		mLats = lats;
+		mLongs = longs;
+	}
+
+	@Override
+	public void setup() {
+		try {
+			mFile = File.createTempFile("model", mFormat == OBJ ? ".obj" : ".ply");
+			mFile.deleteOnExit();
+			write(mFile, mFormat, mLats, mLongs);
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public long getBytesPerOp() {
+		return mFile.length();
+	}
+
+	@Override
+	public int run() {
+		try {
+			return (int) parse(mFile, mFormat, mDiscard).getTriangleCount();
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static MeshChunker parse(File file, int format, MeshChunker.Listener listener) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			MeshChunker chunker;
+			if (format == OBJ) {
+				ObjReader reader = new ObjReader();
+				chunker = new MeshChunker(reader, listener);
+				reader.read(raf.getChannel(), chunker);
+			}
+			else {
+				PlyReader reader = new PlyReader();
+				chunker = new MeshChunker(reader, listener);
+				reader.read(raf.getChannel(), chunker);
+			}
+			return chunker;
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	// a unit sphere with (lats + 1) * longs vertices and 2 * lats * longs
+	// triangles, the poles' degenerate ones included
+	static void write(File file, int format, int lats, int longs) throws IOException {
+		int vertexCount = (lats + 1) * longs;
+		float[] positions = new float[vertexCount * 3];
+		for (int i = 0; i <= lats; i++) {
+			double lat = Math.PI * (-0.5 + (double) i / lats);
+			for (int c = 0; c < longs; c++) {
+				double lng = 2 * Math.PI * c / longs;
+				int v = (i * longs + c) * 3;
+				positions[v] = (float) (Math.cos(lng) * Math.cos(lat));
+				positions[v + 1] = (float) (Math.sin(lng) * Math.cos(lat));
+				positions[v + 2] = (float) Math.sin(lat);
+			}
+		}
+
+		OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+		try {
+			if (format == OBJ)
+				writeObj(out, positions, lats, longs);
+			else
+				writePly(out, positions, lats, longs);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	private static void writeObj(OutputStream stream, float[] positions, int lats, int longs) throws IOException {
+		Writer out = new OutputStreamWriter(stream, "US-ASCII");
+		out.write("# sphere " + lats + "x" + longs + "\n");
+		for (int v = 0; v < positions.length; v += 3)
+			out.write("v " + positions[v] + " " + positions[v + 1] + " " + positions[v + 2] + "\n");
+		for (int v = 0; v < positions.length; v += 3)
+			out.write("vn " + positions[v] + " " + positions[v + 1] + " " + positions[v + 2] + "\n");
+		for (int i = 0; i < lats; i++) {
+			for (int c = 0; c < longs; c++) {
+				// 1-based
+				int a = i * longs + c + 1, b = i * longs + (c + 1) % longs + 1;
+				int d = a + longs, e = b + longs;
+				out.write("f " + a + "//" + a + " " + d + "//" + d + " " + b + "//" + b + "\n");
+				out.write("f " + b + "//" + b + " " + d + "//" + d + " " + e + "//" + e + "\n");
+			}
+		}
+		out.flush();
+	}
+
+	private static void writePly(OutputStream stream, float[] positions, int lats, int longs) throws IOException {
+		int vertexCount = positions.length / 3;
+		String header = "ply\nformat binary_little_endian 1.0\ncomment sphere\n"
+				+ "element vertex " + vertexCount + "\n"
+				+ "property float x\nproperty float y\nproperty float z\n"
+				+ "property float nx\nproperty float ny\nproperty float nz\n"
+				+ "element face " + (2 * lats * longs) + "\n"
+				+ "property list uchar int vertex_indices\nend_header\n";
+		DataOutputStream out = new DataOutputStream(stream);
+		out.write(header.getBytes("US-ASCII"));
+		for (int v = 0; v < positions.length; v += 3) {
+			for (int k = 0; k < 6; k++)
+				out.writeInt(Integer.reverseBytes(Float.floatToIntBits(positions[v + k % 3])));
+		}
+		for (int i = 0; i < lats; i++) {
+			for (int c = 0; c < longs; c++) {
+				int a = i * longs + c, b = i * longs + (c + 1) % longs;
+				int d = a + longs, e = b + longs;
+				writePlyFace(out, a, d, b);
+				writePlyFace(out, b, d, e);
+			}
+		}
+		out.flush();
+	}
+
+	private static void writePlyFace(DataOutputStream out, int a, int b, int c) throws IOException {
+		out.writeByte(3);
+		out.writeInt(Integer.reverseBytes(a));
+		out.writeInt(Integer.reverseBytes(b));
+		out.writeInt(Integer.reverseBytes(c));
+	}
+}
@@ -0,0 +1,60 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Filling and sorting a RenderQueue the way the renderer does every frame,
+// with draws spread over a few programs and many meshes. Steady-state
+// frames should allocate nothing.
+public class RenderQueueBenchmark extends Benchmark {
+
+	static final int PROGRAMS = 8;
+	static final int MESHES = 64;
+
+	private final int mSize;
+	private long[] mKeys;
+	private Object[] mItems;
+	private RenderQueue<Object> mQueue;
+
+	public RenderQueueBenchmark(int size) {
+		super("RenderQueue fill and sort, " + size + " items");
+		mSize = size;
+	}
+
+	@Override
+	public void setup() {
+		Random random = new Random(42);
+		mKeys = new long[mSize];
+		mItems = new Object[mSize];
+		for (int i = 0; i < mSize; i++) {
+			int program = 1 + random.nextInt(PROGRAMS);
+			int mesh = 1 + random.nextInt(MESHES);
+			mKeys[i] = RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, program, mesh, 1 + random.nextFloat() * 20);
+			mItems[i] = Integer.valueOf(i);
+		}
+		mQueue = new RenderQueue<Object>(mSize);
+		check();
+	}
+
+	@Override
+	public int run() {
+		mQueue.clear();
+		for (int i = 0; i < mKeys.length; i++)
+			mQueue.add(mKeys[i], mItems[i]);
+		mQueue.sort();
+		return (int) mQueue.getKey(0);
+	}
+
+	// The queue must come out in unsigned key order with every item once.
+	private void check() {
+		run();
+		long[] sorted = mKeys.clone();
+		Arrays.sort(sorted);	// the top bit is never set, so signed order is fine
+		for (int i = 0; i < mKeys.length; i++) {
+			if (mQueue.getKey(i) != sorted[i])
+				throw new AssertionError("key " + i + " out of order");
+			if (mKeys[(Integer) mQueue.get(i)] != mQueue.getKey(i))
+				throw new AssertionError("item " + i + " does not match its key");
+		}
+	}
+}
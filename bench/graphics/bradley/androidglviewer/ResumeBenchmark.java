@@ -0,0 +1,55 @@
+package graphics.bradley.androidglviewer;
+
+// Getting back to a complete frame after the EGL context was lost, on a
+// RecordingBackend: either the renderer kept its scene, programs' sources
+// and mesh data and only uploads them again, or it starts cold, as every
+// resume used to, rebuilding the scene and regenerating every mesh.
+public class ResumeBenchmark extends Benchmark {
+
+	private final boolean mCold;
+	private RecordingBackend mBackend;
+	private MyGL20Renderer mRenderer;
+
+	public ResumeBenchmark(boolean cold) {
+		super(cold ? "resume, rebuilt from scratch" : "resume, resources kept");
+		mCold = cold;
+	}
+
+	@Override
+	public void setup() {
+		mBackend = new RecordingBackend();
+		mRenderer = start(mBackend);
+	}
+
+	private static MyGL20Renderer start(RecordingBackend backend) {
+		MyGL20Renderer renderer = new MyGL20Renderer(backend);
+		renderer.getFramePacer().setTargetRate(0);
+		resume(renderer);
+		return renderer;
+	}
+
+	// a new context, and frames until nothing is left to build
+	private static void resume(MyGL20Renderer renderer) {
+		renderer.onSurfaceCreated(null, null);
+		renderer.onSurfaceChanged(null, 1280, 720);
+		while (MeshLoader.getPendingCount() > 0) {
+			MeshLoader.poll();
+			Thread.yield();
+		}
+		renderer.onDrawFrame(null);
+	}
+
+	@Override
+	public int run() {
+		mBackend.beginFrame();
+		if (mCold) {
+			ShaderRegistry.clear();
+			MeshCache.clear();
+			MeshLoader.clear();
+			mRenderer = start(mBackend);
+		}
+		else
+			resume(mRenderer);
+		return mBackend.getCommandCount();
+	}
+}
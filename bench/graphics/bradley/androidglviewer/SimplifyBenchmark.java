@@ -0,0 +1,48 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.File;
+import java.io.IOException;
+
+// Building the LOD chain of one full model chunk, as LodBuilder does on a
+// MeshLoader thread: every level down to LodBuilder.MIN_TRIANGLES, each
+// packed into its own mesh. The chunk is the first of a lats x longs
+// sphere read from PLY, so it holds MeshChunker.MAX_VERTICES vertices.
+public class SimplifyBenchmark extends Benchmark {
+
+	private final int mLats;
+	private final int mLongs;
+	private Mesh mChunk;
+
+	public SimplifyBenchmark(int lats, int longs) {
+		super("LodBuilder chunk of " + lats + "x" + longs);
+		mLats = lats;
+		mLongs = longs;
+	}
+
+	@Override
+	public void setup() {
+		try {
+			File file = File.createTempFile("model", ".ply");
+			file.deleteOnExit();
+			ModelParseBenchmark.write(file, ModelParseBenchmark.PLY, mLats, mLongs);
+			ModelParseBenchmark.parse(file, ModelParseBenchmark.PLY, new MeshChunker.Listener() {
+				public void onChunk(Mesh mesh) {
+					if (mChunk == null)
+						mChunk = mesh;
+				}
+			});
+		}
+		catch (IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public int run() {
+		// no part to hand the levels to, as apply() is not called
+		LodBuilder builder = new LodBuilder(null, mChunk);
+		builder.buildPart(0);
+		consume(builder);
+		return builder.getLevelCount();
+	}
+}
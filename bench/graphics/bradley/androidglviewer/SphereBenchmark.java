@@ -0,0 +1,35 @@
+package graphics.bradley.androidglviewer;
+
+// Generating a sphere mesh: the vertex and index arrays, packing them into
+// the quantized vertex layout and computing the bounds. Nothing touches GL
+// until the mesh is first drawn, so this is all CPU. The parallel variant
+// builds the same mesh on the MeshLoader pool and waits for it, as the GL
+// thread would if it had nothing else to draw.
+public class SphereBenchmark extends Benchmark {
+
+	private final int mLats;
+	private final int mLongs;
+	private final boolean mParallel;
+
+	public SphereBenchmark(int lats, int longs, boolean parallel) {
+		super((parallel ? "MeshLoader sphere " : "Sphere.createSphere ") + lats + "x" + longs);
+		mLats = lats;
+		mLongs = longs;
+		mParallel = parallel;
+	}
+
+	@Override
+	public int run() {
+		Mesh mesh;
+		if (mParallel) {
+			mesh = new Mesh(SphereBuilder.layoutFor(1), false);
+			MeshLoader.submit(mesh, new SphereBuilder(1, mLats, mLongs));
+			while (MeshLoader.poll() == 0)
+				Thread.yield();
+		}
+		else
+			mesh = Sphere.createSphere(1, mLats, mLongs);
+		consume(mesh);
+		return mesh.getVertexCount() + mesh.getIndexCount();
+	}
+}
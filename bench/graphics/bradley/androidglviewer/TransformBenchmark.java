@@ -0,0 +1,127 @@
+package graphics.bradley.androidglviewer;
+
+import android.opengl.Matrix;
+
+// Composing the per-object MVP matrices of one frame: the way the original
+// drawTable/drawBalls did it (scratch arrays allocated every frame, nine
+// table parts and three balls), against the scene graph with the camera
+// still and with the camera moving every frame.
+public class TransformBenchmark extends Benchmark {
+
+	public static final int PER_OBJECT = 0;
+	public static final int SCENE_STATIC = 1;
+	public static final int SCENE_MOVING = 2;
+
+	private static final String[] NAMES = {
+		"transforms, original drawTable/drawBalls",
+		"transforms, scene graph, camera still",
+		"transforms, scene graph, camera moving",
+	};
+
+	private final int mMethod;
+	private final float[] mMVPMatrix = new float[16];
+	private final FrustumCuller mCuller = new FrustumCuller();
+	private Scene mScene;
+	private int mCameraVersion;
+
+	public TransformBenchmark(int method) {
+		super(NAMES[method]);
+		mMethod = method;
+	}
+
+	@Override
+	public void setup() {
+		float[] proj = new float[16];
+		float[] view = new float[16];
+		Matrix.frustumM(proj, 0, -1.5f, 1.5f, -1, 1, 1, 20);
+		Matrix.setLookAtM(view, 0, 0, 0, -6f, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
+		Matrix.multiplyMM(mMVPMatrix, 0, proj, 0, view, 0);
+		mCuller.setFrustum(mMVPMatrix);
+
+		if (mMethod != PER_OBJECT) {
+			// building the scene compiles shaders, which needs a backend
+			RenderContext.set(new RecordingBackend());
+			mScene = MyGL20Renderer.buildScene();
+		}
+	}
+
+	@Override
+	public int run() {
+		if (mMethod == PER_OBJECT)
+			return drawTable() + drawBalls();
+
+		if (mMethod == SCENE_MOVING)
+			mCameraVersion++;
+		mScene.update(mMVPMatrix, mCameraVersion, mCuller);
+		return mScene.getDrawCount() + mScene.getMatrixProducts();
+	}
+
+	// stands in for a draw call: something the caller cannot drop
+	private static int draw(float[] mvp) {
+		return Float.floatToIntBits(mvp[12]);
+	}
+
+	private int drawTable() {
+		float[] scalerMatrix = new float[16];
+		float[] finalMVPMatrix = new float[16];
+		int sum = 0;
+
+		// top
+		Matrix.setIdentityM(scalerMatrix, 0);
+		Matrix.scaleM(scalerMatrix, 0, 2.25f, 0.1f, 1.0f);
+		Matrix.multiplyMM(finalMVPMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+		sum += draw(finalMVPMatrix);
+
+		float[] tempMatrix = new float[16];
+		// legs
+		Matrix.setIdentityM(scalerMatrix, 0);
+		Matrix.scaleM(scalerMatrix, 0, .12f, .85f, .12f);
+		Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 18f, -.9f, -7.5f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 18f, -.9f, 7.5f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -18f, -.9f, -7.5f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -18f, -.9f, 7.5f);
+		sum += draw(finalMVPMatrix);
+
+		// long rails
+		Matrix.setIdentityM(scalerMatrix, 0);
+		Matrix.scaleM(scalerMatrix, 0, 2.30f, .25f, .1f);
+		Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 0, .5f, -9.1f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 0, .5f, 9.1f);
+		sum += draw(finalMVPMatrix);
+
+		// short rails
+		Matrix.setIdentityM(scalerMatrix, 0);
+		Matrix.scaleM(scalerMatrix, 0, .1f, .25f, 1.0f);
+		Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 22.1f, .5f, 0f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -22.1f, .5f, 0f);
+		sum += draw(finalMVPMatrix);
+		return sum;
+	}
+
+	private int drawBalls() {
+		float[] scalerMatrix = new float[16];
+		float[] finalMVPMatrix = new float[16];
+		float[] tempMatrix = new float[16];
+		int sum = 0;
+
+		Matrix.setIdentityM(scalerMatrix, 0);
+		Matrix.scaleM(scalerMatrix, 0, .1f, 0.1f, .1f);
+		Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -5.25f, 1.85f, .35f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 2.25f, 1.85f, -1f);
+		sum += draw(finalMVPMatrix);
+		Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, .35f, 1.85f, -2.5f);
+		sum += draw(finalMVPMatrix);
+		return sum;
+	}
+}
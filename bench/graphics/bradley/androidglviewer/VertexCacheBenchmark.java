@@ -0,0 +1,55 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+import android.opengl.GLES20;
+
+// VertexCacheOptimizer.optimize on the whole index list of a lats x longs
+// sphere in row order, i.e. the cost of reordering an imported mesh of that
+// size. setup() prints what it gains for a 16-entry FIFO cache.
+public class VertexCacheBenchmark extends Benchmark {
+
+	private final int mLats;
+	private final int mLongs;
+	private int[] mSource;
+	private int[] mIndices;
+	private int mVertexCount;
+
+	public VertexCacheBenchmark(int lats, int longs) {
+		super("VertexCacheOptimizer sphere " + lats + "x" + longs);
+		mLats = lats;
+		mLongs = longs;
+	}
+
+	@Override
+	public void setup() {
+		Mesh mesh = Sphere.createSphere(1, mLats, mLongs, false);
+		mVertexCount = mesh.getVertexCount();
+		int count = mesh.getIndexCount();
+		ByteBuffer bb = ByteBuffer.allocate(count * 4);
+		bb.order(ByteOrder.nativeOrder());
+		mesh.getIndices(bb);
+		boolean shorts = mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT;
+		mSource = new int[count];
+		for (int i = 0; i < count; i++)
+			mSource[i] = shorts ? bb.getShort(i * 2) & 0xffff : bb.getInt(i * 4);
+		mIndices = new int[count];
+
+		VertexCacheAnalyzer before = new VertexCacheAnalyzer(16, true);
+		before.analyze(mSource, count, mVertexCount);
+		run();
+		VertexCacheAnalyzer after = new VertexCacheAnalyzer(16, true);
+		after.analyze(mIndices, count, mVertexCount);
+		System.out.printf(Locale.US, "%s: ACMR %.3f -> %.3f, ATVR %.3f -> %.3f%n", getName(),
+				before.getACMR(), after.getACMR(), before.getATVR(), after.getATVR());
+	}
+
+	@Override
+	public int run() {
+		System.arraycopy(mSource, 0, mIndices, 0, mSource.length);
+		VertexCacheOptimizer.optimize(mIndices, 0, mIndices.length, mVertexCount);
+		return mIndices[0];
+	}
+}
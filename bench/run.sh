@@ -0,0 +1,28 @@
+#!/bin/sh
+# Builds the benchmarks and the plain-Java part of the app against android.jar
+# and runs them on this JVM. Arguments go to BenchmarkRunner, e.g.
+#
+#     bench/run.sh -o baseline.csv
+#     bench/run.sh -b baseline.csv sphere
+#
+# ANDROID_JAR defaults to the android-17 platform of the SDK in ANDROID_HOME.
+set -e
+cd "$(dirname "$0")/.."
+
+ANDROID_JAR=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-17/android.jar}
+if [ ! -f "$ANDROID_JAR" ]; then
+	echo "android.jar not found; set ANDROID_JAR or ANDROID_HOME" >&2
+	exit 1
+fi
+
+OUT=bench/build
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+# Everything but the activity, which needs the generated R class. The Matrix
+# shim is compiled in and put ahead of android.jar, whose methods only throw.
+find src -name '*.java' ! -name MainGLActivity.java > "$OUT/sources.txt"
+find bench/shim bench/graphics -name '*.java' >> "$OUT/sources.txt"
+javac -nowarn -encoding UTF-8 -cp "$ANDROID_JAR" -d "$OUT" @"$OUT/sources.txt"
+
+java -cp "$OUT:$ANDROID_JAR" graphics.bradley.androidglviewer.BenchmarkRunner "$@"
@@ -0,0 +1,259 @@
+package graphics.bradley.androidglviewer;
+
+// Matrix operations specialized for affine transforms: column-major 4x4
+// matrices laid out like android.opengl.Matrix whose bottom row is known to
+// be (0, 0, 0, 1), as every model, view and world matrix in the viewer is.
+// Skipping that row saves about a quarter of the work of a general product,
+// and inverses and normal matrices come straight from the upper 3x3.
+//
+// Where an operation has an android.opengl.Matrix equivalent it computes the
+// same sums in the same order, so the results are identical to the last bit
+// for finite inputs; only the sign of a zero result may differ, because the
+// terms multiplied by the known zeros are left out.
+//
+// Results must not overlap any of the inputs.
+public class AffineMath {
+
+	private AffineMath() {
+	}
+
+	public static void setIdentity(float[] m, int offset) {
+		for (int i = 0; i < 16; i++)
+			m[offset + i] = 0;
+		m[offset] = 1;
+		m[offset + 5] = 1;
+		m[offset + 10] = 1;
+		m[offset + 15] = 1;
+	}
+
+	// m = T(tx, ty, tz) * S(sx, sy, sz), as setIdentityM, translateM, scaleM.
+	public static void setTranslateScale(float[] m, int offset,
+			float tx, float ty, float tz, float sx, float sy, float sz) {
+		m[offset]      = sx;
+		m[offset + 1]  = 0;
+		m[offset + 2]  = 0;
+		m[offset + 3]  = 0;
+		m[offset + 4]  = 0;
+		m[offset + 5]  = sy;
+		m[offset + 6]  = 0;
+		m[offset + 7]  = 0;
+		m[offset + 8]  = 0;
+		m[offset + 9]  = 0;
+		m[offset + 10] = sz;
+		m[offset + 11] = 0;
+		m[offset + 12] = tx;
+		m[offset + 13] = ty;
+		m[offset + 14] = tz;
+		m[offset + 15] = 1;
+	}
+
+	// m = T(tx, ty, tz) * R(angle in degrees, around x, y, z) * S(sx, sy, sz),
+	// as setIdentityM, translateM, rotateM, scaleM. The rotation is built the
+	// way setRotateM builds it.
+	public static void setTRS(float[] m, int offset, float tx, float ty, float tz,
+			float angle, float x, float y, float z, float sx, float sy, float sz) {
+		float a = angle * (float) (Math.PI / 180.0f);
+		float s = (float) Math.sin(a);
+		float c = (float) Math.cos(a);
+		float r0, r1, r2, r4, r5, r6, r8, r9, r10;
+		if (1.0f == x && 0.0f == y && 0.0f == z) {
+			r0 = 1; r4 = 0;  r8 = 0;
+			r1 = 0; r5 = c;  r9 = -s;
+			r2 = 0; r6 = s;  r10 = c;
+		}
+		else if (0.0f == x && 1.0f == y && 0.0f == z) {
+			r0 = c;  r4 = 0; r8 = s;
+			r1 = 0;  r5 = 1; r9 = 0;
+			r2 = -s; r6 = 0; r10 = c;
+		}
+		else if (0.0f == x && 0.0f == y && 1.0f == z) {
+			r0 = c; r4 = -s; r8 = 0;
+			r1 = s; r5 = c;  r9 = 0;
+			r2 = 0; r6 = 0;  r10 = 1;
+		}
+		else {
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+			if (1.0f != length) {
+				float recip = 1.0f / length;
+				x *= recip;
+				y *= recip;
+				z *= recip;
+			}
+			float nc = 1.0f - c;
+			float xy = x * y, yz = y * z, zx = z * x;
+			float xs = x * s, ys = y * s, zs = z * s;
+			r0 = x * x * nc + c; r4 = xy * nc - zs;    r8 = zx * nc + ys;
+			r1 = xy * nc + zs;   r5 = y * y * nc + c;  r9 = yz * nc - xs;
+			r2 = zx * nc - ys;   r6 = yz * nc + xs;    r10 = z * z * nc + c;
+		}
+		m[offset]      = r0 * sx;
+		m[offset + 1]  = r1 * sx;
+		m[offset + 2]  = r2 * sx;
+		m[offset + 3]  = 0;
+		m[offset + 4]  = r4 * sy;
+		m[offset + 5]  = r5 * sy;
+		m[offset + 6]  = r6 * sy;
+		m[offset + 7]  = 0;
+		m[offset + 8]  = r8 * sz;
+		m[offset + 9]  = r9 * sz;
+		m[offset + 10] = r10 * sz;
+		m[offset + 11] = 0;
+		m[offset + 12] = tx;
+		m[offset + 13] = ty;
+		m[offset + 14] = tz;
+		m[offset + 15] = 1;
+	}
+
+	// result = lhs * rhs for two affine matrices: a 3x4 product, 36
+	// multiplies instead of multiplyMM's 64.
+	public static void multiplyAffine(float[] result, int resultOffset,
+			float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+		float l0 = lhs[lhsOffset],     l1 = lhs[lhsOffset + 1],  l2 = lhs[lhsOffset + 2];
+		float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5],  l6 = lhs[lhsOffset + 6];
+		float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9],  l10 = lhs[lhsOffset + 10];
+		float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13], l14 = lhs[lhsOffset + 14];
+		for (int i = 0; i < 3; i++) {
+			int r = rhsOffset + 4 * i;
+			int o = resultOffset + 4 * i;
+			float b0 = rhs[r], b1 = rhs[r + 1], b2 = rhs[r + 2];
+			result[o]     = l0 * b0 + l4 * b1 + l8 * b2;
+			result[o + 1] = l1 * b0 + l5 * b1 + l9 * b2;
+			result[o + 2] = l2 * b0 + l6 * b1 + l10 * b2;
+			result[o + 3] = 0;
+		}
+		int r = rhsOffset + 12;
+		int o = resultOffset + 12;
+		float b0 = rhs[r], b1 = rhs[r + 1], b2 = rhs[r + 2];
+		result[o]     = l0 * b0 + l4 * b1 + l8 * b2 + l12;
+		result[o + 1] = l1 * b0 + l5 * b1 + l9 * b2 + l13;
+		result[o + 2] = l2 * b0 + l6 * b1 + l10 * b2 + l14;
+		result[o + 3] = 1;
+	}
+
+	// result = lhs * rhs where lhs is any 4x4 matrix (e.g. a projection) and
+	// rhs is affine: 48 multiplies instead of 64.
+	public static void multiplyProjAffine(float[] result, int resultOffset,
+			float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+		for (int i = 0; i < 4; i++) {
+			int r = rhsOffset + 4 * i;
+			int o = resultOffset + 4 * i;
+			float b0 = rhs[r], b1 = rhs[r + 1], b2 = rhs[r + 2];
+			for (int c = 0; c < 4; c++) {
+				float sum = lhs[lhsOffset + c] * b0 + lhs[lhsOffset + 4 + c] * b1
+						+ lhs[lhsOffset + 8 + c] * b2;
+				result[o + c] = i == 3 ? sum + lhs[lhsOffset + 12 + c] : sum;
+			}
+		}
+	}
+
+	// result[k] = lhs * rhs[k] for count affine matrices packed 16 floats
+	// apart in rhs and result, e.g. every object's model matrix times the
+	// same view matrix. The loop body is straight-line code over adjacent
+	// floats, which the JIT unrolls and can vectorize.
+	public static void multiplyAffineBatch(float[] result, float[] lhs, int lhsOffset, float[] rhs, int count) {
+		float l0 = lhs[lhsOffset],     l1 = lhs[lhsOffset + 1],  l2 = lhs[lhsOffset + 2];
+		float l4 = lhs[lhsOffset + 4], l5 = lhs[lhsOffset + 5],  l6 = lhs[lhsOffset + 6];
+		float l8 = lhs[lhsOffset + 8], l9 = lhs[lhsOffset + 9],  l10 = lhs[lhsOffset + 10];
+		float l12 = lhs[lhsOffset + 12], l13 = lhs[lhsOffset + 13], l14 = lhs[lhsOffset + 14];
+		int end = count * 16;
+		for (int o = 0; o < end; o += 16) {
+			float b0 = rhs[o],     b1 = rhs[o + 1],  b2 = rhs[o + 2];
+			float b4 = rhs[o + 4], b5 = rhs[o + 5],  b6 = rhs[o + 6];
+			float b8 = rhs[o + 8], b9 = rhs[o + 9],  b10 = rhs[o + 10];
+			float b12 = rhs[o + 12], b13 = rhs[o + 13], b14 = rhs[o + 14];
+			result[o]      = l0 * b0 + l4 * b1 + l8 * b2;
+			result[o + 1]  = l1 * b0 + l5 * b1 + l9 * b2;
+			result[o + 2]  = l2 * b0 + l6 * b1 + l10 * b2;
+			result[o + 3]  = 0;
+			result[o + 4]  = l0 * b4 + l4 * b5 + l8 * b6;
+			result[o + 5]  = l1 * b4 + l5 * b5 + l9 * b6;
+			result[o + 6]  = l2 * b4 + l6 * b5 + l10 * b6;
+			result[o + 7]  = 0;
+			result[o + 8]  = l0 * b8 + l4 * b9 + l8 * b10;
+			result[o + 9]  = l1 * b8 + l5 * b9 + l9 * b10;
+			result[o + 10] = l2 * b8 + l6 * b9 + l10 * b10;
+			result[o + 11] = 0;
+			result[o + 12] = l0 * b12 + l4 * b13 + l8 * b14 + l12;
+			result[o + 13] = l1 * b12 + l5 * b13 + l9 * b14 + l13;
+			result[o + 14] = l2 * b12 + l6 * b13 + l10 * b14 + l14;
+			result[o + 15] = 1;
+		}
+	}
+
+	// Inverse of a rigid transform (rotation and translation only):
+	// [R t]^-1 = [R^T -R^T t]. Agrees with invertM to rounding.
+	public static void invertRigid(float[] result, int resultOffset, float[] m, int offset) {
+		float r0 = m[offset],     r1 = m[offset + 1], r2 = m[offset + 2];
+		float r4 = m[offset + 4], r5 = m[offset + 5], r6 = m[offset + 6];
+		float r8 = m[offset + 8], r9 = m[offset + 9], r10 = m[offset + 10];
+		float tx = m[offset + 12], ty = m[offset + 13], tz = m[offset + 14];
+		result[resultOffset]      = r0;
+		result[resultOffset + 1]  = r4;
+		result[resultOffset + 2]  = r8;
+		result[resultOffset + 3]  = 0;
+		result[resultOffset + 4]  = r1;
+		result[resultOffset + 5]  = r5;
+		result[resultOffset + 6]  = r9;
+		result[resultOffset + 7]  = 0;
+		result[resultOffset + 8]  = r2;
+		result[resultOffset + 9]  = r6;
+		result[resultOffset + 10] = r10;
+		result[resultOffset + 11] = 0;
+		result[resultOffset + 12] = -(r0 * tx + r1 * ty + r2 * tz);
+		result[resultOffset + 13] = -(r4 * tx + r5 * ty + r6 * tz);
+		result[resultOffset + 14] = -(r8 * tx + r9 * ty + r10 * tz);
+		result[resultOffset + 15] = 1;
+	}
+
+	// Normal matrix of an affine transform as a 4x4 for a mat4 uniform: the
+	// inverse transpose of the upper 3x3, with no translation. Agrees with
+	// invertM followed by transposeM on the upper 3x3, to rounding.
+	// Falls back to the plain 3x3 if it is singular.
+	public static void normalMatrix(float[] result, int resultOffset, float[] m, int offset) {
+		float a = m[offset],     b = m[offset + 4], c = m[offset + 8];
+		float d = m[offset + 1], e = m[offset + 5], f = m[offset + 9];
+		float g = m[offset + 2], h = m[offset + 6], i = m[offset + 10];
+
+		// cofactors; the cofactor matrix divided by the determinant is the
+		// inverse transpose
+		float c00 = e * i - f * h, c01 = f * g - d * i, c02 = d * h - e * g;
+		float c10 = c * h - b * i, c11 = a * i - c * g, c12 = b * g - a * h;
+		float c20 = b * f - c * e, c21 = c * d - a * f, c22 = a * e - b * d;
+
+		float det = a * c00 + b * c01 + c * c02;
+		float inv = det == 0 ? 0 : 1 / det;
+		for (int k = 0; k < 16; k++)
+			result[resultOffset + k] = 0;
+		result[resultOffset + 15] = 1;
+		if (inv == 0) {
+			copyUpper3x3(result, resultOffset, m, offset);
+			return;
+		}
+
+		// row r, column k of the result goes to [k * 4 + r]
+		result[resultOffset]     = c00 * inv; result[resultOffset + 4] = c01 * inv; result[resultOffset + 8]  = c02 * inv;
+		result[resultOffset + 1] = c10 * inv; result[resultOffset + 5] = c11 * inv; result[resultOffset + 9]  = c12 * inv;
+		result[resultOffset + 2] = c20 * inv; result[resultOffset + 6] = c21 * inv; result[resultOffset + 10] = c22 * inv;
+	}
+
+	// The normal matrix when the upper 3x3 is a pure rotation, which is its
+	// own inverse transpose: just that 3x3, with no translation.
+	public static void normalMatrixRigid(float[] result, int resultOffset, float[] m, int offset) {
+		copyUpper3x3(result, resultOffset, m, offset);
+		result[resultOffset + 3] = 0;
+		result[resultOffset + 7] = 0;
+		result[resultOffset + 11] = 0;
+		result[resultOffset + 12] = 0;
+		result[resultOffset + 13] = 0;
+		result[resultOffset + 14] = 0;
+		result[resultOffset + 15] = 1;
+	}
+
+	private static void copyUpper3x3(float[] result, int resultOffset, float[] m, int offset) {
+		for (int i = 0; i < 12; i += 4) {
+			result[resultOffset + i] = m[offset + i];
+			result[resultOffset + i + 1] = m[offset + i + 1];
+			result[resultOffset + i + 2] = m[offset + i + 2];
+		}
+	}
+}
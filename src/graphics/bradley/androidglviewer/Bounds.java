@@ -0,0 +1,80 @@
+package graphics.bradley.androidglviewer;
+
+// Axis-aligned box and enclosing sphere of a mesh in its own (local) space,
+// computed once when the mesh is built.
+public class Bounds {
+
+	public float minX, minY, minZ;
+	public float maxX, maxY, maxZ;
+
+	// sphere around the center of the box
+	public float centerX, centerY, centerZ;
+	public float radius;
+
+	// positions hold 3 floats per vertex
+	public static Bounds fromPositions(float[] positions, int vertexCount) {
+		Bounds b = new Bounds();
+		if (vertexCount == 0)
+			return b;
+
+		b.minX = b.maxX = positions[0];
+		b.minY = b.maxY = positions[1];
+		b.minZ = b.maxZ = positions[2];
+		for (int v = 1; v < vertexCount; v++) {
+			float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+			if (x < b.minX) b.minX = x;
+			if (x > b.maxX) b.maxX = x;
+			if (y < b.minY) b.minY = y;
+			if (y > b.maxY) b.maxY = y;
+			if (z < b.minZ) b.minZ = z;
+			if (z > b.maxZ) b.maxZ = z;
+		}
+
+		b.centerX = (b.minX + b.maxX) * 0.5f;
+		b.centerY = (b.minY + b.maxY) * 0.5f;
+		b.centerZ = (b.minZ + b.maxZ) * 0.5f;
+
+		// tighter than half the box diagonal for round shapes like the balls
+		float r2 = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			float dx = positions[v * 3] - b.centerX;
+			float dy = positions[v * 3 + 1] - b.centerY;
+			float dz = positions[v * 3 + 2] - b.centerZ;
+			float d2 = dx * dx + dy * dy + dz * dz;
+			if (d2 > r2)
+				r2 = d2;
+		}
+		b.radius = (float) Math.sqrt(r2);
+		return b;
+	}
+
+	public void setBox(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		centerX = (minX + maxX) * 0.5f;
+		centerY = (minY + maxY) * 0.5f;
+		centerZ = (minZ + maxZ) * 0.5f;
+		float dx = maxX - centerX, dy = maxY - centerY, dz = maxZ - centerZ;
+		radius = (float) Math.sqrt(dx * dx + dy * dy + dz * dz);
+	}
+
+	// Writes the bounding sphere transformed by a column-major model matrix
+	// into out[offset..offset+3] as (x, y, z, radius). The radius grows by
+	// the largest axis scale so non-uniform scaling stays conservative.
+	public void transformSphere(float[] m, float[] out, int offset) {
+		float x = centerX, y = centerY, z = centerZ;
+		out[offset]     = m[0] * x + m[4] * y + m[8]  * z + m[12];
+		out[offset + 1] = m[1] * x + m[5] * y + m[9]  * z + m[13];
+		out[offset + 2] = m[2] * x + m[6] * y + m[10] * z + m[14];
+
+		float sx = m[0] * m[0] + m[1] * m[1] + m[2] * m[2];
+		float sy = m[4] * m[4] + m[5] * m[5] + m[6] * m[6];
+		float sz = m[8] * m[8] + m[9] * m[9] + m[10] * m[10];
+		float scale = (float) Math.sqrt(Math.max(sx, Math.max(sy, sz)));
+		out[offset + 3] = radius * scale;
+	}
+}
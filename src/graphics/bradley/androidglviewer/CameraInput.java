@@ -0,0 +1,147 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// Carries the camera from the input (UI) thread to the renderer (GL thread).
+// The UI thread accumulates any number of changes and then publishes them as
+// one CameraState; the GL thread takes the latest state once per frame, so a
+// frame never sees half of an update. While a published state is waiting
+// for a frame, publishing again only replaces it: the frame already
+// requested will pick up the newer one.
+//
+// Every change starts from where the camera is at that moment, fling and
+// zoom easing included, so motion stays continuous when a new gesture
+// interrupts an animation.
+public class CameraInput {
+
+	public static final float MIN_ZOOM = -15f;
+	public static final float MAX_ZOOM = -3f;
+	public static final float DEFAULT_ZOOM = -6f;
+
+	// a release slower than this (degrees per second) does not fling
+	public static final float MIN_FLING_START = 30f;
+	public static final float MAX_FLING_SPEED = 2000f;
+
+	// the release velocity is measured over the drag samples this recent
+	private static final long VELOCITY_WINDOW_MS = 100;
+	// and there is no fling if the finger rested this long before lifting
+	private static final long FLING_PAUSE_MS = 50;
+
+	// UI thread only: the latest state, possibly not published yet
+	private CameraState mState = new CameraState(0, 0, DEFAULT_ZOOM);
+
+	// recent drag samples: event time and total rotation so far
+	private static final int SAMPLES = 16;
+	private final long[] mSampleTimes = new long[SAMPLES];
+	private final float[] mSampleX = new float[SAMPLES];
+	private final float[] mSampleY = new float[SAMPLES];
+	private int mSampleCount;
+	private float mDraggedX, mDraggedY;
+
+	private volatile CameraState mPublished = mState;
+	private final AtomicBoolean mFramePending = new AtomicBoolean();
+
+	// UI thread, when a finger goes down: stops any fling where it is.
+	public void hold(long eventTime) {
+		long now = System.nanoTime();
+		CameraState s = mState;
+		if (s.getXVelocity(now) != 0 || s.getYVelocity(now) != 0)
+			mState = new CameraState(s.getXAngle(now), s.getYAngle(now), 0, 0, s.getZoom(now), s.zoomTarget, now);
+		mSampleCount = 0;
+		mDraggedX = 0;
+		mDraggedY = 0;
+		addSample(eventTime);
+	}
+
+	// UI thread; angles in degrees, with the time of the touch sample that
+	// moved them
+	public void rotate(float dx, float dy, long eventTime) {
+		long now = System.nanoTime();
+		CameraState s = mState;
+		// kept within a turn, so float precision does not wear away after
+		// many of them
+		mState = new CameraState((s.getXAngle(now) + dx) % 360f, (s.getYAngle(now) + dy) % 360f, 0, 0,
+				s.getZoom(now), s.zoomTarget, now);
+		mDraggedX += dx;
+		mDraggedY += dy;
+		addSample(eventTime);
+	}
+
+	// UI thread, when the finger lifts: keeps the camera turning at the
+	// speed it was dragged with, slowing down until it stops.
+	public void fling(long eventTime) {
+		if (mSampleCount < 2)
+			return;
+		int last = (mSampleCount - 1) % SAMPLES;
+		if (eventTime - mSampleTimes[last] > FLING_PAUSE_MS)
+			return;
+
+		// the oldest sample still inside the window
+		int first = last;
+		int count = Math.min(mSampleCount, SAMPLES);
+		for (int i = 1; i < count; i++) {
+			int k = (last - i + SAMPLES) % SAMPLES;
+			if (mSampleTimes[last] - mSampleTimes[k] > VELOCITY_WINDOW_MS)
+				break;
+			first = k;
+		}
+		long dt = mSampleTimes[last] - mSampleTimes[first];
+		if (dt <= 0)
+			return;
+
+		float vx = (mSampleX[last] - mSampleX[first]) * 1000f / dt;
+		float vy = (mSampleY[last] - mSampleY[first]) * 1000f / dt;
+		float speed = (float) Math.sqrt(vx * vx + vy * vy);
+		if (speed < MIN_FLING_START)
+			return;
+		if (speed > MAX_FLING_SPEED) {
+			vx *= MAX_FLING_SPEED / speed;
+			vy *= MAX_FLING_SPEED / speed;
+		}
+
+		long now = System.nanoTime();
+		CameraState s = mState;
+		mState = new CameraState(s.getXAngle(now), s.getYAngle(now), vx, vy, s.getZoom(now), s.zoomTarget, now);
+	}
+
+	private void addSample(long eventTime) {
+		int k = mSampleCount % SAMPLES;
+		mSampleTimes[k] = eventTime;
+		mSampleX[k] = mDraggedX;
+		mSampleY[k] = mDraggedY;
+		mSampleCount++;
+	}
+
+	// UI thread; moves the zoom target, which the camera eases towards. The
+	// target is kept between MIN_ZOOM and MAX_ZOOM.
+	public void zoom(float dz) {
+		long now = System.nanoTime();
+		CameraState s = mState;
+		float target = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, s.zoomTarget + dz));
+		mState = new CameraState(s.getXAngle(now), s.getYAngle(now), s.getXVelocity(now), s.getYVelocity(now),
+				s.getZoom(now), target, now);
+	}
+
+	// UI thread. Makes the changes since the last call visible to the
+	// renderer. Returns true if a frame has to be requested for them, false
+	// if nothing changed or a requested frame has not started yet.
+	public boolean publish() {
+		if (mState == mPublished)
+			return false;
+		mPublished = mState;
+		return !mFramePending.getAndSet(true);
+	}
+
+	// the state last published; any thread
+	public CameraState getPublished() {
+		return mPublished;
+	}
+
+	// GL thread, once per frame. The pending flag is cleared before the
+	// state is read, so a state published after the read always asks for
+	// another frame.
+	public CameraState take() {
+		mFramePending.set(false);
+		return mPublished;
+	}
+}
@@ -0,0 +1,108 @@
+package graphics.bradley.androidglviewer;
+
+// One consistent camera, possibly in motion. Immutable, so a reference to it
+// can be handed from the UI thread to the GL thread and read there without
+// locks; a changed camera is always a new object.
+//
+// Motion is a function of time rather than something stepped per frame: a
+// fling keeps rotating at a velocity that decays exponentially, and the zoom
+// eases exponentially towards its target. The renderer evaluates the state at
+// each frame's time, so the animation runs at the same speed whatever the
+// frame rate.
+public class CameraState {
+
+	// time constants of the decays, in seconds
+	public static final float FLING_TIME = 0.325f;
+	public static final float ZOOM_TIME = 0.1f;
+
+	// a fling stops below this speed (degrees per second), and an eased zoom
+	// this close to its target
+	public static final float MIN_FLING_SPEED = 5f;
+	public static final float ZOOM_EPSILON = 0.001f;
+
+	// angles in degrees at time, and their rates in degrees per second
+	public final float xAngle;
+	public final float yAngle;
+	public final float xVelocity;
+	public final float yVelocity;
+
+	// zoom at time, and where it is heading
+	public final float zoom;
+	public final float zoomTarget;
+
+	// System.nanoTime() the values above belong to
+	public final long time;
+
+	private final long mFlingEnd;
+	private final long mZoomEnd;
+
+	public CameraState(float xAngle, float yAngle, float zoom) {
+		this(xAngle, yAngle, 0, 0, zoom, zoom, 0);
+	}
+
+	public CameraState(float xAngle, float yAngle, float xVelocity, float yVelocity,
+			float zoom, float zoomTarget, long time) {
+		this.xAngle = xAngle;
+		this.yAngle = yAngle;
+		this.xVelocity = xVelocity;
+		this.yVelocity = yVelocity;
+		this.zoom = zoom;
+		this.zoomTarget = zoomTarget;
+		this.time = time;
+
+		// the speed falls to MIN_FLING_SPEED after FLING_TIME * ln(speed / MIN)
+		float speed = (float) Math.sqrt(xVelocity * xVelocity + yVelocity * yVelocity);
+		mFlingEnd = time + settleNanos(FLING_TIME, speed / MIN_FLING_SPEED);
+		mZoomEnd = time + settleNanos(ZOOM_TIME, Math.abs(zoom - zoomTarget) / ZOOM_EPSILON);
+	}
+
+	private static long settleNanos(float timeConstant, float ratio) {
+		if (ratio <= 1)
+			return 0;
+		return (long) (timeConstant * Math.log(ratio) * 1e9);
+	}
+
+	// true if the camera still moves after now
+	public boolean isAnimating(long now) {
+		return now < mFlingEnd || now < mZoomEnd;
+	}
+
+	public float getXAngle(long now) {
+		return angleAt(xAngle, xVelocity, now);
+	}
+
+	public float getYAngle(long now) {
+		return angleAt(yAngle, yVelocity, now);
+	}
+
+	public float getXVelocity(long now) {
+		return xVelocity * flingDecay(now);
+	}
+
+	public float getYVelocity(long now) {
+		return yVelocity * flingDecay(now);
+	}
+
+	public float getZoom(long now) {
+		if (now >= mZoomEnd)
+			return zoomTarget;
+		float t = Math.max(0, now - time) * 1e-9f;
+		return zoomTarget + (zoom - zoomTarget) * (float) Math.exp(-t / ZOOM_TIME);
+	}
+
+	// Integral of v * e^(-t / FLING_TIME): the angle approaches
+	// angle + v * FLING_TIME and stops where the speed gets too low.
+	private float angleAt(float angle, float velocity, long now) {
+		if (velocity == 0)
+			return angle;
+		float t = Math.max(0, Math.min(now, mFlingEnd) - time) * 1e-9f;
+		float travel = velocity * FLING_TIME * (1 - (float) Math.exp(-t / FLING_TIME));
+		return (angle + travel) % 360f;
+	}
+
+	private float flingDecay(long now) {
+		if (now >= mFlingEnd)
+			return 0;
+		return (float) Math.exp(-Math.max(0, now - time) * 1e-9f / FLING_TIME);
+	}
+}
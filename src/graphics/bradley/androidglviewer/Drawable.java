@@ -0,0 +1,14 @@
+package graphics.bradley.androidglviewer;
+
+// Anything the renderer can draw once its matrices are known.
+public interface Drawable {
+
+	void draw(float[] mvpMatrix, float[] normalMat, float[] mvMat);
+
+	// local-space bounds, used to cull objects outside the view
+	Bounds getBounds();
+
+	// what the next draw() will use, so draws can be sorted to share state
+	ShaderProgram getProgram();
+	Mesh getMesh();
+}
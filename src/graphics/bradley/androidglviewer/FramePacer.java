@@ -0,0 +1,53 @@
+package graphics.bradley.androidglviewer;
+
+// Holds continuous rendering to a target frame rate. Called at the start of
+// every frame, it sleeps when the frame comes early and hands out the frame
+// time that animation is evaluated at. Frames are scheduled on a fixed grid
+// so the rate does not drift, but after a stall or an idle spell the grid
+// restarts instead of rushing frames out to catch up.
+public class FramePacer {
+
+	public static final float DEFAULT_RATE = 60f;
+
+	// frames less early than this are not worth delaying; vsync already
+	// spaces them
+	private static final long SLACK_NANOS = 2000000L;
+
+	private long mInterval;
+	private long mNext;
+
+	public FramePacer() {
+		setTargetRate(DEFAULT_RATE);
+	}
+
+	// frames per second; 0 turns pacing off
+	public void setTargetRate(float rate) {
+		mInterval = rate > 0 ? (long) (1e9 / rate) : 0;
+	}
+
+	public float getTargetRate() {
+		return mInterval > 0 ? (float) (1e9 / mInterval) : 0;
+	}
+
+	// GL thread. Returns the time (System.nanoTime()) of the frame about
+	// to be drawn.
+	public long waitForFrame() {
+		long now = System.nanoTime();
+		long early = mNext - now;
+		if (early > SLACK_NANOS) {
+			try {
+				Thread.sleep(early / 1000000L, (int) (early % 1000000L));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			now = System.nanoTime();
+		}
+
+		if (now - mNext > mInterval)
+			mNext = now + mInterval;
+		else
+			mNext += mInterval;
+		return now;
+	}
+}
@@ -0,0 +1,251 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.PrintWriter;
+
+// Per-frame timing for the renderer. A frame is split into stages by
+// calling lap() as each one ends; every stage, the whole frame and the
+// interval between frames get their own LatencyHistogram. Draw calls and
+// vertices are counted per frame as well.
+//
+// All recording happens on the GL thread and costs one System.nanoTime()
+// per stage. Only onRenderRequested() may be called from other threads.
+// Reading percentiles or dumping should also happen on the GL thread, e.g.
+// through GLSurfaceView.queueEvent().
+public class FrameStats {
+
+	public static final int STAGE_CAMERA = 0;	// view, projection and normal matrices
+	public static final int STAGE_CULL = 1;		// scene update, culling, LOD and sorting
+	public static final int STAGE_SUBMIT = 2;	// issuing the GL calls
+	public static final int STAGE_FINISH = 3;	// waiting in glFinish(), if enabled
+	public static final int STAGE_FRAME = 4;	// all of onDrawFrame()
+	public static final int STAGE_INTERVAL = 5;	// start of one frame to the start of the next
+	public static final int STAGES = 6;
+
+	private static final String[] NAMES = { "camera", "cull", "submit", "finish", "frame", "interval" };
+
+	// frames further apart than this are idle time, not frame time
+	static final long MAX_INTERVAL_NANOS = 1000000000L;
+
+	private final LatencyHistogram[] mStages = new LatencyHistogram[STAGES];
+
+	private long mFrameStart, mLapStart;
+	private long mLastFrameStart;
+	private long mFrames;
+
+	private int mDrawCalls, mVertices;
+	private long mTotalDrawCalls, mTotalVertices;
+
+	// startup or resume: onResume() (or else onSurfaceCreated()) to the end
+	// of the first frame, and to the end of the first frame that had every
+	// mesh; -1 until then
+	private volatile long mResumed;
+	private long mClockStart;
+	private long mFirstFrameMicros = -1;
+	private long mCompleteFrameMicros = -1;
+
+	private volatile int mRequests;
+	private volatile boolean mFinish;
+
+	// refreshed every SUMMARY_FRAMES frames while an overlay wants it
+	static final int SUMMARY_FRAMES = 15;
+	private volatile boolean mSummaryWanted;
+	private volatile String mSummary = "";
+
+	public FrameStats() {
+		for (int i = 0; i < STAGES; i++)
+			mStages[i] = new LatencyHistogram();
+	}
+
+	public static String getName(int stage) {
+		return NAMES[stage];
+	}
+
+	public LatencyHistogram getStage(int stage) {
+		return mStages[stage];
+	}
+
+	// Called wherever requestRender() is, to compare requests with frames.
+	public void onRenderRequested() {
+		mRequests++;
+	}
+
+	public int getRequests() {
+		return mRequests;
+	}
+
+	public long getFrames() {
+		return mFrames;
+	}
+
+	// Whether the renderer should call glFinish() at the end of each frame so
+	// the frame time includes the GPU. This stalls the pipeline, so leave it
+	// off unless GPU time is what is being measured.
+	public void setFinish(boolean finish) {
+		mFinish = finish;
+	}
+
+	public boolean getFinish() {
+		return mFinish;
+	}
+
+	// On the UI thread, as the view resumes; the clocks start from here.
+	public void onResume() {
+		mResumed = System.nanoTime();
+	}
+
+	// Starts the startup clocks unless a resume already has.
+	public void onSurfaceCreated() {
+		if (mResumed == 0)
+			startClocks(System.nanoTime());
+	}
+
+	private void startClocks(long start) {
+		mClockStart = start;
+		mFirstFrameMicros = -1;
+		mCompleteFrameMicros = -1;
+	}
+
+	// After endFrame() when the frame drew everything there is to draw.
+	public void onSceneComplete() {
+		if (mCompleteFrameMicros < 0 && mClockStart != 0)
+			mCompleteFrameMicros = (System.nanoTime() - mClockStart) / 1000;
+	}
+
+	public long getFirstFrameMicros() {
+		return mFirstFrameMicros;
+	}
+
+	public long getCompleteFrameMicros() {
+		return mCompleteFrameMicros;
+	}
+
+	public void beginFrame() {
+		long resumed = mResumed;
+		if (resumed != 0) {
+			startClocks(resumed);
+			mResumed = 0;
+		}
+		long now = System.nanoTime();
+		if (mLastFrameStart != 0 && now - mLastFrameStart < MAX_INTERVAL_NANOS)
+			mStages[STAGE_INTERVAL].recordNanos(now - mLastFrameStart);
+		mLastFrameStart = now;
+		mFrameStart = mLapStart = now;
+		mDrawCalls = mVertices = 0;
+	}
+
+	// Ends the given stage; the next one starts now.
+	public void lap(int stage) {
+		long now = System.nanoTime();
+		mStages[stage].recordNanos(now - mLapStart);
+		mLapStart = now;
+	}
+
+	public void countDraw(int vertices) {
+		mDrawCalls++;
+		mVertices += vertices;
+	}
+
+	public void endFrame() {
+		long now = System.nanoTime();
+		mStages[STAGE_FRAME].recordNanos(now - mFrameStart);
+		if (mFirstFrameMicros < 0 && mClockStart != 0)
+			mFirstFrameMicros = (now - mClockStart) / 1000;
+		mFrames++;
+		mTotalDrawCalls += mDrawCalls;
+		mTotalVertices += mVertices;
+
+		if (mSummaryWanted && mFrames % SUMMARY_FRAMES == 0)
+			mSummary = buildSummary();
+	}
+
+	public int getDrawCalls() {
+		return mDrawCalls;
+	}
+
+	public int getVertices() {
+		return mVertices;
+	}
+
+	public void reset() {
+		for (int i = 0; i < STAGES; i++)
+			mStages[i].reset();
+		mFrames = 0;
+		mTotalDrawCalls = mTotalVertices = 0;
+		mRequests = 0;
+		mLastFrameStart = 0;
+	}
+
+	// Asks for getSummary() to be kept up to date, e.g. while it is shown.
+	public void setSummaryWanted(boolean wanted) {
+		mSummaryWanted = wanted;
+	}
+
+	// A few lines for an on-screen overlay; safe to read from any thread.
+	public String getSummary() {
+		return mSummary;
+	}
+
+	private String buildSummary() {
+		LatencyHistogram frame = mStages[STAGE_FRAME];
+		StringBuilder sb = new StringBuilder();
+		sb.append("frame p50 ").append(ms(frame.getPercentileMicros(0.5)))
+			.append(" p99 ").append(ms(frame.getPercentileMicros(0.99)))
+			.append(" max ").append(ms(frame.getMaxMicros())).append(" ms\n");
+		for (int s = STAGE_CAMERA; s <= STAGE_FINISH; s++) {
+			if (s == STAGE_FINISH && !mFinish)
+				continue;
+			LatencyHistogram h = mStages[s];
+			sb.append(NAMES[s]).append(" p50 ").append(ms(h.getPercentileMicros(0.5)))
+				.append(" p99 ").append(ms(h.getPercentileMicros(0.99))).append('\n');
+		}
+		sb.append(mDrawCalls).append(" draws, ").append(mVertices).append(" vertices\n");
+		sb.append(mFrames).append(" frames for ").append(mRequests).append(" requests\n");
+		sb.append("first frame ").append(mFirstFrameMicros < 0 ? "-" : ms(mFirstFrameMicros)).append(" ms, complete ")
+			.append(mCompleteFrameMicros < 0 ? "-" : ms(mCompleteFrameMicros)).append(" ms");
+		return sb.toString();
+	}
+
+	private static String ms(long micros) {
+		// two decimals without String.format, which allocates a Formatter
+		long hundredths = (micros + 5) / 10;
+		long frac = hundredths % 100;
+		return (hundredths / 100) + (frac < 10 ? ".0" : ".") + frac;
+	}
+
+	// Writes percentiles and every non-empty histogram bucket as text, for
+	// offline analysis. Times are in microseconds.
+	public void dump(PrintWriter out) {
+		out.println("frames," + mFrames);
+		out.println("render_requests," + mRequests);
+		out.println("glfinish," + mFinish);
+		out.println("first_frame_us," + mFirstFrameMicros);
+		out.println("complete_frame_us," + mCompleteFrameMicros);
+		if (mFrames > 0) {
+			out.println("mean_draw_calls," + mTotalDrawCalls / mFrames);
+			out.println("mean_vertices," + mTotalVertices / mFrames);
+		}
+		out.println();
+
+		out.println("stage,count,mean_us,p50_us,p90_us,p99_us,max_us");
+		for (int s = 0; s < STAGES; s++) {
+			LatencyHistogram h = mStages[s];
+			out.println(NAMES[s] + "," + h.getCount() + "," + h.getMeanMicros() + ","
+					+ h.getPercentileMicros(0.5) + "," + h.getPercentileMicros(0.9) + ","
+					+ h.getPercentileMicros(0.99) + "," + h.getMaxMicros());
+		}
+		out.println();
+
+		out.println("stage,bucket_from_us,bucket_to_us,count");
+		for (int s = 0; s < STAGES; s++) {
+			LatencyHistogram h = mStages[s];
+			for (int b = 0; b < LatencyHistogram.BUCKETS; b++) {
+				if (h.getBucketCount(b) == 0)
+					continue;
+				long upper = LatencyHistogram.upperBound(b);
+				out.println(NAMES[s] + "," + LatencyHistogram.lowerBound(b) + ","
+						+ (upper == Long.MAX_VALUE ? "" : String.valueOf(upper)) + "," + h.getBucketCount(b));
+			}
+		}
+		out.flush();
+	}
+}
@@ -0,0 +1,65 @@
+package graphics.bradley.androidglviewer;
+
+// Tests world-space bounding spheres against the six planes of a view
+// frustum. The planes are pulled straight out of a column-major
+// projection * view matrix (Gribb/Hartmann), so this is plain Java and
+// works off-device.
+public class FrustumCuller {
+
+	// 6 planes of (a, b, c, d) with unit normals pointing into the frustum:
+	// left, right, bottom, top, near, far
+	private final float[] mPlanes = new float[24];
+
+	private int mTested;
+	private int mCulled;
+
+	public void setFrustum(float[] viewProj) {
+		float[] m = viewProj;
+		for (int i = 0; i < 3; i++) {
+			// row 3 + row i and row 3 - row i, where row r is m[r], m[4+r], ...
+			setPlane(i * 2,     m[3] + m[i], m[7] + m[4 + i], m[11] + m[8 + i], m[15] + m[12 + i]);
+			setPlane(i * 2 + 1, m[3] - m[i], m[7] - m[4 + i], m[11] - m[8 + i], m[15] - m[12 + i]);
+		}
+	}
+
+	private void setPlane(int plane, float a, float b, float c, float d) {
+		float length = (float) Math.sqrt(a * a + b * b + c * c);
+		if (length == 0)
+			length = 1;
+		int o = plane * 4;
+		mPlanes[o] = a / length;
+		mPlanes[o + 1] = b / length;
+		mPlanes[o + 2] = c / length;
+		mPlanes[o + 3] = d / length;
+	}
+
+	// sphere holds (x, y, z, radius) at offset, in world space
+	public boolean isVisible(float[] sphere, int offset) {
+		float x = sphere[offset], y = sphere[offset + 1], z = sphere[offset + 2];
+		float r = sphere[offset + 3];
+
+		mTested++;
+		for (int o = 0; o < 24; o += 4) {
+			if (mPlanes[o] * x + mPlanes[o + 1] * y + mPlanes[o + 2] * z + mPlanes[o + 3] < -r) {
+				mCulled++;
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public void resetCounters() {
+		mTested = 0;
+		mCulled = 0;
+	}
+
+	// objects tested since the last resetCounters()
+	public int getTested() {
+		return mTested;
+	}
+
+	// objects found outside the frustum since the last resetCounters()
+	public int getCulled() {
+		return mCulled;
+	}
+}
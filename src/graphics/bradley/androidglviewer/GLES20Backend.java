@@ -0,0 +1,149 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.Buffer;
+
+import android.opengl.GLES20;
+
+// The production backend: every call goes straight to the device driver.
+public class GLES20Backend implements RenderBackend {
+
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		GLES20.glClearColor(red, green, blue, alpha);
+	}
+
+	public void glClear(int mask) {
+		GLES20.glClear(mask);
+	}
+
+	public void glViewport(int x, int y, int width, int height) {
+		GLES20.glViewport(x, y, width, height);
+	}
+
+	public void glEnable(int cap) {
+		GLES20.glEnable(cap);
+	}
+
+	public void glDisable(int cap) {
+		GLES20.glDisable(cap);
+	}
+
+	public void glDepthFunc(int func) {
+		GLES20.glDepthFunc(func);
+	}
+
+	public void glFinish() {
+		GLES20.glFinish();
+	}
+
+	public int glCreateShader(int type) {
+		return GLES20.glCreateShader(type);
+	}
+
+	public void glShaderSource(int shader, String source) {
+		GLES20.glShaderSource(shader, source);
+	}
+
+	public void glCompileShader(int shader) {
+		GLES20.glCompileShader(shader);
+	}
+
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		GLES20.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	public String glGetShaderInfoLog(int shader) {
+		return GLES20.glGetShaderInfoLog(shader);
+	}
+
+	public void glDeleteShader(int shader) {
+		GLES20.glDeleteShader(shader);
+	}
+
+	public int glCreateProgram() {
+		return GLES20.glCreateProgram();
+	}
+
+	public void glAttachShader(int program, int shader) {
+		GLES20.glAttachShader(program, shader);
+	}
+
+	public void glLinkProgram(int program) {
+		GLES20.glLinkProgram(program);
+	}
+
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		GLES20.glGetProgramiv(program, pname, params, offset);
+	}
+
+	public String glGetProgramInfoLog(int program) {
+		return GLES20.glGetProgramInfoLog(program);
+	}
+
+	public void glDeleteProgram(int program) {
+		GLES20.glDeleteProgram(program);
+	}
+
+	public int glGetAttribLocation(int program, String name) {
+		return GLES20.glGetAttribLocation(program, name);
+	}
+
+	public int glGetUniformLocation(int program, String name) {
+		return GLES20.glGetUniformLocation(program, name);
+	}
+
+	public void glUseProgram(int program) {
+		GLES20.glUseProgram(program);
+	}
+
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		GLES20.glUniform3fv(location, count, v, offset);
+	}
+
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		GLES20.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		GLES20.glVertexAttrib4fv(index, values, offset);
+	}
+
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		GLES20.glGenBuffers(n, buffers, offset);
+	}
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		GLES20.glDeleteBuffers(n, buffers, offset);
+	}
+
+	public void glBindBuffer(int target, int buffer) {
+		GLES20.glBindBuffer(target, buffer);
+	}
+
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		GLES20.glBufferData(target, size, data, usage);
+	}
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		GLES20.glBufferSubData(target, offset, size, data);
+	}
+
+	public void glEnableVertexAttribArray(int index) {
+		GLES20.glEnableVertexAttribArray(index);
+	}
+
+	public void glDisableVertexAttribArray(int index) {
+		GLES20.glDisableVertexAttribArray(index);
+	}
+
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		GLES20.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	public void glDrawArrays(int mode, int first, int count) {
+		GLES20.glDrawArrays(mode, first, count);
+	}
+
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		GLES20.glDrawElements(mode, count, type, offset);
+	}
+}
@@ -0,0 +1,98 @@
+package graphics.bradley.androidglviewer;
+
+// Counts durations in fixed log-linear buckets: 1 us wide below 16 us, then
+// 16 buckets per power of two, so any value is off by at most ~6%. Recording
+// is a few integer operations and never allocates; percentiles are read
+// back from the buckets.
+public class LatencyHistogram {
+
+	static final int SUB_BUCKETS = 16;
+	// up to 2^24 us (about 16 s); anything longer lands in the last bucket
+	static final int BUCKETS = (24 - 4 + 1) * SUB_BUCKETS;
+
+	private final int[] mCounts = new int[BUCKETS];
+	private long mCount;
+	private long mSumMicros;
+	private long mMaxMicros;
+
+	public void recordNanos(long nanos) {
+		record(nanos / 1000);
+	}
+
+	public void record(long micros) {
+		if (micros < 0)
+			micros = 0;
+		mCounts[bucketOf(micros)]++;
+		mCount++;
+		mSumMicros += micros;
+		if (micros > mMaxMicros)
+			mMaxMicros = micros;
+	}
+
+	static int bucketOf(long micros) {
+		if (micros < SUB_BUCKETS)
+			return (int) micros;
+		int msb = 63 - Long.numberOfLeadingZeros(micros);
+		int shift = msb - 4;
+		int bucket = (shift + 1) * SUB_BUCKETS + (int) ((micros >> shift) - SUB_BUCKETS);
+		return bucket < BUCKETS ? bucket : BUCKETS - 1;
+	}
+
+	// smallest value that falls in the bucket
+	static long lowerBound(int bucket) {
+		if (bucket < SUB_BUCKETS)
+			return bucket;
+		int shift = bucket / SUB_BUCKETS - 1;
+		return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+	}
+
+	// one past the largest value that falls in the bucket
+	static long upperBound(int bucket) {
+		return bucket == BUCKETS - 1 ? Long.MAX_VALUE : lowerBound(bucket + 1);
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKETS; i++)
+			mCounts[i] = 0;
+		mCount = 0;
+		mSumMicros = 0;
+		mMaxMicros = 0;
+	}
+
+	public long getCount() {
+		return mCount;
+	}
+
+	public long getMaxMicros() {
+		return mMaxMicros;
+	}
+
+	public long getMeanMicros() {
+		return mCount > 0 ? mSumMicros / mCount : 0;
+	}
+
+	// Value below which the given fraction (0..1) of the recorded durations
+	// fall, e.g. 0.99 for p99. Reported as the middle of its bucket.
+	public long getPercentileMicros(double fraction) {
+		if (mCount == 0)
+			return 0;
+		long rank = (long) Math.ceil(fraction * mCount);
+		if (rank < 1)
+			rank = 1;
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += mCounts[i];
+			if (seen >= rank) {
+				if (i == BUCKETS - 1)
+					return mMaxMicros;
+				long lower = lowerBound(i);
+				return Math.min(lower + (upperBound(i) - 1 - lower) / 2, mMaxMicros);
+			}
+		}
+		return mMaxMicros;
+	}
+
+	public int getBucketCount(int bucket) {
+		return mCounts[bucket];
+	}
+}
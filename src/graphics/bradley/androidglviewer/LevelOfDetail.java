@@ -0,0 +1,11 @@
+package graphics.bradley.androidglviewer;
+
+// A Drawable that can trade detail for speed depending on how large it
+// appears on screen.
+public interface LevelOfDetail {
+
+	// pixelRadius is the projected radius of the object's bounding sphere
+	void selectLevel(float pixelRadius);
+
+	int getLevel();
+}
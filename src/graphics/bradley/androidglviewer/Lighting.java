@@ -0,0 +1,123 @@
+package graphics.bradley.androidglviewer;
+
+// Lighting quality tiers, cheapest first, and the shaders for them. Every
+// variant comes from one template: the tier and the material's features
+// are #defines put in front of it, so the GLSL compiler strips what a
+// variant does not need.
+//
+//   GOURAUD  diffuse only, worked out per vertex; the fragment shader
+//            only writes the interpolated color
+//   DIFFUSE  diffuse per pixel, no specular
+//   PHONG    diffuse and Blinn-Phong specular per pixel
+//
+// Per-pixel lighting is what costs fill rate when a close-up covers the
+// screen, so the renderer can drop tiers to hold its frame time (see
+// LightingSelector). Drawables ask getProgram() again when getVersion()
+// changes.
+public class Lighting {
+
+	public static final int GOURAUD = 0;
+	public static final int DIFFUSE = 1;
+	public static final int PHONG = 2;
+	public static final int TIERS = 3;
+
+	// not a tier: let LightingSelector pick one
+	public static final int AUTO = -1;
+
+	private static final String[] NAMES = { "gouraud", "diffuse", "phong" };
+
+	// Lights a surface of the given color with the directional light, in
+	// eye space, where the viewer is at the origin. Blinn-Phong needs about
+	// four times the exponent of the Phong highlight it replaces (100) for
+	// a highlight of the same size.
+	private static final String SHADE =
+			"uniform mediump vec3 lightDir;\n" +
+			"vec4 shade(vec4 color, vec3 normal, vec3 pos) {\n" +
+			"	vec3 Nn = normalize(normal);\n" +
+			"	vec3 Ln = normalize(lightDir);\n" +
+			"	vec4 c = 0.9 * color * max(dot(Nn, Ln), 0.0);\n" +
+			"#ifdef SPECULAR\n" +
+			"	vec3 H = normalize(Ln - normalize(pos));\n" +
+			"	c += vec4(0.9 * pow(max(dot(Nn, H), 0.0), 400.0));\n" +
+			"#endif\n" +
+			"	return c;\n" +
+			"}\n";
+
+	private static final String VERTEX_TEMPLATE =
+			"uniform mat4 uMVPMatrix, uMVMatrix, uNormalMat;\n" +
+			"attribute vec4 vPosition;\n" +
+			"attribute vec4 vColor;\n" +
+			"attribute vec3 vNormal;\n" +
+			"varying vec4 varyingColor;\n" +
+			"#ifdef PER_VERTEX\n" +
+			SHADE +
+			"#else\n" +
+			"varying vec3 varyingNormal;\n" +
+			"varying vec3 varyingPos;\n" +
+			"#endif\n" +
+			"void main() {\n" +
+			"	vec3 normal = (uNormalMat * vec4(vNormal, 0.0)).xyz;\n" +
+			"	vec3 pos = (uMVMatrix * vPosition).xyz;\n" +
+			"#ifdef PER_VERTEX\n" +
+			"	varyingColor = shade(vColor, normal, pos);\n" +
+			"#else\n" +
+			"	varyingColor = vColor;\n" +
+			"	varyingNormal = normal;\n" +
+			"	varyingPos = pos;\n" +
+			"#endif\n" +
+			"	gl_Position = uMVPMatrix * vPosition;\n" +
+			"}\n";
+
+	private static final String FRAGMENT_TEMPLATE =
+			"precision mediump float;\n" +
+			"varying vec4 varyingColor;\n" +
+			"#ifndef PER_VERTEX\n" +
+			SHADE +
+			"varying vec3 varyingNormal;\n" +
+			"varying vec3 varyingPos;\n" +
+			"#endif\n" +
+			"void main() {\n" +
+			"#ifdef PER_VERTEX\n" +
+			"	gl_FragColor = varyingColor;\n" +
+			"#else\n" +
+			"	gl_FragColor = shade(varyingColor, varyingNormal, varyingPos);\n" +
+			"#endif\n" +
+			"}\n";
+
+	private static int sTier = PHONG;
+	private static int sVersion;
+
+	public static String getName(int tier) {
+		return tier == AUTO ? "auto" : NAMES[tier];
+	}
+
+	// the tier drawables use; GL thread
+	public static int getTier() {
+		return sTier;
+	}
+
+	public static void setTier(int tier) {
+		if (tier != sTier) {
+			sTier = tier;
+			sVersion++;
+		}
+	}
+
+	// changes whenever the tier does
+	public static int getVersion() {
+		return sVersion;
+	}
+
+	// The program for the tier. Only PHONG has a specular highlight, and
+	// only for materials that want one: a highlight as tight as the balls'
+	// is much smaller than a triangle, so sampling it at the vertices would
+	// only make it flicker as they turn.
+	public static ShaderProgram getProgram(int tier, boolean specular) {
+		String defines = "";
+		if (tier == GOURAUD)
+			defines += "#define PER_VERTEX\n";
+		if (specular && tier == PHONG)
+			defines += "#define SPECULAR\n";
+		return ShaderRegistry.getProgram(defines + VERTEX_TEMPLATE, defines + FRAGMENT_TEMPLATE);
+	}
+}
@@ -0,0 +1,102 @@
+package graphics.bradley.androidglviewer;
+
+// Picks the lighting tier for Lighting.AUTO from the time between frames
+// while the view renders continuously. The GPU only shows up there: a
+// frame it cannot finish in time holds up the next swap, so a tier that is
+// too expensive makes frames miss vsync and the intervals grow.
+//
+// Once WINDOW frames average more than OVER_BUDGET times the budget, it
+// drops a tier. That hides any headroom there may be again (frames cannot
+// come faster than vsync), so after PROBE_NANOS at a lower tier it tries
+// the next one up; each probe that fails doubles the wait, up to
+// MAX_PROBE_NANOS, and one that holds resets it.
+public class LightingSelector {
+
+	// frames averaged per decision, about half a second at 60 fps
+	static final int WINDOW = 30;
+
+	// a missed vsync doubles an interval, so this only trips on real misses
+	static final float OVER_BUDGET = 1.25f;
+
+	static final long PROBE_NANOS = 2000000000L;
+	static final long MAX_PROBE_NANOS = 32000000000L;
+
+	// longer gaps are the view resting between requests, not frames
+	static final long MAX_INTERVAL_NANOS = 100000000L;
+
+	private long mBudget = (long) (1e9 / FramePacer.DEFAULT_RATE);
+
+	private int mTier = Lighting.PHONG;
+	private long mTierSince;
+	private boolean mProbing;
+	private long mProbeDelay = PROBE_NANOS;
+
+	private long mLastFrame;
+	private long mSum;
+	private int mCount;
+
+	// nanoseconds per frame, e.g. the frame pacer's interval
+	public void setBudget(long nanos) {
+		mBudget = nanos;
+	}
+
+	public long getBudget() {
+		return mBudget;
+	}
+
+	// Starts again from the best tier, e.g. when auto is chosen again.
+	public void reset() {
+		mTier = Lighting.PHONG;
+		mTierSince = 0;
+		mProbing = false;
+		mProbeDelay = PROBE_NANOS;
+		mLastFrame = 0;
+		mSum = mCount = 0;
+	}
+
+	// GL thread, at the start of every frame, with its time
+	// (System.nanoTime()). Returns the tier to draw it with.
+	public int onFrame(long now) {
+		long interval = now - mLastFrame;
+		boolean counted = mLastFrame != 0 && interval <= MAX_INTERVAL_NANOS;
+		mLastFrame = now;
+		if (mTierSince == 0)
+			mTierSince = now;
+		if (!counted) {
+			// a new run of frames; the last one's partial window is stale
+			mSum = mCount = 0;
+			return mTier;
+		}
+
+		mSum += interval;
+		if (++mCount < WINDOW)
+			return mTier;
+		long mean = mSum / mCount;
+		mSum = mCount = 0;
+
+		if (mean > mBudget * OVER_BUDGET) {
+			if (mTier > Lighting.GOURAUD) {
+				if (mProbing)
+					mProbeDelay = Math.min(mProbeDelay * 2, MAX_PROBE_NANOS);
+				mTier--;
+				mTierSince = now;
+			}
+			mProbing = false;
+		}
+		else {
+			if (mProbing)
+				mProbeDelay = PROBE_NANOS;
+			mProbing = false;
+			if (mTier < Lighting.PHONG && now - mTierSince >= mProbeDelay) {
+				mTier++;
+				mTierSince = now;
+				mProbing = true;
+			}
+		}
+		return mTier;
+	}
+
+	public int getTier() {
+		return mTier;
+	}
+}
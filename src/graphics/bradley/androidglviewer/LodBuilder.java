@@ -0,0 +1,129 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import android.opengl.GLES20;
+
+// Builds the coarser levels of a ModelPart on a MeshLoader thread with
+// MeshSimplifier, each with about half the triangles of the one before,
+// until MIN_TRIANGLES or MAX_ERROR is reached. A level keeps the packed
+// vertices it still uses byte for byte, whatever the layout holds, in the
+// order its triangles, reordered for the vertex cache, first use them.
+//
+// The finest level is the chunk as read, reordered the same way. That is
+// done here rather than by the reader so as not to hold up streaming.
+public class LodBuilder implements MeshLoader.Job {
+
+	static final int MIN_TRIANGLES = 128;
+	// coarser than this is not worth drawing at any size
+	static final float MAX_ERROR = 0.05f;
+	// give up once a level would save less than this fraction
+	static final float MIN_REDUCTION = 0.1f;
+
+	private final ModelPart mPart;
+	private final Mesh mSource;
+	private final VertexLayout mLayout;
+	private final ByteBuffer mVertexData;
+
+	private Mesh[] mLevels;
+	private float[] mErrors;
+
+	// GL thread; the source mesh must not change afterwards
+	public LodBuilder(ModelPart part, Mesh source) {
+		mPart = part;
+		mSource = source;
+		mLayout = source.getLayout();
+		// a view of its own, since the GL thread moves the original's position
+		mVertexData = source.getVertexData().duplicate();
+		mVertexData.order(source.getVertexData().order());
+	}
+
+	public int getPartCount() {
+		return 1;
+	}
+
+	public void buildPart(int part) {
+		int vertexCount = mSource.getVertexCount();
+		float[] positions = new float[vertexCount * 3];
+		if (!mLayout.unpack(mVertexData, vertexCount, VertexLayout.POSITION, positions))
+			throw new IllegalArgumentException("Mesh has no positions");
+
+		int indexCount = mSource.getIndexCount();
+		boolean shorts = mSource.getIndexType() == GLES20.GL_UNSIGNED_SHORT;
+		ByteBuffer bb = ByteBuffer.allocate(indexCount * (shorts ? 2 : 4));
+		bb.order(ByteOrder.nativeOrder());
+		mSource.getIndices(bb);
+		int[] indices = new int[indexCount];
+		for (int i = 0; i < indexCount; i++)
+			indices[i] = shorts ? bb.getShort(i * 2) & 0xffff : bb.getInt(i * 4);
+
+		ArrayList<Mesh> levels = new ArrayList<Mesh>();
+		ArrayList<Float> errors = new ArrayList<Float>();
+		levels.add(buildLevel(indices.clone(), vertexCount));
+		errors.add(0f);
+
+		MeshSimplifier simplifier = new MeshSimplifier(positions, vertexCount, indices, indexCount);
+		int triangles = indexCount / 3;
+		while (triangles / 2 >= MIN_TRIANGLES) {
+			int left = simplifier.simplify(triangles / 2, MAX_ERROR);
+			if (left > triangles * (1 - MIN_REDUCTION))
+				break;
+			levels.add(buildLevel(simplifier.getIndices(), vertexCount));
+			errors.add(simplifier.getError());
+			triangles = left;
+		}
+
+		mLevels = levels.toArray(new Mesh[levels.size()]);
+		mErrors = new float[errors.size()];
+		for (int i = 0; i < mErrors.length; i++)
+			mErrors[i] = errors.get(i);
+	}
+
+	// a mesh of only the vertices the indices still use
+	private Mesh buildLevel(int[] indices, int vertexCount) {
+		VertexCacheOptimizer.optimize(indices, 0, indices.length, vertexCount);
+		int[] remap = VertexCacheOptimizer.reorderVertices(indices, indices.length, vertexCount);
+		int used = 0;
+		for (int v = 0; v < vertexCount; v++) {
+			if (remap[v] >= 0)
+				used++;
+		}
+
+		int stride = mLayout.getStride();
+		ByteBuffer vertices = ByteBuffer.allocateDirect(used * stride);
+		vertices.order(ByteOrder.nativeOrder());
+		ByteBuffer source = mVertexData.duplicate();
+		for (int v = 0; v < vertexCount; v++) {
+			if (remap[v] < 0)
+				continue;
+			source.limit((v + 1) * stride);
+			source.position(v * stride);
+			vertices.position(remap[v] * stride);
+			vertices.put(source);
+		}
+
+		Mesh mesh = new Mesh(mLayout, false);
+		mesh.setVertices(vertices, used);
+		mesh.setBounds(mSource.getBounds());
+		if (used <= 65536) {
+			short[] shorts = new short[indices.length];
+			for (int i = 0; i < indices.length; i++)
+				shorts[i] = (short) indices[i];
+			mesh.setIndices(shorts);
+		}
+		else
+			mesh.setIndices(indices);
+		return mesh;
+	}
+
+	// after buildPart(), including the finest
+	public int getLevelCount() {
+		return mLevels.length;
+	}
+
+	public void apply(Mesh mesh) {
+		mPart.setLevels(mLevels, mErrors);
+	}
+}
@@ -1,19 +1,66 @@
 package graphics.bradley.androidglviewer;
 
-import android.opengl.GLSurfaceView;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.net.Uri;
 import android.os.Bundle;
+import android.os.Handler;
 import android.app.Activity;
+import android.util.Log;
+import android.view.Gravity;
 import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+import android.widget.Toast;
 
 public class MainGLActivity extends Activity {
-	
-	private GLSurfaceView mGLView;
+
+	private MyGLSurfaceView mGLView;
+
+	// frame stats drawn over the GL view while enabled from the menu
+	private TextView mStatsOverlay;
+	private boolean mStatsShown;
+	private final Handler mHandler = new Handler();
+	private static final long OVERLAY_REFRESH_MS = 500;
+
+	private final Runnable mRefreshOverlay = new Runnable() {
+		public void run() {
+			mStatsOverlay.setText(mGLView.getRenderer().getFrameStats().getSummary());
+			mHandler.postDelayed(this, OVERLAY_REFRESH_MS);
+		}
+	};
 
 	@Override
 	protected void onCreate(Bundle savedInstanceState) {
 		super.onCreate(savedInstanceState);
 		mGLView = new MyGLSurfaceView(this);
-		setContentView(mGLView);
+
+		mStatsOverlay = new TextView(this);
+		mStatsOverlay.setTypeface(Typeface.MONOSPACE);
+		mStatsOverlay.setTextSize(12);
+		mStatsOverlay.setTextColor(Color.WHITE);
+		mStatsOverlay.setBackgroundColor(Color.argb(128, 0, 0, 0));
+		mStatsOverlay.setPadding(8, 8, 8, 8);
+		mStatsOverlay.setVisibility(View.GONE);
+
+		FrameLayout layout = new FrameLayout(this);
+		layout.addView(mGLView);
+		layout.addView(mStatsOverlay, new FrameLayout.LayoutParams(
+				FrameLayout.LayoutParams.WRAP_CONTENT, FrameLayout.LayoutParams.WRAP_CONTENT,
+				Gravity.TOP | Gravity.LEFT));
+		setContentView(layout);
+		
+		// opened as the viewer of a model file
+		Uri model = getIntent().getData();
+		if (model != null && "file".equals(model.getScheme()))
+			mGLView.loadModel(new File(model.getPath()));
 	}
 
 	@Override
@@ -22,7 +69,86 @@ public class MainGLActivity extends Activity {
 		getMenuInflater().inflate(R.menu.main_gl, menu);
 		return true;
 	}
-	
+
+	@Override
+	public boolean onOptionsItemSelected(MenuItem item) {
+		final FrameStats stats = mGLView.getRenderer().getFrameStats();
+
+		if (item.getItemId() == R.id.action_stats_overlay) {
+			item.setChecked(!item.isChecked());
+			showStatsOverlay(item.isChecked());
+			return true;
+		}
+		if (item.getItemId() == R.id.action_stats_finish) {
+			item.setChecked(!item.isChecked());
+			stats.setFinish(item.isChecked());
+			return true;
+		}
+		int lighting = lightingFor(item.getItemId());
+		if (lighting != NO_LIGHTING) {
+			item.setChecked(true);
+			mGLView.setLighting(lighting);
+			return true;
+		}
+		if (item.getItemId() == R.id.action_stats_dump) {
+			final File file = new File(getFilesDir(), "frame_stats_" + System.currentTimeMillis() + ".csv");
+			// the stats belong to the GL thread, so read them there
+			mGLView.queueEvent(new Runnable() {
+				public void run() {
+					final String message = dumpStats(stats, file);
+					runOnUiThread(new Runnable() {
+						public void run() {
+							Toast.makeText(MainGLActivity.this, message, Toast.LENGTH_LONG).show();
+						}
+					});
+				}
+			});
+			return true;
+		}
+		return super.onOptionsItemSelected(item);
+	}
+
+	private static final int NO_LIGHTING = -2;
+
+	// the Lighting mode a menu item selects, or NO_LIGHTING
+	private static int lightingFor(int itemId) {
+		if (itemId == R.id.action_lighting_auto)
+			return Lighting.AUTO;
+		if (itemId == R.id.action_lighting_gouraud)
+			return Lighting.GOURAUD;
+		if (itemId == R.id.action_lighting_diffuse)
+			return Lighting.DIFFUSE;
+		if (itemId == R.id.action_lighting_phong)
+			return Lighting.PHONG;
+		return NO_LIGHTING;
+	}
+
+	private void showStatsOverlay(boolean show) {
+		mStatsShown = show;
+		mGLView.getRenderer().getFrameStats().setSummaryWanted(show);
+		mStatsOverlay.setVisibility(show ? View.VISIBLE : View.GONE);
+		mHandler.removeCallbacks(mRefreshOverlay);
+		if (show)
+			mHandler.post(mRefreshOverlay);
+	}
+
+	private static String dumpStats(FrameStats stats, File file) {
+		PrintWriter out = null;
+		try {
+			out = new PrintWriter(new FileWriter(file));
+			stats.dump(out);
+			return "Frame stats written to " + file.getPath();
+		}
+		catch (IOException e) {
+			Log.e("Frame stats:", "Could not write " + file.getPath(), e);
+			return "Could not write frame stats: " + e.getMessage();
+		}
+		finally {
+			if (out != null)
+				out.close();
+		}
+	}
+
 	@Override
 	protected void onResume() {
 	    super.onResume();
@@ -33,12 +159,15 @@ public class MainGLActivity extends Activity {
         if (mGLView != null) {
             mGLView.onResume();
         }
+        if (mStatsShown)
+        	mHandler.post(mRefreshOverlay);
     }
-	 
+
     @Override
     protected void onPause() {
         super.onPause();
- 
+        mHandler.removeCallbacks(mRefreshOverlay);
+
         /*
 		 * The activity must call the GL surface view's
 		 * onPause() on activity onPause().
@@ -0,0 +1,23 @@
+package graphics.bradley.androidglviewer;
+
+// Per-object surface properties. Kept apart from the geometry so that many
+// objects can share one cached Mesh and still look different.
+public class Material {
+
+	public final float[] color = new float[4];
+
+	public Material(float r, float g, float b) {
+		color[0] = r;
+		color[1] = g;
+		color[2] = b;
+		color[3] = 1;
+	}
+
+	public boolean sameAs(Material other) {
+		for (int i = 0; i < color.length; i++) {
+			if (color[i] != other.color[i])
+				return false;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,127 @@
+package graphics.bradley.androidglviewer;
+
+// A stack of column-major 4x4 matrices, laid out like android.opengl.Matrix,
+// that lives in one preallocated float pool. push/pop and every transform
+// work in place, so composing per-object transforms in the frame loop never
+// allocates.
+public class MatrixStack {
+
+	private final float[] mPool;
+	private final float[] mScratch = new float[32];
+	private int mTop;	// offset of the current matrix in mPool
+
+	public MatrixStack(int maxDepth) {
+		mPool = new float[maxDepth * 16];
+		loadIdentity();
+	}
+
+	// Saves the current matrix; the copy on top can then be modified.
+	public void push() {
+		if (mTop + 32 > mPool.length)
+			throw new IllegalStateException("Matrix stack overflow");
+		System.arraycopy(mPool, mTop, mPool, mTop + 16, 16);
+		mTop += 16;
+	}
+
+	public void pop() {
+		if (mTop == 0)
+			throw new IllegalStateException("Matrix stack underflow");
+		mTop -= 16;
+	}
+
+	public int getDepth() {
+		return mTop / 16 + 1;
+	}
+
+	public void loadIdentity() {
+		for (int i = 0; i < 16; i++)
+			mPool[mTop + i] = (i % 5 == 0) ? 1 : 0;
+	}
+
+	public void load(float[] m, int offset) {
+		System.arraycopy(m, offset, mPool, mTop, 16);
+	}
+
+	// Copies the current matrix out, e.g. to hand it to glUniformMatrix4fv.
+	public void get(float[] dst, int offset) {
+		System.arraycopy(mPool, mTop, dst, offset, 16);
+	}
+
+	// current = current * m
+	public void multiply(float[] m, int offset) {
+		float[] a = mPool;
+		int ao = mTop;
+		for (int col = 0; col < 4; col++) {
+			float b0 = m[offset + col * 4];
+			float b1 = m[offset + col * 4 + 1];
+			float b2 = m[offset + col * 4 + 2];
+			float b3 = m[offset + col * 4 + 3];
+			for (int row = 0; row < 4; row++) {
+				mScratch[col * 4 + row] = a[ao + row] * b0 + a[ao + 4 + row] * b1
+						+ a[ao + 8 + row] * b2 + a[ao + 12 + row] * b3;
+			}
+		}
+		System.arraycopy(mScratch, 0, mPool, mTop, 16);
+	}
+
+	// current = current * m, where both are affine (bottom row 0, 0, 0, 1)
+	public void multiplyAffine(float[] m, int offset) {
+		AffineMath.multiplyAffine(mScratch, 0, mPool, mTop, m, offset);
+		System.arraycopy(mScratch, 0, mPool, mTop, 16);
+	}
+
+	// current = current * T(x, y, z), as Matrix.translateM(m, 0, x, y, z)
+	public void translate(float x, float y, float z) {
+		float[] m = mPool;
+		int o = mTop;
+		for (int i = 0; i < 4; i++)
+			m[o + 12 + i] += m[o + i] * x + m[o + 4 + i] * y + m[o + 8 + i] * z;
+	}
+
+	// current = current * S(x, y, z), as Matrix.scaleM(m, 0, x, y, z)
+	public void scale(float x, float y, float z) {
+		float[] m = mPool;
+		int o = mTop;
+		for (int i = 0; i < 4; i++) {
+			m[o + i] *= x;
+			m[o + 4 + i] *= y;
+			m[o + 8 + i] *= z;
+		}
+	}
+
+	// current = current * R(angle in degrees, around x, y, z)
+	public void rotate(float angle, float x, float y, float z) {
+		float[] r = mScratch;
+		int o = 16;	// build R in the upper half of the scratch array
+
+		float a = (float) Math.toRadians(angle);
+		float s = (float) Math.sin(a);
+		float c = (float) Math.cos(a);
+		float length = (float) Math.sqrt(x * x + y * y + z * z);
+		if (length != 1 && length != 0) {
+			x /= length;
+			y /= length;
+			z /= length;
+		}
+		float nc = 1 - c;
+
+		r[o]      = x * x * nc + c;
+		r[o + 1]  = x * y * nc + z * s;
+		r[o + 2]  = z * x * nc - y * s;
+		r[o + 3]  = 0;
+		r[o + 4]  = x * y * nc - z * s;
+		r[o + 5]  = y * y * nc + c;
+		r[o + 6]  = y * z * nc + x * s;
+		r[o + 7]  = 0;
+		r[o + 8]  = z * x * nc + y * s;
+		r[o + 9]  = y * z * nc - x * s;
+		r[o + 10] = z * z * nc + c;
+		r[o + 11] = 0;
+		r[o + 12] = 0;
+		r[o + 13] = 0;
+		r[o + 14] = 0;
+		r[o + 15] = 1;
+
+		multiply(r, o);
+	}
+}
@@ -0,0 +1,293 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+// Triangle geometry stored in GPU buffer objects. All attributes of a vertex
+// are interleaved in one vertex buffer as described by a VertexLayout, so
+// nothing is copied from client memory on draw(). The packed CPU-side copy
+// is kept and only sent again after it changes.
+public class Mesh {
+
+	private static int sNextId;
+
+	private final VertexLayout mLayout;
+	private final int mUsage;
+	private final int mId;
+
+	private ByteBuffer mVertexData;
+	private int mVertexCount;
+	private Bounds mBounds = new Bounds();
+
+	// indices are kept as shorts whenever the vertex count allows it; ints
+	// need the GL_OES_element_index_uint extension
+	private short[] mShortIndices;
+	private int[] mIntIndices;
+	private int mIndexCount;
+	private int mIndexType = GLES20.GL_UNSIGNED_SHORT;
+
+	// indices already laid out for the GPU, e.g. mapped from a MeshFile
+	private ByteBuffer mIndexData;
+
+	private final int[] mBuffers = new int[2];	// vertex buffer, index buffer
+	private int mVertexBytes, mIndexBytes;		// sizes currently allocated on the GPU
+	private int mGeneration;					// RenderContext generation of mBuffers
+	private boolean mVerticesDirty, mIndicesDirty;
+
+	private ByteBuffer mIndexStaging;
+
+	// attribute locations of the program this mesh was last drawn with
+	private ShaderProgram mBoundProgram;
+	private int mBoundLinkCount;
+	private final int[] mHandles;
+
+	// dynamic meshes hint the driver that their contents change often
+	public Mesh(VertexLayout layout, boolean dynamic) {
+		mLayout = layout;
+		mUsage = dynamic ? GLES20.GL_DYNAMIC_DRAW : GLES20.GL_STATIC_DRAW;
+		mHandles = new int[layout.getAttributeCount()];
+		mId = ++sNextId;
+	}
+
+	// small number unique to this mesh, used in RenderQueue sort keys
+	public int getId() {
+		return mId;
+	}
+
+	public VertexLayout getLayout() {
+		return mLayout;
+	}
+
+	// Packs 3-float-per-vertex arrays into this mesh's layout and computes
+	// the bounds from the positions.
+	public void setVertices(float[] positions, float[] normals, float[] colors) {
+		int vertexCount = positions.length / 3;
+		setVertices(mLayout.pack(vertexCount, positions, normals, colors), vertexCount);
+		mBounds = Bounds.fromPositions(positions, vertexCount);
+	}
+
+	// data must be a direct buffer already laid out as getLayout() describes;
+	// call setBounds() as well, since the positions are not inspected
+	public void setVertices(ByteBuffer data, int vertexCount) {
+		mVertexData = data;
+		mVertexCount = vertexCount;
+		mVerticesDirty = true;
+	}
+
+	// Call after modifying the buffer that was already handed to this mesh.
+	public void markVerticesDirty() {
+		mVerticesDirty = true;
+	}
+
+	public void setIndices(short[] indices) {
+		mShortIndices = indices;
+		mIntIndices = null;
+		mIndexData = null;
+		mIndexCount = indices != null ? indices.length : 0;
+		mIndexType = GLES20.GL_UNSIGNED_SHORT;
+		mIndicesDirty = true;
+	}
+
+	public void setIndices(int[] indices) {
+		mIntIndices = indices;
+		mShortIndices = null;
+		mIndexData = null;
+		mIndexCount = indices != null ? indices.length : 0;
+		mIndexType = GLES20.GL_UNSIGNED_INT;
+		mIndicesDirty = true;
+	}
+
+	// data must be a direct buffer in native order holding count indices of
+	// the given type (GL_UNSIGNED_SHORT or GL_UNSIGNED_INT); it is uploaded
+	// as it is, without a staging copy
+	public void setIndices(ByteBuffer data, int count, int type) {
+		mIndexData = data;
+		mShortIndices = null;
+		mIntIndices = null;
+		mIndexCount = count;
+		mIndexType = type;
+		mIndicesDirty = true;
+	}
+
+	public void setBounds(Bounds bounds) {
+		mBounds = bounds;
+	}
+
+	// local-space bounds, for culling
+	public Bounds getBounds() {
+		return mBounds;
+	}
+
+	public int getIndexCount() {
+		return mIndexCount;
+	}
+
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
+	// GL_UNSIGNED_SHORT or GL_UNSIGNED_INT
+	public int getIndexType() {
+		return mIndexType;
+	}
+
+	// The packed vertices, as laid out by getLayout(); null until set.
+	public ByteBuffer getVertexData() {
+		return mVertexData;
+	}
+
+	// Copies the indices into bb at its position, in bb's order, e.g. to
+	// write them to a MeshFile.
+	public void getIndices(ByteBuffer bb) {
+		if (mShortIndices != null)
+			for (int i = 0; i < mIndexCount; i++)
+				bb.putShort(mShortIndices[i]);
+		else if (mIntIndices != null)
+			for (int i = 0; i < mIndexCount; i++)
+				bb.putInt(mIntIndices[i]);
+		else if (mIndexData != null) {
+			ByteBuffer view = mIndexData.duplicate();
+			view.order(mIndexData.order());
+			view.clear();
+			for (int i = 0; i < mIndexCount; i++) {
+				if (mIndexType == GLES20.GL_UNSIGNED_SHORT)
+					bb.putShort(view.getShort());
+				else
+					bb.putInt(view.getInt());
+			}
+		}
+	}
+
+	// false while the geometry is still being built, e.g. by MeshLoader
+	public boolean isReady() {
+		return mVertexCount > 0;
+	}
+
+	// Sends any changed geometry to the GPU. Safe to call every frame.
+	public void upload() {
+		if (mGeneration != RenderContext.getGeneration())
+			forgetBuffers();
+		if (mVerticesDirty)
+			uploadVertices();
+		if (mIndicesDirty)
+			uploadIndices();
+	}
+
+	private void uploadVertices() {
+		RenderBackend gl = RenderContext.get();
+		if (mBuffers[0] == 0)
+			gl.glGenBuffers(1, mBuffers, 0);
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+
+		int bytes = mVertexCount * mLayout.getStride();
+		mVertexData.position(0);
+		if (bytes == mVertexBytes) {
+			// same size: update in place instead of reallocating
+			gl.glBufferSubData(GLES20.GL_ARRAY_BUFFER, 0, bytes, mVertexData);
+		}
+		else {
+			gl.glBufferData(GLES20.GL_ARRAY_BUFFER, bytes, mVertexData, mUsage);
+			mVertexBytes = bytes;
+		}
+		mVerticesDirty = false;
+	}
+
+	private void uploadIndices() {
+		RenderBackend gl = RenderContext.get();
+		if (mIndexCount == 0) {
+			mIndicesDirty = false;
+			return;
+		}
+
+		int bytes = mIndexCount * (mIndexType == GLES20.GL_UNSIGNED_SHORT ? 2 : 4);
+		ByteBuffer data = mIndexData;
+		if (data == null) {
+			if (mIndexStaging == null || mIndexStaging.capacity() < bytes) {
+				mIndexStaging = ByteBuffer.allocateDirect(bytes);
+				mIndexStaging.order(ByteOrder.nativeOrder());
+			}
+			mIndexStaging.clear();
+			if (mShortIndices != null)
+				mIndexStaging.asShortBuffer().put(mShortIndices);
+			else
+				mIndexStaging.asIntBuffer().put(mIntIndices);
+			data = mIndexStaging;
+		}
+		data.position(0);
+
+		if (mBuffers[1] == 0)
+			gl.glGenBuffers(1, mBuffers, 1);
+		gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+
+		if (bytes == mIndexBytes) {
+			gl.glBufferSubData(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0, bytes, data);
+		}
+		else {
+			gl.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, bytes, data, mUsage);
+			mIndexBytes = bytes;
+		}
+		mIndicesDirty = false;
+	}
+
+	// Draws the mesh with the given (already bound) program. Attributes the
+	// program does not use are skipped.
+	public void draw(ShaderProgram program) {
+		RenderBackend gl = RenderContext.get();
+		upload();
+
+		if (program != mBoundProgram || program.getLinkCount() != mBoundLinkCount) {
+			for (int i = 0; i < mHandles.length; i++)
+				mHandles[i] = program.getAttribLocation(mLayout.getAttribute(i).name);
+			mBoundProgram = program;
+			mBoundLinkCount = program.getLinkCount();
+		}
+
+		gl.glBindBuffer(GLES20.GL_ARRAY_BUFFER, mBuffers[0]);
+
+		int stride = mLayout.getStride();
+		for (int i = 0; i < mHandles.length; i++) {
+			if (mHandles[i] < 0)
+				continue;
+
+			VertexLayout.Attribute attr = mLayout.getAttribute(i);
+			gl.glEnableVertexAttribArray(mHandles[i]);
+			gl.glVertexAttribPointer(mHandles[i], attr.components,
+										attr.type, attr.normalized,
+										stride, attr.offset);
+		}
+
+		if (mIndexCount > 0) {
+			gl.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, mBuffers[1]);
+			gl.glDrawElements(GLES20.GL_TRIANGLES, mIndexCount, mIndexType, 0);
+		}
+		else {
+			gl.glDrawArrays(GLES20.GL_TRIANGLES, 0, mVertexCount);
+		}
+
+		for (int i = 0; i < mHandles.length; i++) {
+			if (mHandles[i] >= 0)
+				gl.glDisableVertexAttribArray(mHandles[i]);
+		}
+	}
+
+	// Frees the GPU buffers. The CPU-side data is kept, so the next draw()
+	// uploads it again.
+	public void release() {
+		// buffers of a lost context are gone already
+		if (mGeneration == RenderContext.getGeneration()) {
+			RenderBackend gl = RenderContext.get();
+			gl.glDeleteBuffers(2, mBuffers, 0);
+		}
+		forgetBuffers();
+	}
+
+	private void forgetBuffers() {
+		mBuffers[0] = mBuffers[1] = 0;
+		mVertexBytes = mIndexBytes = 0;
+		mVerticesDirty = mVertexData != null;
+		mIndicesDirty = mIndexCount > 0;
+		mGeneration = RenderContext.getGeneration();
+	}
+}
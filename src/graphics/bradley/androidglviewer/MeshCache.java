@@ -0,0 +1,30 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.HashMap;
+
+// Hands out one shared Mesh per distinct piece of geometry, e.g. "cube" or
+// "sphere 1.0 30x60", so memory and build time scale with the number of
+// distinct meshes rather than with the number of objects in the scene.
+// Cached meshes are shared: treat them as immutable.
+public class MeshCache {
+
+	private static final HashMap<String, Mesh> sMeshes = new HashMap<String, Mesh>();
+
+	public static Mesh get(String key) {
+		return sMeshes.get(key);
+	}
+
+	public static void put(String key, Mesh mesh) {
+		sMeshes.put(key, mesh);
+	}
+
+	// Meshes keep their data when the EGL context is lost and upload it
+	// again in the next one, so this is only for dropping them for good.
+	public static void clear() {
+		sMeshes.clear();
+	}
+
+	public static int size() {
+		return sMeshes.size();
+	}
+}
@@ -0,0 +1,172 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import android.opengl.GLES20;
+
+// Turns triangles that index one shared vertex table, as OBJ and PLY files
+// do, into indexed meshes of at most MAX_VERTICES vertices each. Every chunk
+// uses 16-bit indices and can be uploaded and culled on its own, and all
+// the memory needed to build one is allocated once, up front, so the heap
+// used does not grow with the size of the model.
+//
+// A corner is a position index plus a normal index, or -1 when the file has
+// no normal for it; corners seen before in the same chunk reuse the same
+// vertex. Corners without a normal get the area-weighted average of their
+// triangles' normals within the chunk.
+public class MeshChunker {
+
+	// Where the corners' positions and normals come from.
+	public interface Source {
+		// writes x, y, z of the given position or normal to out[offset..]
+		void getPosition(int index, float[] out, int offset);
+		void getNormal(int index, float[] out, int offset);
+	}
+
+	public interface Listener {
+		// on the thread adding the triangles, once per finished chunk
+		void onChunk(Mesh mesh) throws IOException;
+	}
+
+	// every vertex of a chunk fits a GL_UNSIGNED_SHORT index
+	static final int MAX_VERTICES = 65536;
+	// about two triangles per vertex, as on a closed surface
+	static final int MAX_INDICES = 6 * MAX_VERTICES;
+
+	// open addressing, never more than half full
+	private static final int TABLE_BITS = 17;
+	private static final long EMPTY = -1;
+
+	private static final VertexLayout LAYOUT = VertexLayout.FLOAT_POSITIONS_UNCOLORED;
+
+	private final Source mSource;
+	private final Listener mListener;
+
+	private final long[] mKeys = new long[1 << TABLE_BITS];
+	private final int[] mValues = new int[1 << TABLE_BITS];
+
+	private final float[] mPositions = new float[MAX_VERTICES * 3];
+	private final float[] mNormals = new float[MAX_VERTICES * 3];
+	private final boolean[] mComputedNormal = new boolean[MAX_VERTICES];
+	private final short[] mIndices = new short[MAX_INDICES];
+	private int mVertexCount;
+	private int mIndexCount;
+
+	private long mTriangles;
+	private int mChunks;
+
+	public MeshChunker(Source source, Listener listener) {
+		mSource = source;
+		mListener = listener;
+		Arrays.fill(mKeys, EMPTY);
+	}
+
+	public void addTriangle(int p0, int n0, int p1, int n1, int p2, int n2) throws IOException {
+		if (mVertexCount + 3 > MAX_VERTICES || mIndexCount + 3 > MAX_INDICES)
+			flush();
+
+		int a = vertex(p0, n0);
+		int b = vertex(p1, n1);
+		int c = vertex(p2, n2);
+		mIndices[mIndexCount++] = (short) a;
+		mIndices[mIndexCount++] = (short) b;
+		mIndices[mIndexCount++] = (short) c;
+		mTriangles++;
+
+		if (n0 < 0 || n1 < 0 || n2 < 0) {
+			// twice the triangle's area in length, hence area weighted
+			float[] p = mPositions;
+			float ux = p[b * 3] - p[a * 3], uy = p[b * 3 + 1] - p[a * 3 + 1], uz = p[b * 3 + 2] - p[a * 3 + 2];
+			float vx = p[c * 3] - p[a * 3], vy = p[c * 3 + 1] - p[a * 3 + 1], vz = p[c * 3 + 2] - p[a * 3 + 2];
+			float nx = uy * vz - uz * vy;
+			float ny = uz * vx - ux * vz;
+			float nz = ux * vy - uy * vx;
+			addNormal(a, nx, ny, nz);
+			addNormal(b, nx, ny, nz);
+			addNormal(c, nx, ny, nz);
+		}
+	}
+
+	private void addNormal(int v, float nx, float ny, float nz) {
+		if (!mComputedNormal[v])
+			return;
+		mNormals[v * 3] += nx;
+		mNormals[v * 3 + 1] += ny;
+		mNormals[v * 3 + 2] += nz;
+	}
+
+	// index of the corner's vertex in this chunk, added if new
+	private int vertex(int position, int normal) {
+		long key = (long) position << 32 | (normal & 0xffffffffL);
+		int mask = mKeys.length - 1;
+		int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> (64 - TABLE_BITS));
+		while (mKeys[slot] != EMPTY) {
+			if (mKeys[slot] == key)
+				return mValues[slot];
+			slot = (slot + 1) & mask;
+		}
+
+		int v = mVertexCount++;
+		mKeys[slot] = key;
+		mValues[slot] = v;
+		mSource.getPosition(position, mPositions, v * 3);
+		if (normal >= 0) {
+			mSource.getNormal(normal, mNormals, v * 3);
+			mComputedNormal[v] = false;
+		}
+		else {
+			mNormals[v * 3] = mNormals[v * 3 + 1] = mNormals[v * 3 + 2] = 0;
+			mComputedNormal[v] = true;
+		}
+		return v;
+	}
+
+	// Hands whatever has been added since the last chunk to the listener.
+	public void flush() throws IOException {
+		if (mIndexCount == 0)
+			return;
+
+		for (int v = 0; v < mVertexCount; v++) {
+			if (!mComputedNormal[v])
+				continue;
+			float x = mNormals[v * 3], y = mNormals[v * 3 + 1], z = mNormals[v * 3 + 2];
+			float length = (float) Math.sqrt(x * x + y * y + z * z);
+			if (length > 0) {
+				mNormals[v * 3] = x / length;
+				mNormals[v * 3 + 1] = y / length;
+				mNormals[v * 3 + 2] = z / length;
+			}
+		}
+
+		// packed straight into direct buffers, which the mesh keeps
+		ByteBuffer vertices = ByteBuffer.allocateDirect(mVertexCount * LAYOUT.getStride());
+		vertices.order(ByteOrder.nativeOrder());
+		LAYOUT.pack(vertices, 0, mVertexCount, mPositions, mNormals, null);
+
+		ByteBuffer indices = ByteBuffer.allocateDirect(mIndexCount * 2);
+		indices.order(ByteOrder.nativeOrder());
+		indices.asShortBuffer().put(mIndices, 0, mIndexCount);
+
+		Mesh mesh = new Mesh(LAYOUT, false);
+		mesh.setVertices(vertices, mVertexCount);
+		mesh.setBounds(Bounds.fromPositions(mPositions, mVertexCount));
+		mesh.setIndices(indices, mIndexCount, GLES20.GL_UNSIGNED_SHORT);
+
+		Arrays.fill(mKeys, EMPTY);
+		mVertexCount = 0;
+		mIndexCount = 0;
+		mChunks++;
+		mListener.onChunk(mesh);
+	}
+
+	public long getTriangleCount() {
+		return mTriangles;
+	}
+
+	public int getChunkCount() {
+		return mChunks;
+	}
+}
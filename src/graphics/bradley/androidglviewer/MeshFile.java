@@ -0,0 +1,264 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import android.opengl.GLES20;
+
+// A binary container for one Mesh, laid out so that it can be memory-mapped
+// and its vertex and index data handed straight to glBufferData, without
+// going through Java arrays. All values are little-endian, like every
+// Android device; sections start on 16 byte boundaries.
+//
+//     0   magic "GLVM"
+//     4   version
+//     8   file length in bytes
+//     12  CRC-32 of the whole file, taken with this field set to 0
+//     16  vertex count
+//     20  stride (bytes per vertex)
+//     24  attribute count
+//     28  offset of the vertex data
+//     32  index count
+//     36  index type (GL_UNSIGNED_SHORT or GL_UNSIGNED_INT)
+//     40  offset of the index data
+//     48  bounds: min x, y, z, max x, y, z, center x, y, z, radius (floats)
+//     96  attribute descriptors, 32 bytes each:
+//             0  semantic (VertexLayout.POSITION, ...)
+//             4  GL type
+//             8  components (short)
+//             10 normalized (byte)
+//             11 name length (byte)
+//             12 offset in the vertex
+//             16 name, ASCII, up to 16 bytes
+//
+// followed by the vertex data and then the index data.
+public class MeshFile {
+
+	static final int MAGIC = 'G' | 'L' << 8 | 'V' << 16 | 'M' << 24;
+	static final int VERSION = 1;
+
+	static final int HEADER_SIZE = 96;
+	static final int ATTRIBUTE_SIZE = 32;
+	static final int MAX_NAME_LENGTH = 16;
+
+	private static final int CHECKSUM_OFFSET = 12;
+	private static final int BOUNDS_OFFSET = 48;
+
+	// Writes the mesh, which must have its vertices set.
+	public static void write(Mesh mesh, File file) throws IOException {
+		checkByteOrder();
+		VertexLayout layout = mesh.getLayout();
+		int vertexCount = mesh.getVertexCount();
+		int indexCount = mesh.getIndexCount();
+		int indexSize = mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT ? 2 : 4;
+
+		int vertexOffset = align16(HEADER_SIZE + layout.getAttributeCount() * ATTRIBUTE_SIZE);
+		int indexOffset = align16(vertexOffset + vertexCount * layout.getStride());
+		int length = indexOffset + indexCount * indexSize;
+
+		ByteBuffer bb = ByteBuffer.allocate(length);
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+		bb.putInt(MAGIC);
+		bb.putInt(VERSION);
+		bb.putInt(length);
+		bb.putInt(0);	// checksum, filled in last
+		bb.putInt(vertexCount);
+		bb.putInt(layout.getStride());
+		bb.putInt(layout.getAttributeCount());
+		bb.putInt(vertexOffset);
+		bb.putInt(indexCount);
+		bb.putInt(mesh.getIndexType());
+		bb.putInt(indexOffset);
+
+		Bounds b = mesh.getBounds();
+		bb.position(BOUNDS_OFFSET);
+		bb.putFloat(b.minX).putFloat(b.minY).putFloat(b.minZ);
+		bb.putFloat(b.maxX).putFloat(b.maxY).putFloat(b.maxZ);
+		bb.putFloat(b.centerX).putFloat(b.centerY).putFloat(b.centerZ);
+		bb.putFloat(b.radius);
+
+		for (int i = 0; i < layout.getAttributeCount(); i++) {
+			VertexLayout.Attribute attr = layout.getAttribute(i);
+			byte[] name = attr.name.getBytes("US-ASCII");
+			if (name.length > MAX_NAME_LENGTH)
+				throw new IllegalArgumentException("Attribute name too long for a mesh file: " + attr.name);
+
+			bb.position(HEADER_SIZE + i * ATTRIBUTE_SIZE);
+			bb.putInt(attr.semantic);
+			bb.putInt(attr.type);
+			bb.putShort((short) attr.components);
+			bb.put((byte) (attr.normalized ? 1 : 0));
+			bb.put((byte) name.length);
+			bb.putInt(attr.offset);
+			bb.put(name);
+		}
+
+		ByteBuffer vertices = mesh.getVertexData().duplicate();
+		vertices.clear();
+		vertices.limit(vertexCount * layout.getStride());
+		bb.position(vertexOffset);
+		bb.put(vertices);
+
+		bb.position(indexOffset);
+		mesh.getIndices(bb);
+
+		CRC32 crc = new CRC32();
+		crc.update(bb.array(), 0, length);
+		bb.putInt(CHECKSUM_OFFSET, (int) crc.getValue());
+
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bb.array(), 0, length);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+	// Maps the whole file. The mapping stays valid after the file is closed.
+	public static Mesh map(File file) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			return read(raf.getChannel(), 0, raf.length());
+		}
+		finally {
+			raf.close();
+		}
+	}
+
+	// Maps length bytes of the channel from offset, e.g. an asset stored
+	// uncompressed in the APK, through AssetFileDescriptor's channel, start
+	// offset and length.
+	public static Mesh read(FileChannel channel, long offset, long length) throws IOException {
+		return read(channel.map(FileChannel.MapMode.READ_ONLY, offset, length));
+	}
+
+	// Checks the header and the checksum, then builds a mesh whose vertex
+	// and index data are views of bb. Throws an IOException if the data is
+	// not a mesh file this version understands, or has been damaged.
+	public static Mesh read(ByteBuffer bb) throws IOException {
+		checkByteOrder();
+		bb = bb.duplicate();
+		bb.order(ByteOrder.LITTLE_ENDIAN);
+		bb.clear();
+
+		if (bb.capacity() < HEADER_SIZE || bb.getInt(0) != MAGIC)
+			throw new IOException("Not a mesh file");
+		if (bb.getInt(4) != VERSION)
+			throw new IOException("Unsupported mesh file version " + bb.getInt(4));
+		int length = bb.getInt(8);
+		if (length != bb.capacity())
+			throw new IOException("Mesh file is " + bb.capacity() + " bytes, expected " + length);
+		int checksum = bb.getInt(CHECKSUM_OFFSET);
+		if (checksum != checksum(bb))
+			throw new IOException("Mesh file checksum does not match");
+
+		int vertexCount = bb.getInt(16);
+		int stride = bb.getInt(20);
+		int attributeCount = bb.getInt(24);
+		int vertexOffset = bb.getInt(28);
+		int indexCount = bb.getInt(32);
+		int indexType = bb.getInt(36);
+		int indexOffset = bb.getInt(40);
+
+		if (indexType != GLES20.GL_UNSIGNED_SHORT && indexType != GLES20.GL_UNSIGNED_INT)
+			throw new IOException("Unsupported index type " + indexType);
+		int indexSize = indexType == GLES20.GL_UNSIGNED_SHORT ? 2 : 4;
+		if (vertexCount < 0 || indexCount < 0 || attributeCount < 0
+				|| HEADER_SIZE + (long) attributeCount * ATTRIBUTE_SIZE > vertexOffset
+				|| vertexOffset + (long) vertexCount * stride > indexOffset
+				|| indexOffset + (long) indexCount * indexSize > length)
+			throw new IOException("Mesh file sections overlap or run past its end");
+
+		VertexLayout layout = new VertexLayout();
+		for (int i = 0; i < attributeCount; i++) {
+			int at = HEADER_SIZE + i * ATTRIBUTE_SIZE;
+			int nameLength = bb.get(at + 11);
+			if (nameLength < 0 || nameLength > MAX_NAME_LENGTH)
+				throw new IOException("Bad attribute name length " + nameLength);
+			byte[] name = new byte[nameLength];
+			bb.position(at + 16);
+			bb.get(name);
+
+			try {
+				layout.add(bb.getInt(at), new String(name, "US-ASCII"), bb.getShort(at + 8),
+						bb.getInt(at + 4), bb.get(at + 10) != 0);
+			}
+			catch (IllegalArgumentException e) {
+				throw new IOException("Unsupported attribute: " + e.getMessage());
+			}
+			if (layout.getAttribute(i).offset != bb.getInt(at + 12))
+				throw new IOException("Attribute " + i + " is not where VertexLayout would put it");
+		}
+		if (layout.getStride() != stride)
+			throw new IOException("Stride " + stride + " does not match the attributes");
+
+		Bounds bounds = new Bounds();
+		bb.position(BOUNDS_OFFSET);
+		bounds.minX = bb.getFloat();
+		bounds.minY = bb.getFloat();
+		bounds.minZ = bb.getFloat();
+		bounds.maxX = bb.getFloat();
+		bounds.maxY = bb.getFloat();
+		bounds.maxZ = bb.getFloat();
+		bounds.centerX = bb.getFloat();
+		bounds.centerY = bb.getFloat();
+		bounds.centerZ = bb.getFloat();
+		bounds.radius = bb.getFloat();
+
+		Mesh mesh = new Mesh(layout, false);
+		mesh.setVertices(slice(bb, vertexOffset, vertexCount * stride), vertexCount);
+		mesh.setBounds(bounds);
+		if (indexCount > 0)
+			mesh.setIndices(slice(bb, indexOffset, indexCount * indexSize), indexCount, indexType);
+		return mesh;
+	}
+
+	// CRC-32 of the whole buffer with the checksum field taken as 0. A
+	// mapped buffer has no array, so it is read through a small scratch one.
+	private static int checksum(ByteBuffer bb) {
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[8192];
+		ByteBuffer view = bb.duplicate();
+		view.clear();
+
+		view.get(chunk, 0, HEADER_SIZE);
+		for (int i = 0; i < 4; i++)
+			chunk[CHECKSUM_OFFSET + i] = 0;
+		crc.update(chunk, 0, HEADER_SIZE);
+
+		while (view.hasRemaining()) {
+			int n = Math.min(chunk.length, view.remaining());
+			view.get(chunk, 0, n);
+			crc.update(chunk, 0, n);
+		}
+		return (int) crc.getValue();
+	}
+
+	private static ByteBuffer slice(ByteBuffer bb, int offset, int bytes) {
+		ByteBuffer view = bb.duplicate();
+		view.clear();
+		view.position(offset);
+		view.limit(offset + bytes);
+		ByteBuffer slice = view.slice();
+		slice.order(ByteOrder.LITTLE_ENDIAN);
+		return slice;
+	}
+
+	// the data goes to the GPU as it is stored, so it has to be in the
+	// device's own order
+	private static void checkByteOrder() throws IOException {
+		if (ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN)
+			throw new IOException("Mesh files need a little-endian device");
+	}
+
+	private static int align16(int bytes) {
+		return (bytes + 15) & ~15;
+	}
+}
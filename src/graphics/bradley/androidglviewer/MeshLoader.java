@@ -0,0 +1,143 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.util.Log;
+
+// Builds mesh geometry on background threads so the GL thread never waits
+// for it. A Job is split into parts that run in parallel on a small pool;
+// once the last part is done the result is queued, and the GL thread hands
+// it to its Mesh in poll(), after which the next draw uploads it. Until
+// then the Mesh has no vertices and callers should skip it or draw
+// something else (see Mesh.isReady()).
+//
+// submit(), poll() and clear() belong to the GL thread.
+public class MeshLoader {
+
+	// Geometry built in independent parts, e.g. bands of a sphere.
+	public interface Job {
+		int getPartCount();
+
+		// on a worker thread; parts run concurrently and must only write
+		// their own share of the result
+		void buildPart(int part);
+
+		// on the GL thread, after every part has been built
+		void apply(Mesh mesh);
+	}
+
+	// the GL thread keeps a core to itself
+	static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+
+	private static class Task {
+		final Mesh mesh;
+		final Job job;
+		final int generation;
+		final AtomicInteger remaining;
+		volatile boolean failed;
+
+		Task(Mesh mesh, Job job, int generation) {
+			this.mesh = mesh;
+			this.job = job;
+			this.generation = generation;
+			remaining = new AtomicInteger(job.getPartCount());
+		}
+	}
+
+	private static ExecutorService sExecutor;
+	private static final ConcurrentLinkedQueue<Task> sFinished = new ConcurrentLinkedQueue<Task>();
+	private static int sPending;
+	private static int sGeneration;
+
+	// told, on a worker thread, whenever a mesh is ready to be applied or a
+	// model chunk to be added
+	private static volatile Runnable sListener;
+
+	// e.g. to request a frame that will pick up the new mesh
+	public static void setListener(Runnable listener) {
+		sListener = listener;
+	}
+
+	public static void submit(Mesh mesh, Job job) {
+		if (sExecutor == null)
+			sExecutor = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+				private int mCount;
+
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "MeshLoader " + (++mCount));
+					thread.setDaemon(true);
+					// rendering comes first
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+
+		final Task task = new Task(mesh, job, sGeneration);
+		sPending++;
+		for (int i = 0; i < job.getPartCount(); i++) {
+			final int part = i;
+			sExecutor.execute(new Runnable() {
+				public void run() {
+					build(task, part);
+				}
+			});
+		}
+	}
+
+	private static void build(Task task, int part) {
+		try {
+			if (!task.failed)
+				task.job.buildPart(part);
+		}
+		catch (RuntimeException e) {
+			Log.e("Mesh loader:", "Could not build part " + part + " of a mesh", e);
+			task.failed = true;
+		}
+
+		// the last part to finish publishes the whole result
+		if (task.remaining.decrementAndGet() == 0) {
+			sFinished.add(task);
+			notifyListener();
+		}
+	}
+
+	// also used by ModelLoader, whose chunks arrive the same way
+	static void notifyListener() {
+		Runnable listener = sListener;
+		if (listener != null)
+			listener.run();
+	}
+
+	// Hands every finished result to its mesh. Returns how many were applied.
+	public static int poll() {
+		int applied = 0;
+		Task task;
+		while ((task = sFinished.poll()) != null) {
+			if (task.generation != sGeneration)
+				continue;	// built for a context that is gone
+			sPending--;
+			if (!task.failed) {
+				task.job.apply(task.mesh);
+				applied++;
+			}
+		}
+		return applied;
+	}
+
+	// meshes submitted and not yet applied
+	public static int getPendingCount() {
+		return sPending;
+	}
+
+	// Forgets the work submitted so far; its results are dropped when they
+	// arrive. Not needed for a new EGL context, since built geometry does not
+	// depend on one.
+	public static void clear() {
+		sGeneration++;
+		sPending = 0;
+	}
+}
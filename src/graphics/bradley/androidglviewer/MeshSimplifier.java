@@ -0,0 +1,392 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.Arrays;
+
+// Reduces a triangle mesh by collapsing edges in the order of their quadric
+// error (Garland and Heckbert). Each collapse moves one vertex onto a
+// neighbour, so no new vertices appear and whatever attributes the vertices
+// carry stay exactly as they were; only the index list changes.
+//
+// Everything is kept in flat arrays: the triangles' corners, the half-edge
+// twins, the triangles around each vertex and a quadric per vertex. Work
+// goes in passes. Each pass rebuilds the adjacency, sorts every edge by
+// its cost, and collapses the cheapest edges that do not touch one another,
+// so no adjacency needs updating in the middle of a pass.
+//
+// Vertices on a half-edge without a twin never move. That covers the
+// borders of the mesh, and of every chunk cut from a larger one, so
+// neighbouring chunks keep meeting without cracks. It also covers seams,
+// where a vertex is split because its normals or texture coordinates
+// differ, since the split vertices do not share edges.
+public class MeshSimplifier {
+
+	// a, ab, ac, ad, b, bc, bd, c, cd, d of the plane sum, then the weight
+	private static final int QUADRIC = 11;
+
+	// a collapse may turn a triangle by up to about 75 degrees
+	private static final float MIN_NORMAL_COS = 0.25f;
+
+	private final int mVertexCount;
+	// centered and scaled so that the mesh fits the unit sphere; errors are
+	// therefore relative to its bounding radius
+	private final float[] mPositions;
+	private final float[] mQuadrics;
+
+	private int[] mIndices;
+	private int mTriangleCount;
+
+	// half-edge h runs from corner h to the next corner of triangle h / 3;
+	// mTwin[h] runs the other way, or is -1 if there is no single such edge
+	private int[] mTwin;
+
+	// triangles around vertex v: mAdjacency[mFirst[v]] up to mFirst[v + 1]
+	private final int[] mFirst;
+	private int[] mAdjacency;
+
+	private final boolean[] mLocked;	// for the pass: border, seam or non-manifold
+	private final boolean[] mTouched;	// changed in this pass
+	private final int[] mStamp;
+	private int mStampCount;
+
+	// cost bits in the high half, half-edge and direction in the low
+	private long[] mCandidates;
+
+	private float mError;
+
+	// positions hold 3 floats for each of vertexCount vertices
+	public MeshSimplifier(float[] positions, int vertexCount, int[] indices, int indexCount) {
+		mVertexCount = vertexCount;
+		mPositions = new float[vertexCount * 3];
+		normalize(positions);
+
+		mIndices = new int[indexCount];
+		System.arraycopy(indices, 0, mIndices, 0, indexCount);
+		mTriangleCount = indexCount / 3;
+		removeDegenerates();
+
+		mFirst = new int[vertexCount + 1];
+		mAdjacency = new int[mTriangleCount * 3];
+		mTwin = new int[mTriangleCount * 3];
+		mCandidates = new long[mTriangleCount * 3 / 2 + 1];
+		mLocked = new boolean[vertexCount];
+		mTouched = new boolean[vertexCount];
+		mStamp = new int[vertexCount];
+
+		mQuadrics = new float[vertexCount * QUADRIC];
+		for (int t = 0; t < mTriangleCount; t++)
+			addPlane(mIndices[t * 3], mIndices[t * 3 + 1], mIndices[t * 3 + 2]);
+	}
+
+	private void normalize(float[] positions) {
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+		for (int v = 0; v < mVertexCount; v++) {
+			float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+			minX = Math.min(minX, x);
+			minY = Math.min(minY, y);
+			minZ = Math.min(minZ, z);
+			maxX = Math.max(maxX, x);
+			maxY = Math.max(maxY, y);
+			maxZ = Math.max(maxZ, z);
+		}
+		float cx = (minX + maxX) * 0.5f, cy = (minY + maxY) * 0.5f, cz = (minZ + maxZ) * 0.5f;
+
+		float r2 = 0;
+		for (int v = 0; v < mVertexCount; v++) {
+			float dx = positions[v * 3] - cx, dy = positions[v * 3 + 1] - cy, dz = positions[v * 3 + 2] - cz;
+			r2 = Math.max(r2, dx * dx + dy * dy + dz * dz);
+		}
+		float scale = r2 > 0 ? (float) (1 / Math.sqrt(r2)) : 1;
+
+		for (int v = 0; v < mVertexCount; v++) {
+			mPositions[v * 3] = (positions[v * 3] - cx) * scale;
+			mPositions[v * 3 + 1] = (positions[v * 3 + 1] - cy) * scale;
+			mPositions[v * 3 + 2] = (positions[v * 3 + 2] - cz) * scale;
+		}
+	}
+
+	// adds the triangle's plane, weighted by its area, to its corners
+	private void addPlane(int a, int b, int c) {
+		float[] p = mPositions;
+		float ux = p[b * 3] - p[a * 3], uy = p[b * 3 + 1] - p[a * 3 + 1], uz = p[b * 3 + 2] - p[a * 3 + 2];
+		float vx = p[c * 3] - p[a * 3], vy = p[c * 3 + 1] - p[a * 3 + 1], vz = p[c * 3 + 2] - p[a * 3 + 2];
+		float nx = uy * vz - uz * vy, ny = uz * vx - ux * vz, nz = ux * vy - uy * vx;
+		float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+		if (length == 0)
+			return;
+		nx /= length;
+		ny /= length;
+		nz /= length;
+		float d = -(nx * p[a * 3] + ny * p[a * 3 + 1] + nz * p[a * 3 + 2]);
+		float w = length * 0.5f;
+
+		for (int k = 0; k < 3; k++) {
+			int q = (k == 0 ? a : k == 1 ? b : c) * QUADRIC;
+			mQuadrics[q] += w * nx * nx;
+			mQuadrics[q + 1] += w * nx * ny;
+			mQuadrics[q + 2] += w * nx * nz;
+			mQuadrics[q + 3] += w * nx * d;
+			mQuadrics[q + 4] += w * ny * ny;
+			mQuadrics[q + 5] += w * ny * nz;
+			mQuadrics[q + 6] += w * ny * d;
+			mQuadrics[q + 7] += w * nz * nz;
+			mQuadrics[q + 8] += w * nz * d;
+			mQuadrics[q + 9] += w * d * d;
+			mQuadrics[q + 10] += w;
+		}
+	}
+
+	// Mean squared distance from the planes of v and t to t, which is where
+	// v would go.
+	private float cost(int v, int t) {
+		float[] q = mQuadrics;
+		int a = v * QUADRIC, b = t * QUADRIC;
+		float x = mPositions[t * 3], y = mPositions[t * 3 + 1], z = mPositions[t * 3 + 2];
+		float e = (q[a] + q[b]) * x * x + 2 * (q[a + 1] + q[b + 1]) * x * y
+				+ 2 * (q[a + 2] + q[b + 2]) * x * z + 2 * (q[a + 3] + q[b + 3]) * x
+				+ (q[a + 4] + q[b + 4]) * y * y + 2 * (q[a + 5] + q[b + 5]) * y * z
+				+ 2 * (q[a + 6] + q[b + 6]) * y
+				+ (q[a + 7] + q[b + 7]) * z * z + 2 * (q[a + 8] + q[b + 8]) * z
+				+ (q[a + 9] + q[b + 9]);
+		float w = q[a + 10] + q[b + 10];
+		return Math.abs(e) / (w > 0 ? w : 1);
+	}
+
+	// Collapses edges until no more than targetTriangles are left, or no
+	// edge within maxError (a fraction of the bounding radius) can be
+	// collapsed. May be called again with a lower target, e.g. to build a
+	// chain of levels. Returns the triangles left.
+	public int simplify(int targetTriangles, float maxError) {
+		float maxCost = maxError * maxError;
+		while (mTriangleCount > targetTriangles) {
+			if (pass(targetTriangles, maxCost) == 0)
+				break;
+		}
+		return mTriangleCount;
+	}
+
+	private int pass(int target, float maxCost) {
+		buildAdjacency();
+		buildTwins();
+
+		int halfEdges = mTriangleCount * 3;
+		int count = 0;
+		for (int h = 0; h < halfEdges; h++) {
+			// each inner edge once; no border has a twin
+			int twin = mTwin[h];
+			if (twin < h)
+				continue;
+
+			int a = mIndices[h], b = mIndices[next(h)];
+			float ab = mLocked[a] ? Float.MAX_VALUE : cost(a, b);
+			float ba = mLocked[b] ? Float.MAX_VALUE : cost(b, a);
+			float cost = Math.min(ab, ba);
+			if (cost > maxCost)
+				continue;
+			mCandidates[count++] = (long) Float.floatToIntBits(cost) << 32 | (h << 1 | (ba < ab ? 1 : 0)) & 0xffffffffL;
+		}
+		// costs are not negative, so their bits sort like the costs do
+		Arrays.sort(mCandidates, 0, count);
+		if (count == 0)
+			return 0;
+
+		// each collapse takes two triangles away; stop at the target, and
+		// within the cheaper third of the edges, leaving the rest until the
+		// next pass has seen what these changed
+		int goal = (mTriangleCount - target + 1) / 2;
+		float limit = Float.intBitsToFloat((int) (mCandidates[count / 3] >>> 32));
+
+		Arrays.fill(mTouched, false);
+		int collapsed = 0;
+		for (int i = 0; i < count && collapsed < goal; i++) {
+			float cost = Float.intBitsToFloat((int) (mCandidates[i] >>> 32));
+			if (cost > limit) {
+				if (collapsed > 0)
+					break;
+				// none of the cheap ones could go; try the rest rather than
+				// give up on the whole mesh
+				limit = Float.MAX_VALUE;
+			}
+
+			int low = (int) mCandidates[i];
+			int h = low >>> 1;
+			int a = mIndices[h], b = mIndices[next(h)];
+			int v = (low & 1) != 0 ? b : a;
+			int t = (low & 1) != 0 ? a : b;
+			if (mTouched[v] || mTouched[t] || !canCollapse(v, t))
+				continue;
+
+			collapse(v, t);
+			mError = Math.max(mError, (float) Math.sqrt(cost));
+			collapsed++;
+		}
+
+		removeDegenerates();
+		return collapsed;
+	}
+
+	private static int next(int h) {
+		return h % 3 == 2 ? h - 2 : h + 1;
+	}
+
+	private void buildAdjacency() {
+		int corners = mTriangleCount * 3;
+		Arrays.fill(mFirst, 0);
+		for (int h = 0; h < corners; h++)
+			mFirst[mIndices[h]]++;
+
+		int sum = 0;
+		for (int v = 0; v < mVertexCount; v++) {
+			int count = mFirst[v];
+			mFirst[v] = sum;
+			sum += count;
+		}
+		mFirst[mVertexCount] = sum;
+
+		for (int h = 0; h < corners; h++)
+			mAdjacency[mFirst[mIndices[h]]++] = h / 3;
+		// every start has moved up to the next vertex's; move them back
+		for (int v = mVertexCount; v > 0; v--)
+			mFirst[v] = mFirst[v - 1];
+		mFirst[0] = 0;
+	}
+
+	private void buildTwins() {
+		Arrays.fill(mLocked, false);
+		int halfEdges = mTriangleCount * 3;
+		for (int h = 0; h < halfEdges; h++) {
+			int a = mIndices[h], b = mIndices[next(h)];
+
+			// b -> a, among the triangles around b
+			int twin = -1;
+			int found = 0;
+			for (int i = mFirst[b]; i < mFirst[b + 1]; i++) {
+				int g = mAdjacency[i] * 3;
+				for (int k = 0; k < 3; k++, g++) {
+					if (mIndices[g] == b && mIndices[next(g)] == a) {
+						twin = g;
+						found++;
+					}
+				}
+			}
+
+			if (found != 1) {
+				twin = -1;
+				mLocked[a] = true;
+				mLocked[b] = true;
+			}
+			mTwin[h] = twin;
+		}
+	}
+
+	// whether moving v onto t keeps the surface manifold and no triangle
+	// turns over
+	private boolean canCollapse(int v, int t) {
+		// an inner edge has exactly two neighbours in common, the far
+		// corners of its two triangles; more would pinch the surface
+		int mark = ++mStampCount;
+		for (int i = mFirst[t]; i < mFirst[t + 1]; i++) {
+			int tri = mAdjacency[i] * 3;
+			for (int k = 0; k < 3; k++)
+				mStamp[mIndices[tri + k]] = mark;
+		}
+		int seen = ++mStampCount;
+		int common = 0;
+		for (int i = mFirst[v]; i < mFirst[v + 1]; i++) {
+			int tri = mAdjacency[i] * 3;
+			for (int k = 0; k < 3; k++) {
+				int w = mIndices[tri + k];
+				if (w != v && w != t && mStamp[w] == mark) {
+					mStamp[w] = seen;
+					common++;
+				}
+			}
+		}
+		if (common != 2)
+			return false;
+
+		float[] p = mPositions;
+		for (int i = mFirst[v]; i < mFirst[v + 1]; i++) {
+			int tri = mAdjacency[i] * 3;
+			int k = mIndices[tri] == v ? 0 : mIndices[tri + 1] == v ? 1 : 2;
+			int b = mIndices[tri + (k + 1) % 3], c = mIndices[tri + (k + 2) % 3];
+			if (b == t || c == t)
+				continue;	// collapses away
+
+			float bx = p[b * 3], by = p[b * 3 + 1], bz = p[b * 3 + 2];
+			float cx = p[c * 3], cy = p[c * 3 + 1], cz = p[c * 3 + 2];
+			float n0x, n0y, n0z, n1x, n1y, n1z;
+			{
+				float ux = bx - p[v * 3], uy = by - p[v * 3 + 1], uz = bz - p[v * 3 + 2];
+				float wx = cx - p[v * 3], wy = cy - p[v * 3 + 1], wz = cz - p[v * 3 + 2];
+				n0x = uy * wz - uz * wy;
+				n0y = uz * wx - ux * wz;
+				n0z = ux * wy - uy * wx;
+			}
+			{
+				float ux = bx - p[t * 3], uy = by - p[t * 3 + 1], uz = bz - p[t * 3 + 2];
+				float wx = cx - p[t * 3], wy = cy - p[t * 3 + 1], wz = cz - p[t * 3 + 2];
+				n1x = uy * wz - uz * wy;
+				n1y = uz * wx - ux * wz;
+				n1z = ux * wy - uy * wx;
+			}
+			float l0 = n0x * n0x + n0y * n0y + n0z * n0z;
+			if (l0 == 0)
+				continue;	// no area to turn over
+			float l1 = n1x * n1x + n1y * n1y + n1z * n1z;
+			float dot = n0x * n1x + n0y * n1y + n0z * n1z;
+			if (dot <= 0 || dot * dot < MIN_NORMAL_COS * MIN_NORMAL_COS * l0 * l1)
+				return false;
+		}
+		return true;
+	}
+
+	private void collapse(int v, int t) {
+		// none of these triangles can be part of another collapse in this
+		// pass, so the adjacency stays good until the next one
+		for (int i = mFirst[v]; i < mFirst[v + 1]; i++) {
+			int tri = mAdjacency[i] * 3;
+			for (int k = 0; k < 3; k++) {
+				mTouched[mIndices[tri + k]] = true;
+				if (mIndices[tri + k] == v)
+					mIndices[tri + k] = t;
+			}
+		}
+
+		int a = v * QUADRIC, b = t * QUADRIC;
+		for (int i = 0; i < QUADRIC; i++)
+			mQuadrics[b + i] += mQuadrics[a + i];
+	}
+
+	// drops triangles that have lost their area to a collapse
+	private void removeDegenerates() {
+		int kept = 0;
+		for (int t = 0; t < mTriangleCount; t++) {
+			int a = mIndices[t * 3], b = mIndices[t * 3 + 1], c = mIndices[t * 3 + 2];
+			if (a == b || b == c || a == c)
+				continue;
+			mIndices[kept * 3] = a;
+			mIndices[kept * 3 + 1] = b;
+			mIndices[kept * 3 + 2] = c;
+			kept++;
+		}
+		mTriangleCount = kept;
+	}
+
+	public int getTriangleCount() {
+		return mTriangleCount;
+	}
+
+	// largest error of any collapse so far, as a fraction of the bounding
+	// radius
+	public float getError() {
+		return mError;
+	}
+
+	// the triangles left, as indices into the original vertices
+	public int[] getIndices() {
+		int[] indices = new int[mTriangleCount * 3];
+		System.arraycopy(mIndices, 0, indices, 0, indices.length);
+		return indices;
+	}
+}
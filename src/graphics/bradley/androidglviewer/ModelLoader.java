@@ -0,0 +1,179 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+// Streams an OBJ or binary PLY model in on a background thread. The reader
+// cuts it into chunks (see MeshChunker), and the GL thread adds a few of
+// them to the scene per frame in poll(), so the first parts are drawn while
+// the rest of the file is still being read. Each part then gets a chain of
+// simplified levels from a LodBuilder. The reader waits once
+// QUEUE_LENGTH chunks are waiting, so the memory held by chunks does not
+// depend on the size of the file either.
+//
+// poll() and cancel() belong to the GL thread.
+public class ModelLoader implements MeshChunker.Listener {
+
+	// chunks waiting for the GL thread
+	static final int QUEUE_LENGTH = 4;
+	// chunks added per frame; each is uploaded by the frame that adds it
+	static final int CHUNKS_PER_FRAME = 2;
+
+	private final File mFile;
+	private final Material mMaterial;
+	private final ArrayBlockingQueue<Mesh> mChunks = new ArrayBlockingQueue<Mesh>(QUEUE_LENGTH);
+	private Thread mThread;
+
+	private volatile boolean mCancelled;
+	private volatile boolean mDone;
+	private volatile String mError;
+
+	private int mAdded;
+
+	// union of the chunks added so far
+	private final Bounds mBounds = new Bounds();
+
+	public ModelLoader(File file, Material material) {
+		mFile = file;
+		mMaterial = material;
+	}
+
+	public void start() {
+		mThread = new Thread(new Runnable() {
+			public void run() {
+				load();
+			}
+		}, "ModelLoader");
+		mThread.setDaemon(true);
+		mThread.setPriority(Thread.NORM_PRIORITY - 1);
+		mThread.start();
+	}
+
+	private void load() {
+		long start = System.nanoTime();
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mFile, "r");
+			String name = mFile.getName().toLowerCase(Locale.US);
+			MeshChunker chunker;
+			if (name.endsWith(".obj")) {
+				ObjReader reader = new ObjReader();
+				chunker = new MeshChunker(reader, this);
+				reader.read(file.getChannel(), chunker);
+			}
+			else if (name.endsWith(".ply")) {
+				PlyReader reader = new PlyReader();
+				chunker = new MeshChunker(reader, this);
+				reader.read(file.getChannel(), chunker);
+			}
+			else
+				throw new IOException("Not an .obj or .ply file");
+
+			Log.i("Model loader:", String.format(Locale.US, "%s: %d triangles in %d chunks, %.0f ms",
+					mFile.getName(), chunker.getTriangleCount(), chunker.getChunkCount(),
+					(System.nanoTime() - start) / 1e6));
+		}
+		catch (IOException e) {
+			// an interrupted read closes the channel, so cancelling ends up here too
+			if (!mCancelled) {
+				Log.e("Model loader:", "Could not load " + mFile.getPath(), e);
+				mError = e.getMessage();
+			}
+		}
+		catch (RuntimeException e) {
+			// a malformed file the readers did not catch; still only this model fails
+			Log.e("Model loader:", "Could not load " + mFile.getPath(), e);
+			mError = "Bad model file: " + e;
+		}
+		finally {
+			if (file != null) {
+				try {
+					file.close();
+				}
+				catch (IOException e) {
+					// only read from
+				}
+			}
+			mDone = true;
+			MeshLoader.notifyListener();
+		}
+	}
+
+	// on the reader thread
+	public void onChunk(Mesh mesh) throws IOException {
+		try {
+			while (!mChunks.offer(mesh, 100, TimeUnit.MILLISECONDS)) {
+				if (mCancelled)
+					throw new InterruptedIOException();
+			}
+		}
+		catch (InterruptedException e) {
+			throw new InterruptedIOException();
+		}
+		MeshLoader.notifyListener();
+	}
+
+	// Adds up to CHUNKS_PER_FRAME waiting chunks to parent, each as its own
+	// node so they are culled separately. Returns how many were added.
+	public int poll(SceneNode parent) {
+		int added = 0;
+		Mesh mesh;
+		while (added < CHUNKS_PER_FRAME && (mesh = mChunks.poll()) != null) {
+			ModelPart part = new ModelPart(mesh, mMaterial);
+			parent.addChild(new SceneNode(mFile.getName() + " " + mAdded, part));
+			// drawn as read until its coarser levels are ready
+			MeshLoader.submit(mesh, new LodBuilder(part, mesh));
+			union(mesh.getBounds());
+			mAdded++;
+			added++;
+		}
+		// GLSurfaceView folds the reader's requests together, so ask for a
+		// frame for whatever is left
+		if (!mChunks.isEmpty())
+			MeshLoader.notifyListener();
+		return added;
+	}
+
+	private void union(Bounds b) {
+		if (mAdded == 0) {
+			mBounds.setBox(b.minX, b.minY, b.minZ, b.maxX, b.maxY, b.maxZ);
+			return;
+		}
+		mBounds.setBox(Math.min(mBounds.minX, b.minX), Math.min(mBounds.minY, b.minY),
+				Math.min(mBounds.minZ, b.minZ), Math.max(mBounds.maxX, b.maxX),
+				Math.max(mBounds.maxY, b.maxY), Math.max(mBounds.maxZ, b.maxZ));
+	}
+
+	// of everything added so far
+	public Bounds getBounds() {
+		return mBounds;
+	}
+
+	public int getChunksAdded() {
+		return mAdded;
+	}
+
+	// read to the end (or failed) and every chunk added
+	public boolean isFinished() {
+		return mDone && mChunks.isEmpty();
+	}
+
+	// null unless the file could not be read
+	public String getError() {
+		return mError;
+	}
+
+	public void cancel() {
+		mCancelled = true;
+		if (mThread != null)
+			mThread.interrupt();
+		mChunks.clear();
+	}
+}
@@ -0,0 +1,68 @@
+package graphics.bradley.androidglviewer;
+
+// One chunk of a loaded model, drawn like a cube but lit at the renderer's
+// current tier (see Lighting), without the balls' specular highlight. It
+// starts out as the chunk was read; LodBuilder then replaces that with a
+// reordered copy and adds coarser levels, chosen by on-screen size like the
+// balls' levels.
+public class ModelPart extends Cube implements LevelOfDetail {
+
+	// finest first
+	private Mesh[] mLevels;
+	// smallest projected radius (pixels) at which each level is still needed
+	private float[] mMinPixels = { 0 };
+	private int mLevel;
+
+	public ModelPart(Mesh mesh, Material material) {
+		super(mesh, material);
+		mLevels = new Mesh[] { mesh };
+	}
+
+	// levels[0] has every triangle of the chunk as read; errors[i] is how far
+	// level i strays from it, as a fraction of the bounding radius. GL thread.
+	public void setLevels(Mesh[] levels, float[] errors) {
+		// the GPU buffers of levels that are replaced go now
+		for (int i = 0; i < mLevels.length; i++) {
+			boolean kept = false;
+			for (int j = 0; j < levels.length; j++)
+				kept |= levels[j] == mLevels[i];
+			if (!kept)
+				mLevels[i].release();
+		}
+		mLevels = levels;
+		mMinPixels = new float[levels.length];
+		// the coarser level takes over once its error shrinks to
+		// MAX_ERROR_PIXELS on screen
+		for (int i = 0; i + 1 < levels.length; i++)
+			mMinPixels[i] = Sphere.MAX_ERROR_PIXELS / Math.max(errors[i + 1], 1e-6f);
+		mLevel = Math.min(mLevel, levels.length - 1);
+	}
+
+	// smooth surfaces, unlike the boxes
+	@Override
+	protected int getLightingTier() {
+		return Lighting.getTier();
+	}
+
+	@Override
+	public Mesh getMesh() {
+		return mLevels[mLevel];
+	}
+
+	public void selectLevel(float pixelRadius) {
+		int level = mLevel;
+		while (level > 0 && pixelRadius > mMinPixels[level - 1] * (1 + Sphere.HYSTERESIS))
+			level--;
+		while (level < mLevels.length - 1 && pixelRadius < mMinPixels[level] * (1 - Sphere.HYSTERESIS))
+			level++;
+		mLevel = level;
+	}
+
+	public int getLevel() {
+		return mLevel;
+	}
+
+	public int getLevelCount() {
+		return mLevels.length;
+	}
+}
@@ -1,19 +1,18 @@
 package graphics.bradley.androidglviewer;
 
+import java.io.File;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
-import graphics.bradley.androidglviewer.Sphere;
-
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
 import android.opengl.Matrix;
 
 public class MyGL20Renderer implements GLSurfaceView.Renderer {
 
-	public volatile float mXAngle;
-	public volatile float mYAngle;
-	public volatile float mZoom;
+	// camera changes from the UI thread, taken once per frame
+	private final CameraInput mCameraInput = new CameraInput();
 	
 	private final float[] mVMatrix = new float[16];
 	private final float[] mProjMatrix = new float[16];
@@ -21,191 +20,388 @@ public class MyGL20Renderer implements GLSurfaceView.Renderer {
 	private final float[] mMVPMatrix = new float[16];
 	private final float[] mRotationMatrixX = new float[16];
 	private final float[] mRotationMatrixY = new float[16];
-	private final float[] mPVMatrix = new float [16];
 	private final float[] mTempMatrix = new float[16];
 	private final float[] mMVMatrix = new float[16];
+	
+	// camera state the matrices above were computed for, and the time it
+	// was evaluated at
+	private CameraState mCamera;
+	private long mCameraTime;
+	private boolean mCameraDirty = true;
+	private int mCameraVersion;
+	
+	// Pool table and balls; the draw list is produced by traversing this
+	private Scene mScene;
+	
+	// a model file shown instead of the pool table, streamed in by
+	// mModelLoader under mModelNode
+	private File mModelFile;
+	private ModelLoader mModelLoader;
+	private SceneNode mModelNode;
+	
+	static final Material MATERIAL_MODEL = new Material(.8f, .8f, .8f);
+	
+	// skips objects outside the view
+	private final FrustumCuller mCuller = new FrustumCuller();
+	
+	private int mViewportHeight;
+	
+	// this frame's draws, sorted to share programs and meshes
+	private final RenderQueue<SceneNode> mQueue = new RenderQueue<SceneNode>(64);
+	
+	// drops GL calls that would not change anything
+	private final StateCache mStateCache;
+	
+	private final FrameStats mStats = new FrameStats();
+	
+	// spaces frames out while animating, and says when to stop
+	private final FramePacer mPacer = new FramePacer();
+	private RenderScheduler mScheduler;
+	
+	// Lighting.AUTO, or the tier chosen by the user
+	private int mLightingMode = Lighting.AUTO;
+	private final LightingSelector mLightingSelector = new LightingSelector();
+
+	public MyGL20Renderer() {
+		this(new GLES20Backend());
+	}
 
-	private Sphere mBall1;	// Three pool balls
-	private Sphere mBall2;
-	private Sphere mBall3;
-	private Cube mTableTop; // Top of pool table and all legs
-	private Cube mLeg1;
-	private Cube mLeg2;
-	private Cube mLeg3;
-	private Cube mLeg4;
-	private Cube mRail1;
-	private Cube mRail2;
-	private Cube mRail3;
-	private Cube mRail4;
+	// e.g. a RecordingBackend to run and measure frames without a device
+	public MyGL20Renderer(RenderBackend backend) {
+		mStateCache = new StateCache(backend);
+		RenderContext.set(mStateCache);
+	}
 
 	@Override
 	public void onSurfaceCreated(GL10 unused, EGLConfig cfg) {
 		// TODO Auto-generated method stub
 		
-		GLES20.glClearColor(0.3f, 0.3f, 0.3f, 1.0f);
-		GLES20.glEnable(GL10.GL_DEPTH_TEST);
-	    GLES20.glDepthFunc(GL10.GL_LEQUAL);
-	    
-	    //Set default zoom level.
-	    mZoom = -6f;
+		mStats.onSurfaceCreated();
+		
+		// nothing is bound in a new context
+		mStateCache.invalidate();
+		
+		RenderBackend gl = RenderContext.get();
+		gl.glClearColor(0.3f, 0.3f, 0.3f, 1.0f);
+		gl.glEnable(GL10.GL_DEPTH_TEST);
+	    gl.glDepthFunc(GL10.GL_LEQUAL);
 	    
-	    mTableTop = new Cube(Cube.DRAWTOP);
-	    mLeg1 = new Cube(Cube.DRAWLEG);
-	    mLeg2 = new Cube(Cube.DRAWLEG);
-	    mLeg3 = new Cube(Cube.DRAWLEG);
-	    mLeg4 = new Cube(Cube.DRAWLEG);
-	    mRail1 = new Cube(Cube.DRAWLEG);
-	    mRail2 = new Cube(Cube.DRAWLEG);
-	    mRail3 = new Cube(Cube.DRAWLEG);
-	    mRail4 = new Cube(Cube.DRAWLEG);
+	    // A new context means every previously linked program and buffer is
+	    // gone, but not what they were made from. Programs are linked again
+	    // from their kept sources and meshes re-upload their kept data when
+	    // next used, so a scene that survived the old context is drawn as it
+	    // is, and meshes still being built or streamed in carry on.
+	    RenderContext.onContextCreated();
 	    
-	    mBall1 = new Sphere(1,30,60);
-	    mBall2 = new Sphere(1,30,60);
-	    mBall3 = new Sphere(1,30,60);
+	    if (mScene == null) {
+	    	if (mModelFile != null)
+	    		startModel();
+	    	else
+	    		mScene = buildScene();
+	    }
+	    mCameraDirty = true;
 	}
 
 	@Override
 	public void onDrawFrame(GL10 unused) {
+		// animation is evaluated at this time, whatever the frame rate
+		long frameTime = mPacer.waitForFrame();
+		
+		// drawables pick up a new tier through Lighting.getVersion()
+		if (mLightingMode == Lighting.AUTO)
+			Lighting.setTier(mLightingSelector.onFrame(frameTime));
+		
+		RenderBackend gl = RenderContext.get();
+		mStateCache.resetFilteredCalls();
+		mStats.beginFrame();
+		
+		// every change publishes a new state, so comparing references is
+		// enough unless the state is still animating
+		CameraState camera = mCameraInput.take();
+		if (mCameraDirty || camera != mCamera || camera.isAnimating(mCameraTime)) {
+			updateCamera(camera, frameTime);
+			mCuller.setFrustum(mMVPMatrix);
+			mCameraDirty = false;
+			mCameraVersion++;
+		}
+		mStats.lap(FrameStats.STAGE_CAMERA);
+		
+		// meshes built in the background since the last frame
+		if (MeshLoader.getPendingCount() > 0)
+			MeshLoader.poll();
+		
+		// and chunks of the model being streamed in
+		if (mModelLoader != null && mModelLoader.poll(mModelNode) > 0)
+			fitModel();
+		
+		// only the world/MVP matrices of changed subtrees are recomputed, and
+		// only visible objects end up in the draw list
+		mCuller.resetCounters();
+		mScene.update(mMVPMatrix, mCameraVersion, mCuller);
+		
+		mQueue.clear();
+		for (int i = 0; i < mScene.getDrawCount(); i++) {
+			SceneNode node = mScene.getDrawNode(i);
+			Drawable drawable = node.getDrawable();
+			
+			// not built yet, and no level to stand in for it
+			if (!drawable.getMesh().isReady())
+				continue;
+			
+			// clip-space w of the bounds' center is its distance in front of
+			// the camera
+			float[] sphere = node.getWorldSphere();
+			float w = mMVPMatrix[3] * sphere[0] + mMVPMatrix[7] * sphere[1]
+					+ mMVPMatrix[11] * sphere[2] + mMVPMatrix[15];
+			
+			if (drawable instanceof LevelOfDetail)
+				((LevelOfDetail) drawable).selectLevel(projectedRadius(sphere[3], w));
+			
+			mQueue.add(RenderQueue.makeKey(RenderQueue.PASS_OPAQUE, drawable.getProgram().getHandle(),
+					drawable.getMesh().getId(), w), node);
+		}
+		mQueue.sort();
+		mStats.lap(FrameStats.STAGE_CULL);
 		
 		// Draw background.
-		GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT|GLES20.GL_DEPTH_BUFFER_BIT);
+		gl.glClear(GLES20.GL_COLOR_BUFFER_BIT|GLES20.GL_DEPTH_BUFFER_BIT);
 		
-		// Set camera position (view matrix)
-		Matrix.setLookAtM(mVMatrix, 0, 0, 0, mZoom, 0f, 0f, 0f, 0f, 1.0f, 0.0f);
+		for (int i = 0; i < mQueue.size(); i++) {
+			SceneNode node = mQueue.get(i);
+			Drawable drawable = node.getDrawable();
+			Mesh mesh = drawable.getMesh();
+			mStats.countDraw(mesh.getIndexCount() > 0 ? mesh.getIndexCount() : mesh.getVertexCount());
+			drawable.draw(node.getMVPMatrix(), mNormalMatrix, mMVMatrix);
+		}
+		mStats.lap(FrameStats.STAGE_SUBMIT);
 		
-		// PV Matrix
-		Matrix.multiplyMM(mPVMatrix, 0, mProjMatrix, 0, mVMatrix, 0);
+		if (mStats.getFinish()) {
+			// wait for the GPU so the frame time includes it
+			gl.glFinish();
+			mStats.lap(FrameStats.STAGE_FINISH);
+		}
+		mStats.endFrame();
+		if (MeshLoader.getPendingCount() == 0 && (mModelLoader == null || mModelLoader.isFinished()))
+			mStats.onSceneComplete();
+		
+		if (mScheduler != null)
+			mScheduler.onFrameDrawn(camera, frameTime);
+	}
+	
+	// Radius in pixels, once on screen, of a sphere whose center is at clip
+	// space w.
+	private float projectedRadius(float radius, float w) {
+		if (w <= radius)
+			return Float.MAX_VALUE;		// camera is inside or very close
+		
+		// mProjMatrix[5] maps view-space height to NDC, which spans 2 units
+		return radius * mProjMatrix[5] / w * mViewportHeight * 0.5f;
+	}
+	
+	private void updateCamera(CameraState camera, long time) {
+		mCamera = camera;
+		mCameraTime = time;
+		
+		// Set camera position (view matrix)
+		Matrix.setLookAtM(mVMatrix, 0, 0, 0, camera.getZoom(time), 0f, 0f, 0f, 0f, 1.0f, 0.0f);
 		
 		// Rotation for x axis
-		Matrix.setRotateM(mRotationMatrixX,  0,  mXAngle,  0,  1.0f,  0f);
+		Matrix.setRotateM(mRotationMatrixX,  0,  camera.getXAngle(time),  0,  1.0f,  0f);
 		
 		//Rotation for y axis
-		Matrix.setRotateM(mRotationMatrixY, 0, mYAngle, 1.0f, 0, 0);
+		Matrix.setRotateM(mRotationMatrixY, 0, camera.getYAngle(time), 1.0f, 0, 0);
 		
-		// Apply both rotations in sequence.
-		
-		// MVP = Proj*View*Rot
-		Matrix.multiplyMM(mTempMatrix,  0,  mPVMatrix, 0, mRotationMatrixX,  0);
-		Matrix.multiplyMM(mMVPMatrix, 0, mTempMatrix, 0, mRotationMatrixY, 0);
+		// Apply both rotations in sequence. Everything but the projection is
+		// affine, so only the last product needs the full 4x4.
+		AffineMath.multiplyAffine(mTempMatrix, 0, mRotationMatrixX, 0, mRotationMatrixY, 0);
 		
 		// Rotation of View Matrix
-		Matrix.multiplyMM(mTempMatrix, 0, mVMatrix, 0, mRotationMatrixX, 0);
-		Matrix.multiplyMM(mMVMatrix, 0, mTempMatrix, 0, mRotationMatrixY, 0);
+		AffineMath.multiplyAffine(mMVMatrix, 0, mVMatrix, 0, mTempMatrix, 0);
 		
-		//Normal matrix = transpose(inv(modelview)) 
-		Matrix.invertM(mTempMatrix, 0, mMVMatrix, 0);
-		Matrix.transposeM(mNormalMatrix, 0, mTempMatrix, 0);
+		// MVP = Proj*View*Rot
+		AffineMath.multiplyProjAffine(mMVPMatrix, 0, mProjMatrix, 0, mMVMatrix, 0);
 		
-		drawTable();
-		drawBalls();
+		// Normal matrix = transpose(inv(modelview)), which for a rotation
+		// and translation is the rotation itself
+		AffineMath.normalMatrixRigid(mNormalMatrix, 0, mMVMatrix, 0);
+	}
+
+	// Shows the OBJ or binary PLY model in file instead of the pool table,
+	// drawing its parts as they are read. GL thread.
+	public void loadModel(File file) {
+		mModelFile = file;
+		if (mScene != null)
+			startModel();
+	}
+	
+	private void startModel() {
+		if (mModelLoader != null)
+			mModelLoader.cancel();
+		
+		mScene = new Scene();
+		mModelNode = new SceneNode("model");
+		mScene.getRoot().addChild(mModelNode);
+		mModelLoader = new ModelLoader(mModelFile, MATERIAL_MODEL);
+		mModelLoader.start();
+	}
+	
+	// Scales and centers what has arrived of the model to about the size of
+	// the pool table. It is refitted as parts arrive, since the extent of a
+	// file is only known once all of it has been read.
+	private void fitModel() {
+		Bounds b = mModelLoader.getBounds();
+		float scale = b.radius > 0 ? 2 / b.radius : 1;
+		mModelNode.setTransform(-b.centerX * scale, -b.centerY * scale, -b.centerZ * scale,
+				scale, scale, scale);
+	}
+	
+	// the model being loaded, or null for the pool table
+	public ModelLoader getModelLoader() {
+		return mModelLoader;
+	}
+	
+	public CameraInput getCameraInput() {
+		return mCameraInput;
+	}
+	
+	public FramePacer getFramePacer() {
+		return mPacer;
+	}
+	
+	// Lighting.AUTO picks the tier from the frame time, against the frame
+	// pacer's interval (or 60 fps when pacing is off). GL thread.
+	public void setLightingMode(int mode) {
+		mLightingMode = mode;
+		if (mode == Lighting.AUTO) {
+			float rate = mPacer.getTargetRate();
+			mLightingSelector.setBudget((long) (1e9 / (rate > 0 ? rate : FramePacer.DEFAULT_RATE)));
+			mLightingSelector.reset();
+			Lighting.setTier(mLightingSelector.getTier());
+		}
+		else
+			Lighting.setTier(mode);
+	}
+	
+	public int getLightingMode() {
+		return mLightingMode;
+	}
+	
+	// told after every frame so it can stop continuous rendering
+	public void setScheduler(RenderScheduler scheduler) {
+		mScheduler = scheduler;
+	}
+
+	// objects tested against the frustum in the last frame
+	public int getObjectsTested() {
+		return mCuller.getTested();
+	}
+	
+	// objects skipped as invisible in the last frame
+	public int getObjectsCulled() {
+		return mCuller.getCulled();
+	}
+	
+	// redundant GL calls dropped in the last frame
+	public int getFilteredCalls() {
+		return mStateCache.getFilteredCalls();
+	}
+	
+	public FrameStats getFrameStats() {
+		return mStats;
 	}
 
 	@Override
 	public void onSurfaceChanged(GL10 unused, int width, int height) {
+		RenderBackend gl = RenderContext.get();
 		
-		GLES20.glViewport(0, 0, width, height);
+		gl.glViewport(0, 0, width, height);
+		mViewportHeight = height;
 		
 		float ratio = (float) width / height;
 		
 		Matrix.frustumM(mProjMatrix, 0, -ratio, ratio, -1, 1, 1, 20);
+		mCameraDirty = true;
 	}
 	
 	// compile GLSL code prior to using it in OpenGL ES environment
 		public static int loadShader(int type, String shaderCode) {
+			RenderBackend gl = RenderContext.get();
 			
 			// create a vertex shader type (GLES20.GL_VERTEX_SHADER)
 			// or a fragment shader type (GLES20.GL_FRAGMENT_SHADER)
-			int shader = GLES20.glCreateShader(type);
+			int shader = gl.glCreateShader(type);
 			
 			// add the source code to the shader and compile it
-			GLES20.glShaderSource(shader, shaderCode);
-			GLES20.glCompileShader(shader);
+			gl.glShaderSource(shader, shaderCode);
+			gl.glCompileShader(shader);
 			
 			return shader;
 		}
 		
-		private void drawTable(){
-			float[] scalerMatrix = new float[16];
-			float[] finalMVPMatrix = new float[16];
-			
-			//Draw top
-			Matrix.setIdentityM(scalerMatrix, 0);
-			Matrix.scaleM(scalerMatrix, 0, 2.25f, 0.1f, 1.0f);
-			
-			Matrix.multiplyMM(finalMVPMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
-			mTableTop.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
-			
-			float[] tempMatrix = new float[16];
-			// Draw legs
-			Matrix.setIdentityM(scalerMatrix,  0);
-			Matrix.scaleM(scalerMatrix, 0, .12f, .85f, .12f);
-			Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
-			
-			
-			//First leg
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 18f, -.9f, -7.5f);
-			mLeg1.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
-			
-			//Second leg
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 18f, -.9f, 7.5f);
-			mLeg2.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+		static Scene buildScene() {
+			Scene scene = new Scene();
+			SceneNode root = scene.getRoot();
 			
-			//Third leg
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -18f, -.9f, -7.5f);
-			mLeg3.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			SceneNode table = new SceneNode("table");
+			Cube[] parts = buildTable();
+			for (int i = 0; i < parts.length; i++)
+				table.addChild(new SceneNode("table part " + i, parts[i]));
+			root.addChild(table);
 			
-			//Fourth leg
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -18f, -.9f, 7.5f);
-			mLeg4.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			// Three pool balls, placed in a space scaled down to ball size
+			SceneNode balls = new SceneNode("balls");
+			balls.setTransform(0, 0, 0, .1f, 0.1f, .1f);
+			root.addChild(balls);
 			
-			// Draw Rails
+			addBall(balls, "ball 1", -5.25f, 1.85f, .35f);
+			addBall(balls, "ball 2", 2.25f, 1.85f, -1f);
+			addBall(balls, "ball 3", .35f, 1.85f, -2.5f);
 			
-			//Long Rails
-			Matrix.setIdentityM(scalerMatrix,  0);
-			Matrix.scaleM(scalerMatrix, 0, 2.30f, .25f, .1f);
-			Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
-			
-			
-			//First rail
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 0, .5f, -9.1f);
-			mRail1.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
-			
-			//Second rail
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 0, .5f, 9.1f);
-			mRail2.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
-			
-			//Short Rails
-			Matrix.setIdentityM(scalerMatrix,  0);
-			Matrix.scaleM(scalerMatrix, 0, .1f, .25f, 1.0f);
-			Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
-			
-			//Third rail
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 22.1f, .5f, 0f);
-			mRail3.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
-			
-			//Fourth rail
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -22.1f, .5f, 0f);
-			mRail4.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			return scene;
 		}
 		
-		private void drawBalls() {
-			float[] scalerMatrix = new float[16];
-			float[] finalMVPMatrix = new float[16];
-			float[] tempMatrix = new float[16];
-			
-			Matrix.setIdentityM(scalerMatrix, 0);
-			Matrix.scaleM(scalerMatrix, 0, .1f, 0.1f, .1f);
-			Matrix.multiplyMM(tempMatrix, 0, mMVPMatrix, 0, scalerMatrix, 0);
+		private static void addBall(SceneNode parent, String name, float x, float y, float z) {
+			SceneNode ball = new SceneNode(name, new Sphere(1,30,60));
+			ball.setTransform(x, y, z, 1, 1, 1);
+			parent.addChild(ball);
+		}
+		
+		// The table never moves relative to itself, so its top, legs and rails
+		// are baked into one mesh per material up front.
+		private static Cube[] buildTable() {
+			StaticBatch batch = new StaticBatch();
 			
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, -5.25f, 1.85f, .35f);
-			mBall1.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			// Top
+			addBox(batch, 2.25f, 0.1f, 1.0f, 0f, 0f, 0f, Cube.MATERIAL_TOP);
 			
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, 2.25f, 1.85f, -1f);
-			mBall2.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			// Legs
+			addBox(batch, .12f, .85f, .12f, 18f, -.9f, -7.5f, Cube.MATERIAL_LEG);
+			addBox(batch, .12f, .85f, .12f, 18f, -.9f, 7.5f, Cube.MATERIAL_LEG);
+			addBox(batch, .12f, .85f, .12f, -18f, -.9f, -7.5f, Cube.MATERIAL_LEG);
+			addBox(batch, .12f, .85f, .12f, -18f, -.9f, 7.5f, Cube.MATERIAL_LEG);
 			
-			Matrix.translateM(finalMVPMatrix, 0, tempMatrix, 0, .35f, 1.85f, -2.5f);
-			mBall3.draw(finalMVPMatrix, mNormalMatrix, mMVMatrix);
+			// Long rails
+			addBox(batch, 2.30f, .25f, .1f, 0, .5f, -9.1f, Cube.MATERIAL_LEG);
+			addBox(batch, 2.30f, .25f, .1f, 0, .5f, 9.1f, Cube.MATERIAL_LEG);
 			
+			// Short rails
+			addBox(batch, .1f, .25f, 1.0f, 22.1f, .5f, 0f, Cube.MATERIAL_LEG);
+			addBox(batch, .1f, .25f, 1.0f, -22.1f, .5f, 0f, Cube.MATERIAL_LEG);
 			
+			Cube[] table = new Cube[batch.getGroupCount()];
+			for (int i = 0; i < table.length; i++)
+				table[i] = new Cube(batch.buildMesh(i), batch.getMaterial(i));
+			return table;
+		}
+		
+		// A unit cube scaled and then translated in the scaled space, the same
+		// sequence the table used to be drawn with.
+		private static void addBox(StaticBatch batch, float sx, float sy, float sz,
+				float tx, float ty, float tz, Material material) {
+			float[] model = new float[16];
+			Matrix.setIdentityM(model, 0);
+			Matrix.scaleM(model, 0, sx, sy, sz);
+			Matrix.translateM(model, 0, tx, ty, tz);
+			batch.add(Cube.vertices, Cube.normals, null, model, material);
 		}
 }
@@ -1,7 +1,10 @@
 package graphics.bradley.androidglviewer;
 
+import java.io.File;
+
 import android.content.Context;
 import android.opengl.GLSurfaceView;
+import android.os.Build;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.ScaleGestureDetector.OnScaleGestureListener;
@@ -13,6 +16,9 @@ public class MyGLSurfaceView extends GLSurfaceView implements OnScaleGestureList
 	
 	private MyGL20Renderer mRend;
 	
+	// renders continuously only while the camera animates
+	private RenderScheduler mScheduler;
+	
 	private ScaleGestureDetector scaler;
 	private boolean scaleMode;
 	
@@ -24,17 +30,70 @@ public class MyGLSurfaceView extends GLSurfaceView implements OnScaleGestureList
 		// Setup OpenGL ES 2.0 context
 		setEGLContextClientVersion(2);
 		
+		// Keep the context over onPause() where the device can, so resuming
+		// needs no re-upload at all. It can still be lost, and always is
+		// before Honeycomb; the renderer then uploads its kept data again.
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB)
+			setPreserveEGLContextOnPause(true);
+		
 		// Setup the Renderer
 		mRend = new MyGL20Renderer();
 		setRenderer(mRend);
 		
 		// Only draw stuff that has changed
 		setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+		mScheduler = new RenderScheduler(this, mRend.getCameraInput());
+		mRend.setScheduler(mScheduler);
+		
+		// meshes are built in the background; draw again as each arrives
+		MeshLoader.setListener(new Runnable() {
+			public void run() {
+				requestRender();
+			}
+		});
 		
 		//Setup listener for scaling
 		scaler = new ScaleGestureDetector(context, this);
 	}
 	
+	public MyGL20Renderer getRenderer() {
+		return mRend;
+	}
+	
+	// shows an OBJ or binary PLY file instead of the pool table
+	public void loadModel(final File file) {
+		queueEvent(new Runnable() {
+			public void run() {
+				mRend.loadModel(file);
+			}
+		});
+	}
+	
+	// Lighting.AUTO or a tier; redrawn right away to show it
+	public void setLighting(final int mode) {
+		queueEvent(new Runnable() {
+			public void run() {
+				mRend.setLightingMode(mode);
+			}
+		});
+		requestRender();
+	}
+	
+	// resume-to-first-frame is timed from here, whether or not the
+	// context survived the pause
+	@Override
+	public void onResume() {
+		mRend.getFrameStats().onResume();
+		super.onResume();
+	}
+	
+	// counted so the frame stats can show how many requests became frames
+	@Override
+	public void requestRender() {
+		mRend.getFrameStats().onRenderRequested();
+		super.requestRender();
+	}
+	
 	@Override
 	public boolean onTouchEvent(MotionEvent e) {
 		
@@ -48,30 +107,30 @@ public class MyGLSurfaceView extends GLSurfaceView implements OnScaleGestureList
 		float x = e.getX();
 		float y = e.getY();
 		
+		CameraInput camera = mRend.getCameraInput();
 		switch (e.getAction()) {
-		case MotionEvent.ACTION_MOVE:
-			
-			float dx = x - mPrevX;
-			float dy = y - mPrevY;
+		case MotionEvent.ACTION_DOWN:
+			// catch a spinning table
+			camera.hold(e.getEventTime());
+			mScheduler.onPublished(camera.publish());
+			break;
 			
-			// reverse direction of rotation above the mid-line
-			if (y > getHeight() / 2) {
-				dx = dx * -1;
-			}
+		case MotionEvent.ACTION_MOVE:
 			
-			// reverse direction of rotation to left of the mid-line
-			if (x < getWidth() / 2) {
-				dy = dy * -1;
-			}
+			// A move batches every sample since the last one; follow each of
+			// them, then publish the result as a single camera update.
+			for (int i = 0; i < e.getHistorySize(); i++)
+				drag(e.getHistoricalX(i), e.getHistoricalY(i), e.getHistoricalEventTime(i));
+			drag(x, y, e.getEventTime());
 			
-			if(Math.abs(dx) > Math.abs(dy)) {
-				mRend.mXAngle += (dx) * TOUCH_SCALE_FACTOR;	// = 180.0f / 320
-			}
-			else {
-				mRend.mYAngle += (dy) * TOUCH_SCALE_FACTOR;
-			}
+			mScheduler.onPublished(camera.publish());
+			break;
 			
-			requestRender();
+		case MotionEvent.ACTION_UP:
+			// let it spin on at the speed it was dragged
+			camera.fling(e.getEventTime());
+			mScheduler.onPublished(camera.publish());
+			break;
 		}
 		
 		mPrevX = x;
@@ -79,24 +138,46 @@ public class MyGLSurfaceView extends GLSurfaceView implements OnScaleGestureList
 		
 		return true;
 	}
+	
+	// Rotates the camera for a move from the previous sample to (x, y).
+	private void drag(float x, float y, long eventTime) {
+		float dx = x - mPrevX;
+		float dy = y - mPrevY;
+		
+		// reverse direction of rotation above the mid-line
+		if (y > getHeight() / 2) {
+			dx = dx * -1;
+		}
+		
+		// reverse direction of rotation to left of the mid-line
+		if (x < getWidth() / 2) {
+			dy = dy * -1;
+		}
+		
+		if(Math.abs(dx) > Math.abs(dy)) {
+			mRend.getCameraInput().rotate((dx) * TOUCH_SCALE_FACTOR, 0, eventTime);	// = 180.0f / 320
+		}
+		else {
+			mRend.getCameraInput().rotate(0, (dy) * TOUCH_SCALE_FACTOR, eventTime);
+		}
+		
+		mPrevX = x;
+		mPrevY = y;
+	}
 
 	@Override
 	public boolean onScale(ScaleGestureDetector detector) {
 		// TODO Auto-generated method stub
 		float zoom = detector.getScaleFactor();
 		
+		CameraInput camera = mRend.getCameraInput();
 		if (zoom > 1f) // We are zooming out
-			mRend.mZoom += .2f;
+			camera.zoom(.2f);
 		else
-			mRend.mZoom -= .2f;
+			camera.zoom(-.2f);
 		
-		// Make sure zoom is in a reasonable range!
-		if (mRend.mZoom < -15f)
-			mRend.mZoom = -15f;
-		else if (mRend.mZoom > -3f)
-			mRend.mZoom = -3f;
-		
-		requestRender();
+		// zoom() keeps it in a reasonable range and eases towards it
+		mScheduler.onPublished(camera.publish());
 		
 		return true;
 	}
@@ -0,0 +1,284 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+// Streams the geometry out of a Wavefront OBJ file into a MeshChunker. The
+// file is read through one fixed buffer and parsed byte by byte, so no
+// String or other object is created per line. Only v, vn and f lines are
+// used; polygons are split into triangle fans, and everything else
+// (texture coordinates, groups, materials, ...) is skipped.
+//
+// Faces may refer back to any earlier v or vn line, so those are kept, as
+// plain float arrays; they are the only part that grows with the file.
+public class ObjReader implements MeshChunker.Source {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++)
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+	}
+
+	private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private float[] mPositions = new float[3 * 1024];
+	private float[] mNormals = new float[3 * 1024];
+	private int mPositionCount;
+	private int mNormalCount;
+
+	// corners of the face being read
+	private int[] mFacePositions = new int[16];
+	private int[] mFaceNormals = new int[16];
+
+	// the line being parsed
+	private byte[] mLine;
+	private int mCursor;
+	private int mEnd;
+	private int mLineNumber;
+
+	private long mBytesRead;
+
+	public void read(ReadableByteChannel channel, MeshChunker chunker) throws IOException {
+		byte[] b = mBuffer.array();
+		int pos = 0;
+		int limit = 0;
+		boolean eof = false;
+
+		while (true) {
+			int eol = pos;
+			while (eol < limit && b[eol] != '\n')
+				eol++;
+
+			if (eol == limit) {
+				if (eof) {
+					// a last line without a newline
+					if (pos < limit)
+						parseLine(b, pos, limit, chunker);
+					break;
+				}
+
+				// keep the partial line and fill up the rest of the buffer
+				System.arraycopy(b, pos, b, 0, limit - pos);
+				limit -= pos;
+				pos = 0;
+				if (limit == b.length)
+					throw new IOException("Line " + (mLineNumber + 1) + " is longer than " + b.length + " bytes");
+
+				mBuffer.clear();
+				mBuffer.position(limit);
+				int n = channel.read(mBuffer);
+				if (n < 0)
+					eof = true;
+				else {
+					limit += n;
+					mBytesRead += n;
+				}
+				continue;
+			}
+
+			parseLine(b, pos, eol, chunker);
+			pos = eol + 1;
+		}
+		chunker.flush();
+	}
+
+	private void parseLine(byte[] b, int start, int end, MeshChunker chunker) throws IOException {
+		mLine = b;
+		mCursor = start;
+		mEnd = end;
+		mLineNumber++;
+
+		skipSpaces();
+		if (mCursor + 1 >= mEnd)
+			return;
+
+		byte c0 = b[mCursor], c1 = b[mCursor + 1];
+		if (c0 == 'v' && isSpace(c1)) {
+			mCursor++;
+			ensurePositions(mPositionCount + 1);
+			int o = mPositionCount * 3;
+			mPositions[o] = parseFloat();
+			mPositions[o + 1] = parseFloat();
+			mPositions[o + 2] = parseFloat();
+			mPositionCount++;
+		}
+		else if (c0 == 'v' && c1 == 'n' && mCursor + 2 < mEnd && isSpace(b[mCursor + 2])) {
+			mCursor += 2;
+			ensureNormals(mNormalCount + 1);
+			int o = mNormalCount * 3;
+			mNormals[o] = parseFloat();
+			mNormals[o + 1] = parseFloat();
+			mNormals[o + 2] = parseFloat();
+			mNormalCount++;
+		}
+		else if (c0 == 'f' && isSpace(c1)) {
+			mCursor++;
+			parseFace(chunker);
+		}
+	}
+
+	// corners look like p, p/t, p//n or p/t/n; indices start at 1, and
+	// negative ones count back from the latest v or vn line
+	private void parseFace(MeshChunker chunker) throws IOException {
+		int corners = 0;
+		while (true) {
+			skipSpaces();
+			if (mCursor >= mEnd)
+				break;
+
+			int position = resolve(parseInt(), mPositionCount, "position");
+			int normal = -1;
+			if (mCursor < mEnd && mLine[mCursor] == '/') {
+				mCursor++;
+				if (mCursor < mEnd && mLine[mCursor] != '/')
+					parseInt();		// texture coordinate, not used
+				if (mCursor < mEnd && mLine[mCursor] == '/') {
+					mCursor++;
+					normal = resolve(parseInt(), mNormalCount, "normal");
+				}
+			}
+
+			if (corners == mFacePositions.length) {
+				mFacePositions = grow(mFacePositions);
+				mFaceNormals = grow(mFaceNormals);
+			}
+			mFacePositions[corners] = position;
+			mFaceNormals[corners] = normal;
+			corners++;
+		}
+
+		for (int i = 2; i < corners; i++) {
+			chunker.addTriangle(mFacePositions[0], mFaceNormals[0],
+					mFacePositions[i - 1], mFaceNormals[i - 1],
+					mFacePositions[i], mFaceNormals[i]);
+		}
+	}
+
+	private int resolve(int index, int count, String what) throws IOException {
+		int resolved = index < 0 ? count + index : index - 1;
+		if (index == 0 || resolved < 0 || resolved >= count)
+			throw new IOException("Line " + mLineNumber + ": no " + what + " " + index);
+		return resolved;
+	}
+
+	private int parseInt() throws IOException {
+		boolean negative = false;
+		if (mCursor < mEnd && (mLine[mCursor] == '-' || mLine[mCursor] == '+'))
+			negative = mLine[mCursor++] == '-';
+
+		int start = mCursor;
+		int value = 0;
+		while (mCursor < mEnd && isDigit(mLine[mCursor]))
+			value = value * 10 + (mLine[mCursor++] - '0');
+		if (mCursor == start)
+			throw new IOException("Line " + mLineNumber + ": number expected");
+		return negative ? -value : value;
+	}
+
+	// Decimal with optional fraction and exponent. The digits are gathered
+	// into a long and scaled once, which is exact to well within a float.
+	private float parseFloat() throws IOException {
+		skipSpaces();
+		boolean negative = false;
+		if (mCursor < mEnd && (mLine[mCursor] == '-' || mLine[mCursor] == '+'))
+			negative = mLine[mCursor++] == '-';
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean any = false;
+		while (mCursor < mEnd && isDigit(mLine[mCursor])) {
+			if (digits < 18) {
+				mantissa = mantissa * 10 + (mLine[mCursor] - '0');
+				if (mantissa != 0)
+					digits++;
+			}
+			else
+				exponent++;
+			mCursor++;
+			any = true;
+		}
+		if (mCursor < mEnd && mLine[mCursor] == '.') {
+			mCursor++;
+			while (mCursor < mEnd && isDigit(mLine[mCursor])) {
+				if (digits < 18) {
+					mantissa = mantissa * 10 + (mLine[mCursor] - '0');
+					if (mantissa != 0)
+						digits++;
+					exponent--;
+				}
+				mCursor++;
+				any = true;
+			}
+		}
+		if (!any)
+			throw new IOException("Line " + mLineNumber + ": number expected");
+
+		if (mCursor < mEnd && (mLine[mCursor] == 'e' || mLine[mCursor] == 'E')) {
+			mCursor++;
+			exponent += parseInt();
+		}
+
+		double value = mantissa;
+		if (exponent > 0)
+			value *= exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[exponent] : Math.pow(10, exponent);
+		else if (exponent < 0)
+			value /= -exponent < POWERS_OF_TEN.length ? POWERS_OF_TEN[-exponent] : Math.pow(10, -exponent);
+		return (float) (negative ? -value : value);
+	}
+
+	private void skipSpaces() {
+		while (mCursor < mEnd && isSpace(mLine[mCursor]))
+			mCursor++;
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\r';
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private void ensurePositions(int count) {
+		if (mPositions.length < count * 3) {
+			float[] positions = new float[mPositions.length * 2];
+			System.arraycopy(mPositions, 0, positions, 0, mPositionCount * 3);
+			mPositions = positions;
+		}
+	}
+
+	private void ensureNormals(int count) {
+		if (mNormals.length < count * 3) {
+			float[] normals = new float[mNormals.length * 2];
+			System.arraycopy(mNormals, 0, normals, 0, mNormalCount * 3);
+			mNormals = normals;
+		}
+	}
+
+	private static int[] grow(int[] array) {
+		int[] grown = new int[array.length * 2];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	public void getPosition(int index, float[] out, int offset) {
+		System.arraycopy(mPositions, index * 3, out, offset, 3);
+	}
+
+	public void getNormal(int index, float[] out, int offset) {
+		System.arraycopy(mNormals, index * 3, out, offset, 3);
+	}
+
+	public int getPositionCount() {
+		return mPositionCount;
+	}
+
+	public long getBytesRead() {
+		return mBytesRead;
+	}
+}
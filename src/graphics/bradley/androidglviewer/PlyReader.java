@@ -0,0 +1,352 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+// Streams the geometry out of a binary PLY file into a MeshChunker. The
+// vertex element is memory-mapped and read in place when a face needs it,
+// and the faces are read through one fixed buffer, so the heap used stays
+// the same however large the file is. x, y, z and, if present, nx, ny, nz
+// are used; faces are split into triangle fans. Elements other than vertex
+// and face are skipped.
+public class PlyReader implements MeshChunker.Source {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	// the header is text and must fit the buffer
+	private static final int MAX_HEADER = BUFFER_SIZE;
+
+	private static final int CHAR = 1, UCHAR = 2, SHORT = 3, USHORT = 4;
+	private static final int INT = 5, UINT = 6, FLOAT = 7, DOUBLE = 8;
+
+	private static class Property {
+		String name;
+		int type;
+		int countType;	// for lists, the type of the count; 0 otherwise
+		int offset;		// in a fixed-size record
+	}
+
+	private static class Element {
+		String name;
+		long count;
+		final ArrayList<Property> properties = new ArrayList<Property>();
+		int size;		// of a record, or -1 if it holds a list
+
+		Property find(String name) {
+			for (int i = 0; i < properties.size(); i++) {
+				if (properties.get(i).name.equals(name))
+					return properties.get(i);
+			}
+			return null;
+		}
+	}
+
+	private final ByteBuffer mBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+	private FileChannel mChannel;
+	private long mFilePosition;		// of the end of what is in mBuffer
+
+	// the vertex element, mapped
+	private ByteBuffer mVertices;
+	private int mVertexSize;
+	private int mVertexCount;
+	private Property mX, mY, mZ, mNX, mNY, mNZ;
+
+	// corners of the face being read
+	private int[] mFace = new int[16];
+
+	public void read(FileChannel channel, MeshChunker chunker) throws IOException {
+		mChannel = channel;
+		mFilePosition = 0;
+		mBuffer.clear();
+		mBuffer.limit(0);
+
+		ArrayList<Element> elements = new ArrayList<Element>();
+		ByteOrder order = readHeader(elements);
+		mBuffer.order(order);
+
+		boolean haveVertices = false;
+		for (int e = 0; e < elements.size(); e++) {
+			Element element = elements.get(e);
+			if (element.name.equals("vertex")) {
+				mapVertices(element, order);
+				haveVertices = true;
+			}
+			else if (element.name.equals("face")) {
+				if (!haveVertices)
+					throw new IOException("PLY faces come before the vertices");
+				readFaces(element, chunker);
+			}
+			else
+				skip(element);
+		}
+		chunker.flush();
+	}
+
+	private ByteOrder readHeader(ArrayList<Element> elements) throws IOException {
+		// read until the end of the header is in the buffer
+		String header = null;
+		while (header == null) {
+			if (mBuffer.limit() == MAX_HEADER || !fill(mBuffer.remaining() + 1))
+				throw new IOException("No PLY header found");
+			byte[] b = mBuffer.array();
+			for (int i = 0; i + 10 < mBuffer.limit(); i++) {
+				if (b[i] == 'e' && startsWith(b, i, "end_header") && (b[i + 10] == '\n' || b[i + 10] == '\r')) {
+					int end = i + 10;
+					if (b[end] == '\r')
+						end++;
+					if (end >= mBuffer.limit())
+						break;	// the \n is still to come
+					header = new String(b, 0, i, "US-ASCII");
+					mBuffer.position(end + 1);
+					break;
+				}
+			}
+		}
+
+		String[] lines = header.split("\r?\n");
+		if (!lines[0].equals("ply"))
+			throw new IOException("Not a PLY file");
+
+		ByteOrder order = null;
+		Element element = null;
+		for (int i = 1; i < lines.length; i++) {
+			String[] words = lines[i].trim().split("\\s+");
+			if (words[0].equals("format")) {
+				checkWords(words, 2, lines[i]);
+				if (words[1].equals("binary_little_endian"))
+					order = ByteOrder.LITTLE_ENDIAN;
+				else if (words[1].equals("binary_big_endian"))
+					order = ByteOrder.BIG_ENDIAN;
+				else
+					throw new IOException("Only binary PLY files are supported, not " + words[1]);
+			}
+			else if (words[0].equals("element")) {
+				checkWords(words, 3, lines[i]);
+				element = new Element();
+				element.name = words[1];
+				try {
+					element.count = Long.parseLong(words[2]);
+				}
+				catch (NumberFormatException e) {
+					throw new IOException("Bad PLY header line: " + lines[i]);
+				}
+				if (element.count < 0)
+					throw new IOException("Bad PLY header line: " + lines[i]);
+				elements.add(element);
+			}
+			else if (words[0].equals("property")) {
+				if (element == null)
+					throw new IOException("PLY property outside an element");
+				checkWords(words, 3, lines[i]);
+				Property property = new Property();
+				if (words[1].equals("list")) {
+					checkWords(words, 5, lines[i]);
+					property.countType = typeOf(words[2]);
+					property.type = typeOf(words[3]);
+					property.name = words[4];
+					element.size = -1;
+				}
+				else {
+					property.type = typeOf(words[1]);
+					property.name = words[2];
+					if (element.size >= 0) {
+						property.offset = element.size;
+						element.size += sizeOf(property.type);
+					}
+				}
+				element.properties.add(property);
+			}
+		}
+		if (order == null)
+			throw new IOException("PLY file has no format line");
+		return order;
+	}
+
+	private static void checkWords(String[] words, int count, String line) throws IOException {
+		if (words.length < count)
+			throw new IOException("Bad PLY header line: " + line);
+	}
+
+	private void mapVertices(Element element, ByteOrder order) throws IOException {
+		if (element.size < 0)
+			throw new IOException("PLY vertices with list properties are not supported");
+		mX = element.find("x");
+		mY = element.find("y");
+		mZ = element.find("z");
+		if (mX == null || mY == null || mZ == null)
+			throw new IOException("PLY vertices have no x, y and z");
+		mNX = element.find("nx");
+		mNY = element.find("ny");
+		mNZ = element.find("nz");
+		if (mNX == null || mNY == null || mNZ == null)
+			mNX = null;
+
+		long bytes = element.count * element.size;
+		if (element.count > Integer.MAX_VALUE || bytes > Integer.MAX_VALUE)
+			throw new IOException("Too many PLY vertices: " + element.count);
+
+		// the records start wherever the buffer has got to
+		long start = mFilePosition - mBuffer.remaining();
+		mVertices = mChannel.map(FileChannel.MapMode.READ_ONLY, start, bytes);
+		mVertices.order(order);
+		mVertexSize = element.size;
+		mVertexCount = (int) element.count;
+
+		// carry on reading after them
+		mFilePosition = start + bytes;
+		mBuffer.clear();
+		mBuffer.limit(0);
+	}
+
+	private void readFaces(Element element, MeshChunker chunker) throws IOException {
+		Property indices = element.find("vertex_indices");
+		if (indices == null)
+			indices = element.find("vertex_index");
+		if (indices == null || indices.countType == 0)
+			throw new IOException("PLY faces have no vertex_indices list");
+
+		boolean normals = mNX != null;
+		for (long f = 0; f < element.count; f++) {
+			for (int p = 0; p < element.properties.size(); p++) {
+				Property property = element.properties.get(p);
+				if (property != indices) {
+					skip(property);
+					continue;
+				}
+
+				int corners = (int) readValue(property.countType);
+				if (corners < 0)
+					throw new IOException("Bad PLY face " + f);
+				if (corners > mFace.length)
+					mFace = new int[Math.max(corners, mFace.length * 2)];
+				for (int i = 0; i < corners; i++) {
+					long index = (long) readValue(property.type);
+					if (index < 0 || index >= mVertexCount)
+						throw new IOException("PLY face " + f + " uses vertex " + index + " of " + mVertexCount);
+					mFace[i] = (int) index;
+				}
+
+				for (int i = 2; i < corners; i++) {
+					int a = mFace[0], b = mFace[i - 1], c = mFace[i];
+					chunker.addTriangle(a, normals ? a : -1, b, normals ? b : -1, c, normals ? c : -1);
+				}
+			}
+		}
+	}
+
+	private void skip(Element element) throws IOException {
+		if (element.size >= 0) {
+			long bytes = element.count * element.size;
+			long buffered = Math.min(bytes, mBuffer.remaining());
+			mBuffer.position(mBuffer.position() + (int) buffered);
+			mFilePosition += bytes - buffered;
+			return;
+		}
+		for (long r = 0; r < element.count; r++) {
+			for (int p = 0; p < element.properties.size(); p++)
+				skip(element.properties.get(p));
+		}
+	}
+
+	private void skip(Property property) throws IOException {
+		if (property.countType == 0) {
+			readValue(property.type);
+			return;
+		}
+		int count = (int) readValue(property.countType);
+		for (int i = 0; i < count; i++)
+			readValue(property.type);
+	}
+
+	// the next value in the file, as a double so that any type fits
+	private double readValue(int type) throws IOException {
+		int size = sizeOf(type);
+		if (mBuffer.remaining() < size && !fill(size))
+			throw new IOException("PLY file ends early");
+		return get(mBuffer, mBuffer.position(), type, true);
+	}
+
+	// Tops up the buffer until at least bytes are left in it; false at the
+	// end of the file.
+	private boolean fill(int bytes) throws IOException {
+		mBuffer.compact();
+		while (mBuffer.position() < bytes) {
+			int n = mChannel.read(mBuffer, mFilePosition);
+			if (n < 0)
+				break;
+			mFilePosition += n;
+		}
+		mBuffer.flip();
+		return mBuffer.remaining() >= bytes;
+	}
+
+	// reads the value at index; with advance, moves the position past it
+	private static double get(ByteBuffer bb, int index, int type, boolean advance) {
+		double value;
+		switch (type) {
+		case CHAR: value = bb.get(index); break;
+		case UCHAR: value = bb.get(index) & 0xff; break;
+		case SHORT: value = bb.getShort(index); break;
+		case USHORT: value = bb.getShort(index) & 0xffff; break;
+		case INT: value = bb.getInt(index); break;
+		case UINT: value = bb.getInt(index) & 0xffffffffL; break;
+		case FLOAT: value = bb.getFloat(index); break;
+		default: value = bb.getDouble(index); break;
+		}
+		if (advance)
+			bb.position(index + sizeOf(type));
+		return value;
+	}
+
+	private float vertexValue(int vertex, Property property) {
+		return (float) get(mVertices, vertex * mVertexSize + property.offset, property.type, false);
+	}
+
+	public void getPosition(int index, float[] out, int offset) {
+		out[offset] = vertexValue(index, mX);
+		out[offset + 1] = vertexValue(index, mY);
+		out[offset + 2] = vertexValue(index, mZ);
+	}
+
+	public void getNormal(int index, float[] out, int offset) {
+		out[offset] = vertexValue(index, mNX);
+		out[offset + 1] = vertexValue(index, mNY);
+		out[offset + 2] = vertexValue(index, mNZ);
+	}
+
+	public int getVertexCount() {
+		return mVertexCount;
+	}
+
+	private static boolean startsWith(byte[] b, int offset, String prefix) {
+		for (int i = 0; i < prefix.length(); i++) {
+			if (b[offset + i] != prefix.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	private static int typeOf(String name) throws IOException {
+		if (name.equals("char") || name.equals("int8")) return CHAR;
+		if (name.equals("uchar") || name.equals("uint8")) return UCHAR;
+		if (name.equals("short") || name.equals("int16")) return SHORT;
+		if (name.equals("ushort") || name.equals("uint16")) return USHORT;
+		if (name.equals("int") || name.equals("int32")) return INT;
+		if (name.equals("uint") || name.equals("uint32")) return UINT;
+		if (name.equals("float") || name.equals("float32")) return FLOAT;
+		if (name.equals("double") || name.equals("float64")) return DOUBLE;
+		throw new IOException("Unknown PLY type " + name);
+	}
+
+	private static int sizeOf(int type) {
+		switch (type) {
+		case CHAR: case UCHAR: return 1;
+		case SHORT: case USHORT: return 2;
+		case INT: case UINT: case FLOAT: return 4;
+		default: return 8;
+		}
+	}
+}
@@ -0,0 +1,354 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+
+import android.opengl.GLES20;
+
+// A backend without a GPU. It records the command stream of each frame and
+// counts what a driver would have to do for it, so frame costs can be
+// checked on a plain JVM, e.g.
+//
+//     RecordingBackend gl = new RecordingBackend();
+//     MyGL20Renderer renderer = new MyGL20Renderer(gl);	// behind its StateCache
+//     renderer.onSurfaceCreated(null, null);
+//     renderer.onSurfaceChanged(null, 800, 480);
+//     gl.beginFrame();
+//     renderer.onDrawFrame(null);
+//     assert gl.getStateChanges() <= budget;
+//
+// as RenderBudgetTest does. Installing it with RenderContext.set() instead
+// would not last: the renderer's constructor installs its own StateCache.
+//
+// Shaders always compile and link, and buffer, shader and program names
+// are handed out in sequence as a driver would.
+public class RecordingBackend implements RenderBackend {
+
+	// command codes, as recorded in the stream
+	public static final int CLEAR_COLOR = 0;
+	public static final int CLEAR = 1;
+	public static final int VIEWPORT = 2;
+	public static final int ENABLE = 3;
+	public static final int DISABLE = 4;
+	public static final int DEPTH_FUNC = 5;
+	public static final int CREATE_SHADER = 6;
+	public static final int SHADER_SOURCE = 7;
+	public static final int COMPILE_SHADER = 8;
+	public static final int DELETE_SHADER = 9;
+	public static final int CREATE_PROGRAM = 10;
+	public static final int ATTACH_SHADER = 11;
+	public static final int LINK_PROGRAM = 12;
+	public static final int DELETE_PROGRAM = 13;
+	public static final int USE_PROGRAM = 14;
+	public static final int UNIFORM = 15;
+	public static final int VERTEX_ATTRIB = 16;
+	public static final int GEN_BUFFERS = 17;
+	public static final int DELETE_BUFFERS = 18;
+	public static final int BIND_BUFFER = 19;
+	public static final int BUFFER_DATA = 20;
+	public static final int BUFFER_SUB_DATA = 21;
+	public static final int ENABLE_ATTRIB_ARRAY = 22;
+	public static final int DISABLE_ATTRIB_ARRAY = 23;
+	public static final int ATTRIB_POINTER = 24;
+	public static final int DRAW_ARRAYS = 25;
+	public static final int DRAW_ELEMENTS = 26;
+	public static final int FINISH = 27;
+	public static final int COMMANDS = 28;
+
+	private static final String[] NAMES = {
+		"glClearColor", "glClear", "glViewport", "glEnable", "glDisable", "glDepthFunc",
+		"glCreateShader", "glShaderSource", "glCompileShader", "glDeleteShader",
+		"glCreateProgram", "glAttachShader", "glLinkProgram", "glDeleteProgram", "glUseProgram",
+		"glUniform", "glVertexAttrib4fv",
+		"glGenBuffers", "glDeleteBuffers", "glBindBuffer", "glBufferData", "glBufferSubData",
+		"glEnableVertexAttribArray", "glDisableVertexAttribArray", "glVertexAttribPointer",
+		"glDrawArrays", "glDrawElements", "glFinish"
+	};
+
+	// command stream of the current frame: the code and first argument of
+	// every call
+	private int[] mCommands = new int[1024];
+	private int mCommandCount;
+	private final int[] mCallCounts = new int[COMMANDS];
+
+	private int mDrawCalls, mVerticesDrawn;
+	private int mProgramBinds, mAttributeSetups, mUniformUploads;
+	private int mStateChanges;
+	private long mBytesSubmitted;
+	private int mFrames;
+
+	// fake driver objects
+	private int mNextName = 1;
+	private final HashMap<String, Integer> mLocations = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> mLocationCounts = new HashMap<String, Integer>();
+
+	// Starts counting a new frame.
+	public void beginFrame() {
+		mCommandCount = 0;
+		for (int i = 0; i < COMMANDS; i++)
+			mCallCounts[i] = 0;
+		mDrawCalls = mVerticesDrawn = 0;
+		mProgramBinds = mAttributeSetups = mUniformUploads = 0;
+		mStateChanges = 0;
+		mBytesSubmitted = 0;
+		mFrames++;
+	}
+
+	public int getFrameCount() {
+		return mFrames;
+	}
+
+	public int getDrawCalls() {
+		return mDrawCalls;
+	}
+
+	// vertices (or indices) fed to draw calls
+	public int getVerticesDrawn() {
+		return mVerticesDrawn;
+	}
+
+	public int getProgramBinds() {
+		return mProgramBinds;
+	}
+
+	// attribute pointers and constant attribute values set
+	public int getAttributeSetups() {
+		return mAttributeSetups;
+	}
+
+	public int getUniformUploads() {
+		return mUniformUploads;
+	}
+
+	// every call that changes pipeline state: capabilities, viewport, program
+	// and buffer bindings and vertex attribute setup, but not uniform values
+	public int getStateChanges() {
+		return mStateChanges;
+	}
+
+	// buffer, uniform and constant attribute data handed to the driver
+	public long getBytesSubmitted() {
+		return mBytesSubmitted;
+	}
+
+	public int getCommandCount() {
+		return mCommandCount;
+	}
+
+	public int getCommand(int i) {
+		return mCommands[i * 2];
+	}
+
+	// the first argument the command was called with, e.g. the program of a
+	// glUseProgram or the index count of a glDrawElements
+	public int getArgument(int i) {
+		return mCommands[i * 2 + 1];
+	}
+
+	// how often a command was issued in this frame
+	public int getCallCount(int command) {
+		return mCallCounts[command];
+	}
+
+	public static String getName(int command) {
+		return NAMES[command];
+	}
+
+	// The frame's command stream, one call per line.
+	public String dump() {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < mCommandCount; i++)
+			sb.append(NAMES[getCommand(i)]).append('(').append(getArgument(i)).append(")\n");
+		return sb.toString();
+	}
+
+	private void record(int command, int argument) {
+		if ((mCommandCount + 1) * 2 > mCommands.length) {
+			int[] commands = new int[mCommands.length * 2];
+			System.arraycopy(mCommands, 0, commands, 0, mCommandCount * 2);
+			mCommands = commands;
+		}
+		mCommands[mCommandCount * 2] = command;
+		mCommands[mCommandCount * 2 + 1] = argument;
+		mCommandCount++;
+		mCallCounts[command]++;
+	}
+
+	private void stateChange(int command, int argument) {
+		record(command, argument);
+		mStateChanges++;
+	}
+
+	// attribute and uniform locations are each numbered from 0 in the order
+	// a program is asked for them
+	private int location(int program, String kind, String name) {
+		String key = program + " " + kind + " " + name;
+		Integer location = mLocations.get(key);
+		if (location == null) {
+			String countKey = program + " " + kind;
+			Integer count = mLocationCounts.get(countKey);
+			location = count != null ? count : 0;
+			mLocationCounts.put(countKey, location + 1);
+			mLocations.put(key, location);
+		}
+		return location;
+	}
+
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		stateChange(CLEAR_COLOR, 0);
+	}
+
+	public void glClear(int mask) {
+		record(CLEAR, mask);
+	}
+
+	public void glViewport(int x, int y, int width, int height) {
+		stateChange(VIEWPORT, width);
+	}
+
+	public void glEnable(int cap) {
+		stateChange(ENABLE, cap);
+	}
+
+	public void glDisable(int cap) {
+		stateChange(DISABLE, cap);
+	}
+
+	public void glDepthFunc(int func) {
+		stateChange(DEPTH_FUNC, func);
+	}
+
+	public void glFinish() {
+		record(FINISH, 0);
+	}
+
+	public int glCreateShader(int type) {
+		record(CREATE_SHADER, type);
+		return mNextName++;
+	}
+
+	public void glShaderSource(int shader, String source) {
+		record(SHADER_SOURCE, shader);
+	}
+
+	public void glCompileShader(int shader) {
+		record(COMPILE_SHADER, shader);
+	}
+
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		params[offset] = pname == GLES20.GL_COMPILE_STATUS ? GLES20.GL_TRUE : 0;
+	}
+
+	public String glGetShaderInfoLog(int shader) {
+		return "";
+	}
+
+	public void glDeleteShader(int shader) {
+		record(DELETE_SHADER, shader);
+	}
+
+	public int glCreateProgram() {
+		record(CREATE_PROGRAM, 0);
+		return mNextName++;
+	}
+
+	public void glAttachShader(int program, int shader) {
+		record(ATTACH_SHADER, program);
+	}
+
+	public void glLinkProgram(int program) {
+		record(LINK_PROGRAM, program);
+	}
+
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		params[offset] = pname == GLES20.GL_LINK_STATUS ? GLES20.GL_TRUE : 0;
+	}
+
+	public String glGetProgramInfoLog(int program) {
+		return "";
+	}
+
+	public void glDeleteProgram(int program) {
+		record(DELETE_PROGRAM, program);
+	}
+
+	public int glGetAttribLocation(int program, String name) {
+		return location(program, "attribute", name);
+	}
+
+	public int glGetUniformLocation(int program, String name) {
+		return location(program, "uniform", name);
+	}
+
+	public void glUseProgram(int program) {
+		stateChange(USE_PROGRAM, program);
+		mProgramBinds++;
+	}
+
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		record(UNIFORM, location);
+		mUniformUploads++;
+		mBytesSubmitted += count * 3 * 4;
+	}
+
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		record(UNIFORM, location);
+		mUniformUploads++;
+		mBytesSubmitted += count * 16 * 4;
+	}
+
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		stateChange(VERTEX_ATTRIB, index);
+		mAttributeSetups++;
+		mBytesSubmitted += 4 * 4;
+	}
+
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		record(GEN_BUFFERS, n);
+		for (int i = 0; i < n; i++)
+			buffers[offset + i] = mNextName++;
+	}
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		record(DELETE_BUFFERS, n);
+	}
+
+	public void glBindBuffer(int target, int buffer) {
+		stateChange(BIND_BUFFER, buffer);
+	}
+
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		record(BUFFER_DATA, size);
+		mBytesSubmitted += size;
+	}
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		record(BUFFER_SUB_DATA, size);
+		mBytesSubmitted += size;
+	}
+
+	public void glEnableVertexAttribArray(int index) {
+		stateChange(ENABLE_ATTRIB_ARRAY, index);
+	}
+
+	public void glDisableVertexAttribArray(int index) {
+		stateChange(DISABLE_ATTRIB_ARRAY, index);
+	}
+
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		stateChange(ATTRIB_POINTER, index);
+		mAttributeSetups++;
+	}
+
+	public void glDrawArrays(int mode, int first, int count) {
+		record(DRAW_ARRAYS, count);
+		mDrawCalls++;
+		mVerticesDrawn += count;
+	}
+
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		record(DRAW_ELEMENTS, count);
+		mDrawCalls++;
+		mVerticesDrawn += count;
+	}
+}
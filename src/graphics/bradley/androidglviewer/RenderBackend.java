@@ -0,0 +1,56 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.Buffer;
+
+// The OpenGL ES 2.0 entry points the viewer uses. Everything that talks to
+// the GPU goes through the backend returned by RenderContext.get(), so the
+// same rendering code runs on a device (GLES20Backend) or headless on a
+// plain JVM (RecordingBackend). Methods take the same arguments as their
+// GLES20 namesakes.
+public interface RenderBackend {
+
+	// frame
+	void glClearColor(float red, float green, float blue, float alpha);
+	void glClear(int mask);
+	void glViewport(int x, int y, int width, int height);
+	void glEnable(int cap);
+	void glDisable(int cap);
+	void glDepthFunc(int func);
+	void glFinish();
+
+	// shaders and programs
+	int glCreateShader(int type);
+	void glShaderSource(int shader, String source);
+	void glCompileShader(int shader);
+	void glGetShaderiv(int shader, int pname, int[] params, int offset);
+	String glGetShaderInfoLog(int shader);
+	void glDeleteShader(int shader);
+	int glCreateProgram();
+	void glAttachShader(int program, int shader);
+	void glLinkProgram(int program);
+	void glGetProgramiv(int program, int pname, int[] params, int offset);
+	String glGetProgramInfoLog(int program);
+	void glDeleteProgram(int program);
+	int glGetAttribLocation(int program, String name);
+	int glGetUniformLocation(int program, String name);
+	void glUseProgram(int program);
+
+	// uniforms and constant attributes
+	void glUniform3fv(int location, int count, float[] v, int offset);
+	void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset);
+	void glVertexAttrib4fv(int index, float[] values, int offset);
+
+	// buffer objects
+	void glGenBuffers(int n, int[] buffers, int offset);
+	void glDeleteBuffers(int n, int[] buffers, int offset);
+	void glBindBuffer(int target, int buffer);
+	void glBufferData(int target, int size, Buffer data, int usage);
+	void glBufferSubData(int target, int offset, int size, Buffer data);
+
+	// vertex attributes and drawing
+	void glEnableVertexAttribArray(int index);
+	void glDisableVertexAttribArray(int index);
+	void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset);
+	void glDrawArrays(int mode, int first, int count);
+	void glDrawElements(int mode, int count, int type, int offset);
+}
@@ -0,0 +1,36 @@
+package graphics.bradley.androidglviewer;
+
+// Holds the backend all GL work is issued to. It is only used from the GL
+// thread, so it is set once before the renderer starts and left alone.
+//
+// It also tracks which EGL context GPU objects belong to. Losing the context
+// (e.g. on pause) takes every program and buffer with it, but not the
+// CPU-side data they were made from: ShaderRegistry keeps the shader
+// sources and each Mesh its packed geometry. So a new context only has to
+// link the programs again and re-upload the meshes, not rebuild the scene.
+public class RenderContext {
+
+	private static RenderBackend sBackend = new GLES20Backend();
+
+	// bumped for every new context; GPU handles from an older one are dead
+	private static int sGeneration;
+
+	public static RenderBackend get() {
+		return sBackend;
+	}
+
+	public static void set(RenderBackend backend) {
+		sBackend = backend;
+	}
+
+	public static int getGeneration() {
+		return sGeneration;
+	}
+
+	// From onSurfaceCreated(), which only runs for a context that has
+	// nothing in it yet. Programs link themselves again and meshes upload
+	// themselves again the next time they are used.
+	public static void onContextCreated() {
+		sGeneration++;
+	}
+}
@@ -0,0 +1,151 @@
+package graphics.bradley.androidglviewer;
+
+// Collects the draws of one frame, each with a 64-bit sort key, and orders
+// them so that draws sharing a program and mesh end up next to each other.
+// Keys are compared as unsigned numbers and laid out, from the top bit, as
+//
+//     pass (4) | program (12) | mesh (16) | depth (32)
+//
+// so the pass is the most significant. Within a pass, a program change
+// costs the most, then a mesh change. Opaque draws then go front to back,
+// so early depth testing can reject hidden fragments. Transparent draws go
+// back to front, so they blend correctly.
+//
+// The sort is an LSD radix sort over the key bytes. Bytes that are the same
+// in every key are skipped, which is most of them in practice. Nothing is
+// allocated per frame once the queue has grown to its working size.
+public class RenderQueue<T> {
+
+	public static final int PASS_OPAQUE = 0;
+	public static final int PASS_TRANSPARENT = 1;
+
+	private long[] mKeys, mKeysTmp;
+	private int[] mOrder, mOrderTmp;
+	private Object[] mItems;
+	private int mSize;
+
+	// one histogram per key byte
+	private final int[] mCounts = new int[8 * 256];
+
+	public RenderQueue(int capacity) {
+		capacity = Math.max(capacity, 16);
+		mKeys = new long[capacity];
+		mKeysTmp = new long[capacity];
+		mOrder = new int[capacity];
+		mOrderTmp = new int[capacity];
+		mItems = new Object[capacity];
+	}
+
+	// Builds a key. program and mesh are truncated to their fields; depth is
+	// the distance in front of the camera, e.g. clip space w.
+	public static long makeKey(int pass, int program, int mesh, float depth) {
+		// non-negative floats sort like their bit patterns
+		long d = Float.floatToIntBits(depth > 0 ? depth : 0) & 0xffffffffL;
+		if (pass == PASS_TRANSPARENT)
+			d = ~d & 0xffffffffL;
+		return ((long) (pass & 0xf) << 60)
+				| ((long) (program & 0xfff) << 48)
+				| ((long) (mesh & 0xffff) << 32)
+				| d;
+	}
+
+	public void clear() {
+		// drop references so the queue does not keep objects alive
+		for (int i = 0; i < mSize; i++)
+			mItems[i] = null;
+		mSize = 0;
+	}
+
+	public void add(long key, T item) {
+		if (mSize == mKeys.length)
+			grow();
+		mKeys[mSize] = key;
+		mOrder[mSize] = mSize;
+		mItems[mSize] = item;
+		mSize++;
+	}
+
+	private void grow() {
+		int capacity = mKeys.length * 2;
+		long[] keys = new long[capacity];
+		int[] order = new int[capacity];
+		Object[] items = new Object[capacity];
+		System.arraycopy(mKeys, 0, keys, 0, mSize);
+		System.arraycopy(mOrder, 0, order, 0, mSize);
+		System.arraycopy(mItems, 0, items, 0, mSize);
+		mKeys = keys;
+		mOrder = order;
+		mItems = items;
+		mKeysTmp = new long[capacity];
+		mOrderTmp = new int[capacity];
+	}
+
+	public int size() {
+		return mSize;
+	}
+
+	// After sort(), the i-th item in key order; before, in submission order.
+	@SuppressWarnings("unchecked")
+	public T get(int i) {
+		return (T) mItems[mOrder[i]];
+	}
+
+	public long getKey(int i) {
+		return mKeys[i];
+	}
+
+	public void sort() {
+		int n = mSize;
+		if (n < 2)
+			return;
+
+		int[] counts = mCounts;
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = 0;
+
+		// all eight histograms in one pass over the keys
+		long[] keys = mKeys;
+		for (int i = 0; i < n; i++) {
+			long k = keys[i];
+			counts[(int) (k & 0xff)]++;
+			counts[256 + (int) ((k >>> 8) & 0xff)]++;
+			counts[512 + (int) ((k >>> 16) & 0xff)]++;
+			counts[768 + (int) ((k >>> 24) & 0xff)]++;
+			counts[1024 + (int) ((k >>> 32) & 0xff)]++;
+			counts[1280 + (int) ((k >>> 40) & 0xff)]++;
+			counts[1536 + (int) ((k >>> 48) & 0xff)]++;
+			counts[1792 + (int) (k >>> 56)]++;
+		}
+
+		for (int b = 0; b < 8; b++) {
+			int base = b * 256;
+			int shift = b * 8;
+
+			// a byte every key shares does not change the order
+			if (counts[base + (int) ((mKeys[0] >>> shift) & 0xff)] == n)
+				continue;
+
+			// bucket counts to start offsets
+			int sum = 0;
+			for (int i = 0; i < 256; i++) {
+				int c = counts[base + i];
+				counts[base + i] = sum;
+				sum += c;
+			}
+
+			long[] src = mKeys, dst = mKeysTmp;
+			int[] srcOrder = mOrder, dstOrder = mOrderTmp;
+			for (int i = 0; i < n; i++) {
+				long k = src[i];
+				int pos = counts[base + (int) ((k >>> shift) & 0xff)]++;
+				dst[pos] = k;
+				dstOrder[pos] = srcOrder[i];
+			}
+
+			mKeys = dst;
+			mKeysTmp = src;
+			mOrder = dstOrder;
+			mOrderTmp = srcOrder;
+		}
+	}
+}
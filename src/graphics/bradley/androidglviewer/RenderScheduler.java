@@ -0,0 +1,53 @@
+package graphics.bradley.androidglviewer;
+
+import android.opengl.GLSurfaceView;
+
+// Keeps the view rendering on demand while nothing moves, and continuously
+// only while the camera animates (a fling or an eased zoom), so an idle
+// viewer draws nothing.
+//
+// The UI thread calls animate() after publishing a moving camera; the GL
+// thread calls onFrameDrawn() after every frame and drops back to on-demand
+// rendering once the camera it drew has come to rest. Both hold the lock
+// while deciding, and a frame only stops the animation if it drew the
+// newest published state, so a fling started at the same moment is never
+// lost.
+public class RenderScheduler {
+
+	private final GLSurfaceView mView;
+	private final CameraInput mInput;
+
+	private boolean mContinuous;	// guarded by this
+
+	public RenderScheduler(GLSurfaceView view, CameraInput input) {
+		mView = view;
+		mInput = input;
+	}
+
+	// UI thread, after publishing
+	public void onPublished(boolean frameNeeded) {
+		if (mInput.getPublished().isAnimating(System.nanoTime()))
+			animate();
+		else if (frameNeeded)
+			mView.requestRender();
+	}
+
+	private synchronized void animate() {
+		if (!mContinuous) {
+			mContinuous = true;
+			mView.setRenderMode(GLSurfaceView.RENDERMODE_CONTINUOUSLY);
+		}
+	}
+
+	// GL thread, after drawing camera as it was at frameTime
+	public synchronized void onFrameDrawn(CameraState camera, long frameTime) {
+		if (mContinuous && camera == mInput.getPublished() && !camera.isAnimating(frameTime)) {
+			mContinuous = false;
+			mView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
+		}
+	}
+
+	public synchronized boolean isContinuous() {
+		return mContinuous;
+	}
+}
@@ -0,0 +1,43 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.ArrayList;
+
+// The scene graph root plus the draw list produced by traversing it.
+public class Scene {
+
+	private final SceneNode mRoot = new SceneNode("root");
+	private final ArrayList<SceneNode> mDrawList = new ArrayList<SceneNode>();
+
+	// world transforms are composed on this during traversal
+	private final MatrixStack mStack = new MatrixStack(MAX_DEPTH + 1);
+
+	public static final int MAX_DEPTH = 32;
+
+	private int mProducts;
+
+	public SceneNode getRoot() {
+		return mRoot;
+	}
+
+	// Brings every dirty world and MVP matrix up to date and rebuilds the
+	// draw list, leaving out whatever culler (may be null) rejects.
+	// cameraVersion must change whenever viewProj does.
+	public void update(float[] viewProj, int cameraVersion, FrustumCuller culler) {
+		mDrawList.clear();
+		mStack.loadIdentity();
+		mProducts = mRoot.update(mStack, false, viewProj, cameraVersion, culler, mDrawList);
+	}
+
+	public int getDrawCount() {
+		return mDrawList.size();
+	}
+
+	public SceneNode getDrawNode(int i) {
+		return mDrawList.get(i);
+	}
+
+	// matrix products computed by the last update(); 0 when nothing changed
+	public int getMatrixProducts() {
+		return mProducts;
+	}
+}
@@ -0,0 +1,136 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.ArrayList;
+
+// One node of the scene graph: a local transform relative to its parent, an
+// optional Drawable and any number of children. The world and MVP matrices
+// are cached and only recomputed when this node, one of its ancestors or the
+// camera changed since the last Scene.update().
+public class SceneNode {
+
+	private final String mName;
+	private SceneNode mParent;
+	private final ArrayList<SceneNode> mChildren = new ArrayList<SceneNode>();
+	private Drawable mDrawable;
+
+	private final float[] mLocal = new float[16];
+	private final float[] mWorld = new float[16];
+	private final float[] mMVP = new float[16];
+	private final float[] mWorldSphere = new float[4];	// bounds in world space
+
+	private boolean mLocalDirty = true;
+	private int mCameraVersion = -1;	// camera the MVP was computed for
+
+	public SceneNode(String name) {
+		mName = name;
+		AffineMath.setIdentity(mLocal, 0);
+		AffineMath.setIdentity(mWorld, 0);
+	}
+
+	public SceneNode(String name, Drawable drawable) {
+		this(name);
+		mDrawable = drawable;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public SceneNode getParent() {
+		return mParent;
+	}
+
+	public void addChild(SceneNode child) {
+		if (child.mParent != null)
+			child.mParent.mChildren.remove(child);
+		child.mParent = this;
+		child.mLocalDirty = true;
+		mChildren.add(child);
+	}
+
+	public int getChildCount() {
+		return mChildren.size();
+	}
+
+	public SceneNode getChild(int i) {
+		return mChildren.get(i);
+	}
+
+	public Drawable getDrawable() {
+		return mDrawable;
+	}
+
+	public void setDrawable(Drawable drawable) {
+		mDrawable = drawable;
+		mLocalDirty = true;	// refresh the world bounds
+	}
+
+	// Replaces the local transform with translate(tx, ty, tz) * scale(sx, sy, sz).
+	public void setTransform(float tx, float ty, float tz, float sx, float sy, float sz) {
+		AffineMath.setTranslateScale(mLocal, 0, tx, ty, tz, sx, sy, sz);
+		mLocalDirty = true;
+	}
+
+	// m must be affine, i.e. have a bottom row of 0, 0, 0, 1
+	public void setLocalMatrix(float[] m, int offset) {
+		System.arraycopy(m, offset, mLocal, 0, 16);
+		mLocalDirty = true;
+	}
+
+	public float[] getLocalMatrix() {
+		return mLocal;
+	}
+
+	// valid after Scene.update()
+	public float[] getWorldMatrix() {
+		return mWorld;
+	}
+
+	// valid after Scene.update()
+	public float[] getMVPMatrix() {
+		return mMVP;
+	}
+
+	// (x, y, z, radius) of the drawable's bounds in world space; valid after
+	// Scene.update()
+	public float[] getWorldSphere() {
+		return mWorldSphere;
+	}
+
+	// Walks this subtree with the parent's world matrix on top of stack and
+	// adds the drawable nodes that pass the culler (if any) to drawList.
+	// Returns the number of matrix products computed.
+	int update(MatrixStack stack, boolean parentChanged, float[] viewProj, int cameraVersion,
+			FrustumCuller culler, ArrayList<SceneNode> drawList) {
+		int products = 0;
+
+		stack.push();
+		boolean changed = parentChanged || mLocalDirty;
+		if (changed) {
+			stack.multiplyAffine(mLocal, 0);
+			stack.get(mWorld, 0);
+			if (mDrawable != null)
+				mDrawable.getBounds().transformSphere(mWorld, mWorldSphere, 0);
+			mLocalDirty = false;
+			products++;
+		}
+		else {
+			stack.load(mWorld, 0);
+		}
+
+		if (mDrawable != null && (culler == null || culler.isVisible(mWorldSphere, 0))) {
+			if (changed || mCameraVersion != cameraVersion) {
+				AffineMath.multiplyProjAffine(mMVP, 0, viewProj, 0, mWorld, 0);
+				mCameraVersion = cameraVersion;
+				products++;
+			}
+			drawList.add(this);
+		}
+
+		for (int i = 0; i < mChildren.size(); i++)
+			products += mChildren.get(i).update(stack, changed, viewProj, cameraVersion, culler, drawList);
+
+		stack.pop();
+		return products;
+	}
+}
@@ -0,0 +1,106 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.HashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.opengl.GLES20;
+
+// A linked OpenGL ES program. Attribute and uniform locations are looked up
+// once when the program is linked, so draw() never has to ask the driver again.
+// The sources are kept so that it can be linked again in a new EGL context,
+// which happens the first time the program is asked for there: variants
+// nothing draws with any more are never linked again. Locations looked up
+// before that are stale once getLinkCount() changes.
+public class ShaderProgram {
+
+	// matches "attribute vec4 vPosition;" or "uniform mat4 a, b, c;"
+	private static final Pattern DECLARATION =
+			Pattern.compile("\\b(attribute|uniform)\\s+(?:(?:lowp|mediump|highp)\\s+)?\\w+\\s+([^;]+);");
+
+	private final String mVertexShaderCode, mFragmentShaderCode;
+	private int mProgram;
+	private int mLinkCount;
+	// RenderContext.getGeneration() of the context mProgram belongs to
+	private int mGeneration;
+	private final HashMap<String, Integer> mAttribs = new HashMap<String, Integer>();
+	private final HashMap<String, Integer> mUniforms = new HashMap<String, Integer>();
+
+	ShaderProgram(int program, String vertexShaderCode, String fragmentShaderCode) {
+		mVertexShaderCode = vertexShaderCode;
+		mFragmentShaderCode = fragmentShaderCode;
+		setProgram(program);
+	}
+
+	private void setProgram(int program) {
+		mProgram = program;
+		mGeneration = RenderContext.getGeneration();
+		mLinkCount++;
+		mAttribs.clear();
+		mUniforms.clear();
+
+		if (program != 0) {
+			resolveLocations(mVertexShaderCode);
+			resolveLocations(mFragmentShaderCode);
+		}
+	}
+
+	// links the sources again if the context has been replaced since; a
+	// failed link is not retried until the next context
+	private void checkContext() {
+		if (mGeneration != RenderContext.getGeneration())
+			setProgram(ShaderRegistry.link(mVertexShaderCode, mFragmentShaderCode));
+	}
+
+	// changes whenever the program is linked again
+	public int getLinkCount() {
+		checkContext();
+		return mLinkCount;
+	}
+
+	private void resolveLocations(String shaderCode) {
+		RenderBackend gl = RenderContext.get();
+		Matcher m = DECLARATION.matcher(shaderCode);
+		while (m.find()) {
+			boolean attrib = m.group(1).equals("attribute");
+
+			for (String name : m.group(2).split(",")) {
+				// strip array sizes, e.g. "uLights[4]"
+				int bracket = name.indexOf('[');
+				if (bracket >= 0)
+					name = name.substring(0, bracket);
+				name = name.trim();
+
+				if (attrib)
+					mAttribs.put(name, gl.glGetAttribLocation(mProgram, name));
+				else
+					mUniforms.put(name, gl.glGetUniformLocation(mProgram, name));
+			}
+		}
+	}
+
+	public int getHandle() {
+		checkContext();
+		return mProgram;
+	}
+
+	// Returns -1 if the attribute is not declared or was optimized away.
+	public int getAttribLocation(String name) {
+		checkContext();
+		Integer location = mAttribs.get(name);
+		return location != null ? location : -1;
+	}
+
+	// Returns -1 if the uniform is not declared or was optimized away.
+	public int getUniformLocation(String name) {
+		checkContext();
+		Integer location = mUniforms.get(name);
+		return location != null ? location : -1;
+	}
+
+	public void use() {
+		checkContext();
+		RenderBackend gl = RenderContext.get();
+		gl.glUseProgram(mProgram);
+	}
+}
@@ -0,0 +1,89 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.HashMap;
+
+import android.opengl.GLES20;
+import android.util.Log;
+
+// Compiles and links each distinct vertex/fragment shader pair only once.
+// Every object that asks for the same sources gets the same ShaderProgram.
+public class ShaderRegistry {
+
+	private static final HashMap<String, ShaderProgram> sPrograms = new HashMap<String, ShaderProgram>();
+
+	public static ShaderProgram getProgram(String vertexShaderCode, String fragmentShaderCode) {
+		String key = vertexShaderCode + '\u0000' + fragmentShaderCode;
+
+		ShaderProgram program = sPrograms.get(key);
+		if (program == null) {
+			program = new ShaderProgram(link(vertexShaderCode, fragmentShaderCode),
+					vertexShaderCode, fragmentShaderCode);
+			sPrograms.put(key, program);
+		}
+		return program;
+	}
+
+	public static void clear() {
+		sPrograms.clear();
+	}
+
+	public static int size() {
+		return sPrograms.size();
+	}
+
+	public static int checkShaderError(int shader) {
+		RenderBackend gl = RenderContext.get();
+		final int[] compileStatus = new int[1];
+
+		gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
+
+		if (compileStatus[0] == 0) {
+			Log.e("GLES Error:", "Error compiling shader: " + gl.glGetShaderInfoLog(shader));
+			gl.glDeleteShader(shader);
+			return 1;
+		}
+		return 0;
+	}
+
+	public static int checkProgramError(int program) {
+		RenderBackend gl = RenderContext.get();
+		final int[] linkStatus = new int[1];
+
+		gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+
+		if (linkStatus[0] == 0) {
+			Log.e("GLES Error:", "Error linking program: " + gl.glGetProgramInfoLog(program));
+			gl.glDeleteProgram(program);
+			return 1;
+		}
+		return 0;
+	}
+
+	// Returns the linked program handle, or 0 if compiling or linking failed.
+	static int link(String vertexShaderCode, String fragmentShaderCode) {
+		RenderBackend gl = RenderContext.get();
+		int vertexShader = MyGL20Renderer.loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
+		if (checkShaderError(vertexShader) != 0)
+			return 0;
+
+		int fragmentShader = MyGL20Renderer.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
+		if (checkShaderError(fragmentShader) != 0) {
+			gl.glDeleteShader(vertexShader);
+			return 0;
+		}
+
+		int program = gl.glCreateProgram();				// create empty OpenGL ES program
+		gl.glAttachShader(program, vertexShader);		// add the vertex shader to program
+		gl.glAttachShader(program, fragmentShader);		// add the fragment shader to program
+		gl.glLinkProgram(program);						// creates OpenGL ES program executables
+
+		// the shaders are only needed until the program is linked
+		gl.glDeleteShader(vertexShader);
+		gl.glDeleteShader(fragmentShader);
+
+		if (checkProgramError(program) != 0)
+			return 0;
+
+		return program;
+	}
+}
@@ -1,292 +1,213 @@
 package graphics.bradley.androidglviewer;
 
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.FloatBuffer;
-import java.nio.IntBuffer;
-import java.nio.ShortBuffer;
-
-import android.opengl.GLES20;
-import android.util.Log;
-
 // square shape to be drawn in the context of an OpenGL ES view
-public class Sphere {
+public class Sphere implements Drawable, LevelOfDetail {
 
-	private final String vertexShaderCode =
-			"uniform mat4 uMVPMatrix, uMVMatrix, uNormalMat;" +
-			"attribute vec4 vPosition;" +
-			"attribute vec4 vColor;" +
-			"attribute vec3 vNormal;" + 
-			"varying vec4 varyingColor; varying vec3 varyingNormal; " +
-			"varying vec3 varyingPos; " + 
-			"void main() {" +
-			"	varyingColor = vColor;" +
-			"	vec4 t = uNormalMat*vec4(vNormal, 0.0);" +
-			"   varyingNormal.xyz = t.xyz; "+
-			"   t = uMVMatrix*vPosition;"+ 
-			"   varyingPos.xyz = t.xyz; "+
-			"   gl_Position =    uMVPMatrix  * vPosition ;" +
-			"}";
-	// fragment code to perform diffuse + specular shading; 
-	private final String fragmentShaderCode =
-			"precision mediump float;" +
-			"varying vec4 varyingColor; varying vec3 varyingNormal;" +
-			"varying vec3 varyingPos;" +		
-			"uniform vec3 lightDir; " +
-			"void main() {" +
-			"	float Ns = 100.0;  "+ // for shiness; 
-			"   float kd = 0.9, ks = 0.9; " +
-			"   vec4 light = vec4(1.0, 1.0, 1.0, 1.0); " +
-			"   vec4 lightS = vec4(1.0, 1.0, 1.0, 1.0); " + // the specular highlight is redish
-			"   vec3 Nn = normalize(varyingNormal); " +
-			"   vec3 Ln = normalize(lightDir); " +
-			"   vec4 diffuse = kd* light * max(dot(Nn, Ln), 0.0); " +
-			"   vec3 Ref = reflect(Nn, Ln); " + // get the reflectance vector; 
-			"   float dotV = max(dot(Ref, normalize(varyingPos)), 0.0); " + // since we are in eye space, the eye position is at 0, 0, 0, so the view direction is simply (varyingPos- (0, 0, 0))
-			"   vec4 specular = lightS*ks*pow(dotV, Ns); " +
-			"	gl_FragColor = varyingColor*diffuse + specular; " +
-			//"   gl_FragColor = varyingColor*diffuse + specular; " +
-			"}";
+	// Level of detail chain, finest first. Each level halves the
+	// tessellation of the one before it.
+	private final Mesh[] mLevels;
+	// smallest projected radius (pixels) at which each level is still needed
+	private final float[] mMinPixels;
+	private int mLevel;
 	
-	private FloatBuffer vertexBuffer;
-	private FloatBuffer colorBuffer; 
-	private FloatBuffer normalBuffer; 
-	private ShortBuffer drawListBuffer;
+	// for the lighting tier of Lighting.getVersion() mLightingVersion
+	private ShaderProgram mProgram;
+	private int mLightingVersion = -1;
 	
-	private final int mProgram;
-	private int mPositionHandle;
-	private int mColorHandle, mNormalHandle;
-	private int mMVPMatrixHandle, mNormalMatHandle;
+	private int mMVPMatrixHandle, mNormalMatHandle, mMVMatrixHandle;
+	private int mLightDirHandle;
 	
 	// number of coordinates per vertex in this array
 	static final int COORDS_PER_VERTEX = 3;
 	
-	// vertex coords array for glDrawArrays() =====================================
-	// A cube has 6 sides and each side has 2 triangles, therefore, a cube consists
-	// of 36 vertices (6 sides * 2 tris * 3 vertices = 36 vertices). And, each
-	// vertex is 3 components (x,y,z) of floats, therefore, the size of vertex
-	// array is 108 floats (36 * 3 = 108).
-	private float [] vertices; 
-
-	// normal array
-	private float [] normals; 
-	// color array
-	static float [] colors; 
+	// the balls are blue
+	static final Material MATERIAL_BALL = new Material(0, 0, 1);
+	
+	private final Material mMaterial;
+	private int mColorHandle;
+	// the program, and its link, the handles above were looked up in
+	private ShaderProgram mHandlesProgram;
+	private int mLinkCount;
 	
+	// coarsest tessellation built for the LOD chain
+	static final int MIN_LONGS = 8;
 	
-	private short drawOrder[] = { 0, 1, 2, 0, 2, 3 };	// order to draw vertices
+	// a level is good enough while its facets stay within this many pixels
+	// of the true silhouette
+	static final float MAX_ERROR_PIXELS = 0.5f;
 	
-	private int vertexCount; 
-	private final int vertexStride = COORDS_PER_VERTEX * 4;	// bytes per vertex
+	// fraction a threshold must be crossed by before switching, so a ball
+	// sitting right at a threshold does not pop back and forth
+	static final float HYSTERESIS = 0.15f;
 	
 	// set the light direction in the eye coordinate; 
 	float lightDir[] = {0.0f, 1.0f, 8.0f}; 
 	
-	public static int checkShaderError(int shader) {
-		
-
-		final int[] compileStatus = new int[1];
-
-                GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compileStatus, 0);
-
-                if (compileStatus[0] == 0) {
-
-                        Log.e("GLES Error:", "Error compiling shader: " + GLES20.glGetShaderInfoLog(shader));
-                        GLES20.glDeleteShader(shader);
-                        return 1; 
-
-                }
-                return 0; 
+	// Builds the sphere's mesh right away, on the calling thread. See
+	// SphereBuilder for the layout of the vertex grid.
+	static Mesh createSphere(double r, int lats, int longs) {
+		return createSphere(r, lats, longs, true);
 	}
 	
+	// optimize as for SphereBuilder
+	static Mesh createSphere(double r, int lats, int longs, boolean optimize) {
+		SphereBuilder builder = new SphereBuilder(r, lats, longs, optimize);
+		for (int part = 0; part < builder.getPartCount(); part++)
+			builder.buildPart(part);
+		
+		Mesh mesh = new Mesh(builder.getLayout(), false);
+		builder.apply(mesh);
+		return mesh;
+	}
+	
+	// Spheres of the same size and tessellation share one mesh. It is built
+	// in the background and has no vertices until MeshLoader.poll() has
+	// picked it up.
+	public static Mesh getMesh(double r, int lats, int longs) {
+		String key = "sphere " + r + " " + lats + "x" + longs;
+		Mesh mesh = MeshCache.get(key);
+		if (mesh == null) {
+			mesh = new Mesh(SphereBuilder.layoutFor(r), false);
+			mesh.setBounds(SphereBuilder.boundsOf(r));
+			MeshLoader.submit(mesh, new SphereBuilder(r, lats, longs));
+			MeshCache.put(key, mesh);
+		}
+		return mesh;
+	}
 	
-	private void createSphere(double r, int lats, int longs) {
-		        int i, j;
-		        
-		        
-		        // there are lats*longs number of quads, each requires two triangles with six vertices, each vertex takes 3 floats; 
-		        vertices = new float[lats*longs*6*3];
-		        normals = new float[lats*longs*6*3]; 
-		        colors = new float[lats*longs*6*3]; 
-		        
-		        vertexCount = vertices.length / COORDS_PER_VERTEX;
-		        int triIndex = 0; 
-		        for(i = 0; i < lats; i++) {
-		            double lat0 = Math.PI * (-0.5 + (double) (i) / lats);
-		           double z0  = Math.sin(lat0);
-		           double zr0 =  Math.cos(lat0);
-		    
-		           double lat1 = Math.PI * (-0.5 + (double) (i+1) / lats);
-		           double z1 = Math.sin(lat1);
-		           double zr1 = Math.cos(lat1);
-		    
-		           
-		           //glBegin(GL_QUAD_STRIP);
-		           for(j = 0; j < longs; j++) {
-		               double lng = 2 * Math.PI * (double) (j - 1) / longs;
-		               double x = Math.cos(lng);
-		               double y = Math.sin(lng);
-		    
-		               
-		               lng = 2 * Math.PI * (double) (j) / longs;
-		               double x1 = Math.cos(lng);
-		               double y1 = Math.sin(lng);
-		               
-		               //glNormal3f(x * zr0, y * zr0, z0);
-		               //glVertex3f(x * zr0, y * zr0, z0);
-		               //glNormal3f(x * zr1, y * zr1, z1);
-		               //glVertex3f(x * zr1, y * zr1, z1);
-		               
-		               // the first triangle
-		               vertices[triIndex*9 + 0 ] = (float)(x * zr0);    vertices[triIndex*9 + 1 ] = (float)(y * zr0);   vertices[triIndex*9 + 2 ] = (float) z0;
-		               vertices[triIndex*9 + 3 ] = (float)(x * zr1);    vertices[triIndex*9 + 4 ] = (float)(y * zr1);   vertices[triIndex*9 + 5 ] = (float) z1;
-		               vertices[triIndex*9 + 6 ] = (float)(x1 * zr0);   vertices[triIndex*9 + 7 ] = (float)(y1 * zr0);  vertices[triIndex*9 + 8 ] = (float) z0;
-		               
-		               triIndex ++; 
-		               vertices[triIndex*9 + 0 ] = (float)(x1 * zr0);   vertices[triIndex*9 + 1 ] = (float)(y1 * zr0);  	vertices[triIndex*9 + 2 ] = (float) z0;
-		               vertices[triIndex*9 + 3 ] = (float)(x * zr1);    vertices[triIndex*9 + 4 ] = (float)(y * zr1);   	vertices[triIndex*9 + 5 ] = (float) z1;  
-		               vertices[triIndex*9 + 6 ] = (float)(x1 * zr1);    vertices[triIndex*9 + 7 ] = (float)(y1 * zr1); 	vertices[triIndex*9 + 8 ] = (float) z1;
-		               
-		               // in this case, the normal is the same as the vertex, plus the normalization; 
-		               for (int kk = -9; kk<9 ; kk++) {
-		            	   normals[triIndex*9 + kk] = vertices[triIndex*9+kk];
-		            	   if((triIndex*9 + kk)%3 == 2)
-		            		   colors[triIndex*9 + kk] = 1;
-		            	   else
-		            		   colors[triIndex*9 + kk] = 0;		            	   
-		               }		               
-		               triIndex ++; 
-		           }
-		           //glEnd();
-		       }
+	// levels in the LOD chain of a sphere with this many longitudes
+	static int levelCount(int longs) {
+		int count = 1;
+		while (longs >> count >= MIN_LONGS)
+			count++;
+		return count;
+	}
+	
+	// tessellation of the given level of the chain
+	static int levelLats(int lats, int level) {
+		return Math.max(2, (lats + (1 << level) - 1) >> level);
+	}
+	
+	static int levelLongs(int longs, int level) {
+		return longs >> level;
 	}
 	
 	public Sphere(double r, int lats, int longs) {
 		
-		// first create the sphere data; 
-		createSphere(r, lats, longs); 
-		
-		// initialize vertex byte buffer for shape coordinates
-		ByteBuffer bb = ByteBuffer.allocateDirect(
-				// (# of coordinate values * 4 bytes per float
-				vertices.length * 4);
-		// use the device hardware's native byte order
-		bb.order(ByteOrder.nativeOrder());
-		
-		// create a floating point buffer from the ByteBuffer
-		vertexBuffer = bb.asFloatBuffer();
-		// add the coordinates to the FloatBuffer
-		vertexBuffer.put(vertices);
-		// set the buffer to read the first coordinate
-		vertexBuffer.position(0);
-		
-		
-		ByteBuffer bb2 = ByteBuffer.allocateDirect(
-				// (# of color values * 4 bytes per float
-				colors.length * 4);
-		bb2.order(ByteOrder.nativeOrder());
-		
-		// create a floating point buffer from the ByteBuffer
-		colorBuffer = bb2.asFloatBuffer();
-		// add the coordinates to the FloatBuffer
-		colorBuffer.put(colors);
-		// set the buffer to read the first coordinate
-		colorBuffer.position(0);
-		
-		// normal buffer; 
-		ByteBuffer bb3 = ByteBuffer.allocateDirect(normals.length * 4);
-		bb3.order(ByteOrder.nativeOrder());
-				
-		normalBuffer = bb3.asFloatBuffer();
-		normalBuffer.put(normals);
-		normalBuffer.position(0);
-				
-		// initialize byte buffer for the draw list
-		ByteBuffer dlb = ByteBuffer.allocateDirect(
-				// (# of coordinate values * 2 bytes per short
-				drawOrder.length * 2);
-		dlb.order(ByteOrder.nativeOrder());
-		drawListBuffer = dlb.asShortBuffer();
-		drawListBuffer.put(drawOrder);
-		drawListBuffer.position(0);
+		// first find or create the sphere data for every level
+		int count = levelCount(longs);
+		
+		mLevels = new Mesh[count];
+		mMinPixels = new float[count];
+		// coarsest first, so something can be shown as early as possible
+		for (int i = count - 1; i >= 0; i--) {
+			int levelLats = levelLats(lats, i);
+			int levelLongs = levelLongs(longs, i);
+			mLevels[i] = getMesh(r, levelLats, levelLongs);
+			
+			// the coarser level takes over below the radius at which its
+			// chord error reaches MAX_ERROR_PIXELS
+			if (i > 0)
+				mMinPixels[i - 1] = maxRadiusFor(levelLongs);
+		}
+		mMinPixels[count - 1] = 0;
+		mMaterial = MATERIAL_BALL;
+		
+		// shared with every other Sphere; compiled and linked only once
+		resolveHandles(getProgram());
+	}
+	
+	// again whenever the program changes or is linked again
+	private void resolveHandles(ShaderProgram program) {
+		mLightDirHandle = program.getUniformLocation("lightDir");
+		mMVPMatrixHandle = program.getUniformLocation("uMVPMatrix");
+		mNormalMatHandle = program.getUniformLocation("uNormalMat");
+		mMVMatrixHandle = program.getUniformLocation("uMVMatrix");
+		mColorHandle = program.getAttribLocation("vColor");
+		mHandlesProgram = program;
+		mLinkCount = program.getLinkCount();
+	}
+	
+	
+	
+	// Largest projected radius at which a ring of 'longs' segments deviates
+	// from a true circle by at most MAX_ERROR_PIXELS.
+	private static float maxRadiusFor(int longs) {
+		return (float) (MAX_ERROR_PIXELS / (1 - Math.cos(Math.PI / longs)));
+	}
+	
+	public Bounds getBounds() {
+		return mLevels[0].getBounds();
+	}
+	
+	// the balls are shiny: a specular highlight in every tier that has one
+	public ShaderProgram getProgram() {
+		if (mLightingVersion != Lighting.getVersion()) {
+			mProgram = Lighting.getProgram(Lighting.getTier(), true);
+			mLightingVersion = Lighting.getVersion();
+		}
+		return mProgram;
+	}
+	
+	// The mesh of the currently selected level, or while that one is still
+	// being built, the closest level that is ready (coarser ones first).
+	public Mesh getMesh() {
+		for (int i = mLevel; i < mLevels.length; i++) {
+			if (mLevels[i].isReady())
+				return mLevels[i];
+		}
+		for (int i = mLevel - 1; i >= 0; i--) {
+			if (mLevels[i].isReady())
+				return mLevels[i];
+		}
+		return mLevels[mLevel];
+	}
+	
+	public void selectLevel(float pixelRadius) {
+		int level = mLevel;
 		
-		int vertexShader = MyGL20Renderer.loadShader(GLES20.GL_VERTEX_SHADER, vertexShaderCode);
-		checkShaderError(vertexShader);
-		int fragmentShader = MyGL20Renderer.loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentShaderCode);
-		checkShaderError(fragmentShader);
-		mProgram = GLES20.glCreateProgram();				// create empty OpenGL ES program
-		GLES20.glAttachShader(mProgram,  vertexShader);		// add the vertex shader to program
-		GLES20.glAttachShader(mProgram, fragmentShader);	// add the fragment shader to program
-		GLES20.glLinkProgram(mProgram);						// creates OpenGL ES program executables
+		// finer while clearly above the threshold of the next finer level
+		while (level > 0 && pixelRadius > mMinPixels[level - 1] * (1 + HYSTERESIS))
+			level--;
+		// coarser while clearly below the threshold of this level
+		while (level < mLevels.length - 1 && pixelRadius < mMinPixels[level] * (1 - HYSTERESIS))
+			level++;
 		
+		mLevel = level;
 	}
 	
+	public int getLevel() {
+		return mLevel;
+	}
 	
+	public int getLevelCount() {
+		return mLevels.length;
+	}
 	
 	public void draw(float[] mvpMatrix, float [] normalMat, float [] mvMat) {	// pass in the calculated transformation matrix
+		RenderBackend gl = RenderContext.get();
+		ShaderProgram program = getProgram();
+		if (program != mHandlesProgram || mLinkCount != program.getLinkCount())
+			resolveHandles(program);
 		
 		//
 		// Add program to OpenGL ES environment
-		GLES20.glUseProgram(mProgram);
+		program.use();
 		
 		//GLES20.glPolygonMode(GLES20.GL_FRONT,GLES20.GL_LINE);
 
-		// get handle to vertex shader's vPosition member
-		mPositionHandle = GLES20.glGetAttribLocation(mProgram, "vPosition");
-		
-		// Enable a handle to the triangle vertices
-		GLES20.glEnableVertexAttribArray(mPositionHandle);
-		
-		// Prepare the triangle coordinate data
-		GLES20.glVertexAttribPointer(mPositionHandle, COORDS_PER_VERTEX,
-									GLES20.GL_FLOAT, false,
-									vertexStride, vertexBuffer);
-		
-		// get handle to fragment shader's light direction
-		int light = GLES20.glGetUniformLocation(mProgram, "lightDir");
-		
-		// Set color for drawing the triangle
-		GLES20.glUniform3fv(light, 1, lightDir, 0);
-		
-		mColorHandle = GLES20.glGetAttribLocation(mProgram, "vColor");
+		// Set the light direction
+		gl.glUniform3fv(mLightDirHandle, 1, lightDir, 0);
 		
-		GLES20.glEnableVertexAttribArray(mColorHandle);
-				
-		// Prepare the color data
-		GLES20.glVertexAttribPointer(mColorHandle, COORDS_PER_VERTEX,
-											GLES20.GL_FLOAT, false,
-											vertexStride, colorBuffer);
-		
-		// now deal with normals
-		mNormalHandle = GLES20.glGetAttribLocation(mProgram, "vNormal");	
-		GLES20.glEnableVertexAttribArray(mNormalHandle);
-		// Prepare the normal data
-		GLES20.glVertexAttribPointer(mNormalHandle, COORDS_PER_VERTEX,
-															GLES20.GL_FLOAT, false,
-															vertexStride, normalBuffer);		
-		
-		// get handle to shape's transformation matrix
-		mMVPMatrixHandle = GLES20.glGetUniformLocation(mProgram, "uMVPMatrix");
-		mNormalMatHandle = GLES20.glGetUniformLocation(mProgram, "uNormalMat");
-		
-		int MVMatHandle = GLES20.glGetUniformLocation(mProgram, "uMVMatrix");
+		// the mesh has no color stream, so this constant is used for every vertex
+		gl.glVertexAttrib4fv(mColorHandle, mMaterial.color, 0);
 		
 		// Apply the projection and view transformation
-		GLES20.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
-		GLES20.glUniformMatrix4fv(mNormalMatHandle, 1, false, normalMat, 0);
-		GLES20.glUniformMatrix4fv(MVMatHandle, 1, false, mvMat, 0);
+		gl.glUniformMatrix4fv(mMVPMatrixHandle, 1, false, mvpMatrix, 0);
+		gl.glUniformMatrix4fv(mNormalMatHandle, 1, false, normalMat, 0);
+		gl.glUniformMatrix4fv(mMVMatrixHandle, 1, false, mvMat, 0);
 		
-		// Draw the triangle
-		GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, vertexCount);
-		//GLES20.glDrawArrays(GLES20.GL_POINTS, 0, vertexCount);
-		
-		//for (int i = 0; i< vertexCount; i+=3) 
-			//GLES20.glDrawArrays(GLES20.GL_LINE_LOOP, i, 3);
-		
-		// Disable vertex array
-		GLES20.glDisableVertexAttribArray(mPositionHandle);
-		GLES20.glDisableVertexAttribArray(mColorHandle);
-		GLES20.glDisableVertexAttribArray(mNormalHandle);
+		// Draw the triangles straight from the vertex buffer
+		getMesh().draw(program);
 	}
 }
-
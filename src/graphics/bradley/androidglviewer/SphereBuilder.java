@@ -0,0 +1,196 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+// Sphere geometry built in bands of latitude rows that can run in parallel
+// (see MeshLoader), or one after the other by Sphere.createSphere().
+//
+// A sphere of lats x longs quads shares a grid of (lats+1) * (longs+1)
+// vertices. Every quad is two triangles, so the index list holds
+// lats * longs * 6 entries. Row i is latitude i, column c is longitude c-1,
+// which reproduces the triangles of the old unindexed generator exactly. The
+// first and last columns sit on the same meridian and are kept apart (as are
+// the pole rows) so that every quad can be addressed the same way.
+//
+// Each band's triangles are reordered for the vertex cache (see
+// VertexCacheOptimizer). Numbered from the band's first vertex, every full
+// band has the same triangles, so that order is worked out once and reused.
+// The vertices stay in grid order, which already keeps fetches within a
+// band's few rows.
+public class SphereBuilder implements MeshLoader.Job {
+
+	// vertices per band; enough work per part to be worth a task
+	static final int BAND_VERTICES = 2048;
+
+	private final double mRadius;
+	private final int mLats;
+	private final int mColumns;
+	private final int mVertexCount;
+	private final int mRowsPerBand;
+	private final VertexLayout mLayout;
+	private final boolean mOptimize;
+
+	// optimized triangles of a full band, from its first vertex
+	private int[] mBandIndices;
+
+	// every row shares the same longitudes, so their sines and cosines are
+	// computed once rather than per vertex
+	private final double[] mCos;
+	private final double[] mSin;
+
+	// results; each band writes its own rows of these
+	private final ByteBuffer mVertexData;
+	private final short[] mShortIndices;
+	private final int[] mIntIndices;
+
+	public SphereBuilder(double r, int lats, int longs) {
+		this(r, lats, longs, true);
+	}
+
+	// without optimize the triangles stay in row order, e.g. to measure
+	// what the optimizer gains
+	SphereBuilder(double r, int lats, int longs, boolean optimize) {
+		mRadius = r;
+		mOptimize = optimize;
+		mLats = lats;
+		mColumns = longs + 1;
+		mVertexCount = (lats + 1) * mColumns;
+		mRowsPerBand = Math.max(1, BAND_VERTICES / mColumns);
+		mLayout = layoutFor(r);
+
+		mCos = new double[mColumns];
+		mSin = new double[mColumns];
+		for (int c = 0; c < mColumns; c++) {
+			double lng = 2 * Math.PI * (double) (c - 1) / longs;
+			mCos[c] = Math.cos(lng);
+			mSin[c] = Math.sin(lng);
+		}
+
+		mVertexData = ByteBuffer.allocateDirect(mVertexCount * mLayout.getStride());
+		// use the device hardware's native byte order
+		mVertexData.order(ByteOrder.nativeOrder());
+
+		// 16-bit indices whenever every vertex can be addressed with them
+		int indexCount = lats * longs * 6;
+		mShortIndices = mVertexCount <= 65536 ? new short[indexCount] : null;
+		mIntIndices = mVertexCount <= 65536 ? null : new int[indexCount];
+	}
+
+	// positions only fit the fixed-point layout on a unit sphere
+	static VertexLayout layoutFor(double r) {
+		return r <= 1 ? VertexLayout.UNIT_POSITIONS_UNCOLORED : VertexLayout.FLOAT_POSITIONS_UNCOLORED;
+	}
+
+	// known before any vertex exists, so culling and LOD work while the
+	// mesh is still being built
+	static Bounds boundsOf(double r) {
+		Bounds bounds = new Bounds();
+		bounds.setBox((float) -r, (float) -r, (float) -r, (float) r, (float) r, (float) r);
+		bounds.radius = (float) r;
+		return bounds;
+	}
+
+	public VertexLayout getLayout() {
+		return mLayout;
+	}
+
+	public int getPartCount() {
+		return (mLats + mRowsPerBand) / mRowsPerBand;
+	}
+
+	// Vertex rows first..last of the band, and the quads from each of those
+	// rows to the next.
+	public void buildPart(int part) {
+		int first = part * mRowsPerBand;
+		int last = Math.min(first + mRowsPerBand, mLats + 1) - 1;
+		int rows = last - first + 1;
+
+		float[] vertices = new float[rows * mColumns * 3];
+		float[] normals = new float[rows * mColumns * 3];
+		for (int i = first; i <= last; i++) {
+			double lat = Math.PI * (-0.5 + (double) (i) / mLats);
+			double z  = Math.sin(lat);
+			double zr =  Math.cos(lat);
+
+			for (int c = 0; c < mColumns; c++) {
+				int v = ((i - first) * mColumns + c) * 3;
+
+				// in this case, the normal is the same as the vertex on a unit sphere
+				normals[v + 0] = (float)(mCos[c] * zr);
+				normals[v + 1] = (float)(mSin[c] * zr);
+				normals[v + 2] = (float) z;
+
+				vertices[v + 0] = (float)(mRadius * normals[v + 0]);
+				vertices[v + 1] = (float)(mRadius * normals[v + 1]);
+				vertices[v + 2] = (float)(mRadius * normals[v + 2]);
+			}
+		}
+		mLayout.pack(mVertexData, first * mColumns, rows * mColumns, vertices, normals, null);
+
+		// the quads from each row to the next, the last row excepted
+		int quadRows = Math.min(last, mLats - 1) - first + 1;
+		if (quadRows <= 0)
+			return;
+		int[] indices = quadRows == mRowsPerBand ? fullBandIndices() : bandIndices(quadRows);
+
+		int base = first * mColumns;
+		int offset = first * (mColumns - 1) * 6;
+		if (mShortIndices != null) {
+			for (int i = 0; i < indices.length; i++)
+				mShortIndices[offset + i] = (short) (indices[i] + base);
+		}
+		else {
+			for (int i = 0; i < indices.length; i++)
+				mIntIndices[offset + i] = indices[i] + base;
+		}
+	}
+
+	// the first band to get here works it out while the others wait
+	private synchronized int[] fullBandIndices() {
+		if (mBandIndices == null)
+			mBandIndices = bandIndices(mRowsPerBand);
+		return mBandIndices;
+	}
+
+	// Triangles of quadRows rows of quads, numbered from the band's first
+	// vertex. There are lats*longs number of quads in all, each requires
+	// two triangles.
+	private int[] bandIndices(int quadRows) {
+		int longs = mColumns - 1;
+		int[] indices = new int[quadRows * longs * 6];
+		int k = 0;
+		for (int i = 0; i < quadRows; i++) {
+			for (int c = 0; c < longs; c++) {
+				int v00 = i * mColumns + c;			// lat i,   long c-1
+				int v10 = (i + 1) * mColumns + c;	// lat i+1, long c-1
+				int v01 = v00 + 1;					// lat i,   long c
+				int v11 = v10 + 1;					// lat i+1, long c
+
+				// the first triangle, then the second
+				k = putTriangle(indices, k, v00, v10, v01);
+				k = putTriangle(indices, k, v01, v10, v11);
+			}
+		}
+
+		if (mOptimize)
+			VertexCacheOptimizer.optimize(indices, 0, k, (quadRows + 1) * mColumns);
+		return indices;
+	}
+
+	private static int putTriangle(int[] indices, int k, int a, int b, int c) {
+		indices[k] = a;
+		indices[k + 1] = b;
+		indices[k + 2] = c;
+		return k + 3;
+	}
+
+	public void apply(Mesh mesh) {
+		mesh.setVertices(mVertexData, mVertexCount);
+		if (mShortIndices != null)
+			mesh.setIndices(mShortIndices);
+		else
+			mesh.setIndices(mIntIndices);
+		mesh.setBounds(boundsOf(mRadius));
+	}
+}
@@ -0,0 +1,462 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.Buffer;
+import java.util.HashMap;
+
+import android.opengl.GLES20;
+
+// Sits in front of another backend and drops calls that would not change
+// any GL state: binding the program or buffer that is already bound,
+// re-enabling an enabled attribute array, pointing an attribute at the same
+// data again, or uploading a uniform or constant attribute value that is
+// already set. Uniform values are shadowed per program, since that is where
+// GL keeps them.
+//
+// Disabling an attribute array is deferred until the next draw call, so the
+// enable/disable pair every Mesh issues around its draw cancels out when
+// the next mesh uses the same attributes.
+//
+// Everything starts out unknown, and invalidate() must be called whenever
+// the EGL context is recreated or GL state is changed behind its back.
+public class StateCache implements RenderBackend {
+
+	static final int MAX_ATTRIBS = 16;
+	// uniform locations above this are passed through without shadowing
+	static final int MAX_UNIFORMS = 256;
+
+	private static final int UNKNOWN = -1;
+
+	// uniform values last uploaded to one program, by location
+	private static class ProgramState {
+		float[][] uniforms = new float[16][];
+	}
+
+	private final RenderBackend mGL;
+
+	private int mProgram;
+	private ProgramState mProgramState;
+	private final HashMap<Integer, ProgramState> mPrograms = new HashMap<Integer, ProgramState>();
+
+	private int mArrayBuffer, mElementBuffer;
+
+	// bit masks by attribute index: arrays whose state is known, those enabled
+	// in GL, and those to disable before the next draw
+	private int mKnownArrays, mEnabledArrays, mPendingDisable;
+
+	// per attribute: buffer, size, type, normalized, stride, offset
+	private final int[] mPointers = new int[MAX_ATTRIBS * 6];
+	private final float[] mConstants = new float[MAX_ATTRIBS * 4];
+	private final boolean[] mConstantKnown = new boolean[MAX_ATTRIBS];
+
+	// capabilities seen so far and whether they are enabled
+	private final int[] mCaps = new int[8];
+	private final boolean[] mCapEnabled = new boolean[8];
+	private int mCapCount;
+
+	private int mDepthFunc;
+	private final float[] mClearColor = new float[4];
+	private boolean mClearColorKnown;
+	private final int[] mViewport = new int[4];
+	private boolean mViewportKnown;
+
+	private int mFiltered;
+
+	public StateCache(RenderBackend backend) {
+		mGL = backend;
+		invalidate();
+	}
+
+	public RenderBackend getBackend() {
+		return mGL;
+	}
+
+	// Forgets all shadowed state, so the next call of each kind goes through.
+	public void invalidate() {
+		mProgram = UNKNOWN;
+		mProgramState = null;
+		mPrograms.clear();
+		mArrayBuffer = mElementBuffer = UNKNOWN;
+		mKnownArrays = mEnabledArrays = mPendingDisable = 0;
+		for (int i = 0; i < MAX_ATTRIBS; i++) {
+			mPointers[i * 6] = UNKNOWN;
+			mConstantKnown[i] = false;
+		}
+		mCapCount = 0;
+		mDepthFunc = UNKNOWN;
+		mClearColorKnown = false;
+		mViewportKnown = false;
+	}
+
+	// calls dropped since the last resetFilteredCalls()
+	public int getFilteredCalls() {
+		return mFiltered;
+	}
+
+	public void resetFilteredCalls() {
+		mFiltered = 0;
+	}
+
+	// Issues the attribute array disables deferred so far.
+	private void flushArrays() {
+		if (mPendingDisable == 0)
+			return;
+		for (int i = 0; i < MAX_ATTRIBS; i++) {
+			if ((mPendingDisable & (1 << i)) != 0)
+				mGL.glDisableVertexAttribArray(i);
+		}
+		mEnabledArrays &= ~mPendingDisable;
+		mPendingDisable = 0;
+	}
+
+	private int findCap(int cap) {
+		for (int i = 0; i < mCapCount; i++) {
+			if (mCaps[i] == cap)
+				return i;
+		}
+		return -1;
+	}
+
+	private boolean capChanged(int cap, boolean enabled) {
+		int i = findCap(cap);
+		if (i >= 0) {
+			if (mCapEnabled[i] == enabled)
+				return false;
+			mCapEnabled[i] = enabled;
+		}
+		else if (mCapCount < mCaps.length) {
+			mCaps[mCapCount] = cap;
+			mCapEnabled[mCapCount] = enabled;
+			mCapCount++;
+		}
+		return true;
+	}
+
+	// Whether n floats at v[offset] differ from what the current program has
+	// at location; remembers them if so.
+	private boolean uniformChanged(int location, float[] v, int offset, int n) {
+		if (mProgramState == null || location < 0 || location >= MAX_UNIFORMS)
+			return true;
+
+		float[][] uniforms = mProgramState.uniforms;
+		if (location >= uniforms.length) {
+			float[][] grown = new float[Math.min(MAX_UNIFORMS, Math.max(location + 1, uniforms.length * 2))][];
+			System.arraycopy(uniforms, 0, grown, 0, uniforms.length);
+			mProgramState.uniforms = uniforms = grown;
+		}
+
+		float[] last = uniforms[location];
+		if (last == null || last.length != n) {
+			last = uniforms[location] = new float[n];
+		}
+		else {
+			boolean same = true;
+			for (int i = 0; i < n; i++) {
+				if (last[i] != v[offset + i]) {
+					same = false;
+					break;
+				}
+			}
+			if (same)
+				return false;
+		}
+		System.arraycopy(v, offset, last, 0, n);
+		return true;
+	}
+
+	public void glClearColor(float red, float green, float blue, float alpha) {
+		if (mClearColorKnown && mClearColor[0] == red && mClearColor[1] == green
+				&& mClearColor[2] == blue && mClearColor[3] == alpha) {
+			mFiltered++;
+			return;
+		}
+		mClearColor[0] = red;
+		mClearColor[1] = green;
+		mClearColor[2] = blue;
+		mClearColor[3] = alpha;
+		mClearColorKnown = true;
+		mGL.glClearColor(red, green, blue, alpha);
+	}
+
+	public void glClear(int mask) {
+		mGL.glClear(mask);
+	}
+
+	public void glViewport(int x, int y, int width, int height) {
+		if (mViewportKnown && mViewport[0] == x && mViewport[1] == y
+				&& mViewport[2] == width && mViewport[3] == height) {
+			mFiltered++;
+			return;
+		}
+		mViewport[0] = x;
+		mViewport[1] = y;
+		mViewport[2] = width;
+		mViewport[3] = height;
+		mViewportKnown = true;
+		mGL.glViewport(x, y, width, height);
+	}
+
+	public void glEnable(int cap) {
+		if (!capChanged(cap, true)) {
+			mFiltered++;
+			return;
+		}
+		mGL.glEnable(cap);
+	}
+
+	public void glDisable(int cap) {
+		if (!capChanged(cap, false)) {
+			mFiltered++;
+			return;
+		}
+		mGL.glDisable(cap);
+	}
+
+	public void glDepthFunc(int func) {
+		if (func == mDepthFunc) {
+			mFiltered++;
+			return;
+		}
+		mDepthFunc = func;
+		mGL.glDepthFunc(func);
+	}
+
+	public void glFinish() {
+		mGL.glFinish();
+	}
+
+	public int glCreateShader(int type) {
+		return mGL.glCreateShader(type);
+	}
+
+	public void glShaderSource(int shader, String source) {
+		mGL.glShaderSource(shader, source);
+	}
+
+	public void glCompileShader(int shader) {
+		mGL.glCompileShader(shader);
+	}
+
+	public void glGetShaderiv(int shader, int pname, int[] params, int offset) {
+		mGL.glGetShaderiv(shader, pname, params, offset);
+	}
+
+	public String glGetShaderInfoLog(int shader) {
+		return mGL.glGetShaderInfoLog(shader);
+	}
+
+	public void glDeleteShader(int shader) {
+		mGL.glDeleteShader(shader);
+	}
+
+	public int glCreateProgram() {
+		return mGL.glCreateProgram();
+	}
+
+	public void glAttachShader(int program, int shader) {
+		mGL.glAttachShader(program, shader);
+	}
+
+	public void glLinkProgram(int program) {
+		// linking resets every uniform to its default
+		forgetProgram(program);
+		mGL.glLinkProgram(program);
+	}
+
+	public void glGetProgramiv(int program, int pname, int[] params, int offset) {
+		mGL.glGetProgramiv(program, pname, params, offset);
+	}
+
+	public String glGetProgramInfoLog(int program) {
+		return mGL.glGetProgramInfoLog(program);
+	}
+
+	public void glDeleteProgram(int program) {
+		forgetProgram(program);
+		mGL.glDeleteProgram(program);
+	}
+
+	private void forgetProgram(int program) {
+		mPrograms.remove(program);
+		if (program == mProgram) {
+			// the next glUseProgram goes through and starts a fresh shadow
+			mProgram = UNKNOWN;
+			mProgramState = null;
+		}
+	}
+
+	public int glGetAttribLocation(int program, String name) {
+		return mGL.glGetAttribLocation(program, name);
+	}
+
+	public int glGetUniformLocation(int program, String name) {
+		return mGL.glGetUniformLocation(program, name);
+	}
+
+	public void glUseProgram(int program) {
+		if (program == mProgram) {
+			mFiltered++;
+			return;
+		}
+		mProgram = program;
+		mProgramState = mPrograms.get(program);
+		if (mProgramState == null && program != 0) {
+			mProgramState = new ProgramState();
+			mPrograms.put(program, mProgramState);
+		}
+		mGL.glUseProgram(program);
+	}
+
+	public void glUniform3fv(int location, int count, float[] v, int offset) {
+		if (!uniformChanged(location, v, offset, count * 3)) {
+			mFiltered++;
+			return;
+		}
+		mGL.glUniform3fv(location, count, v, offset);
+	}
+
+	public void glUniformMatrix4fv(int location, int count, boolean transpose, float[] value, int offset) {
+		// ES 2.0 only allows transpose == false, so it never has to be compared
+		if (!uniformChanged(location, value, offset, count * 16)) {
+			mFiltered++;
+			return;
+		}
+		mGL.glUniformMatrix4fv(location, count, transpose, value, offset);
+	}
+
+	public void glVertexAttrib4fv(int index, float[] values, int offset) {
+		if (index < 0 || index >= MAX_ATTRIBS) {
+			mGL.glVertexAttrib4fv(index, values, offset);
+			return;
+		}
+		int o = index * 4;
+		if (mConstantKnown[index] && mConstants[o] == values[offset]
+				&& mConstants[o + 1] == values[offset + 1]
+				&& mConstants[o + 2] == values[offset + 2]
+				&& mConstants[o + 3] == values[offset + 3]) {
+			mFiltered++;
+			return;
+		}
+		System.arraycopy(values, offset, mConstants, o, 4);
+		mConstantKnown[index] = true;
+		mGL.glVertexAttrib4fv(index, values, offset);
+	}
+
+	public void glGenBuffers(int n, int[] buffers, int offset) {
+		mGL.glGenBuffers(n, buffers, offset);
+	}
+
+	public void glDeleteBuffers(int n, int[] buffers, int offset) {
+		// GL unbinds deleted buffers; attribute pointers into them are stale
+		for (int i = 0; i < n; i++) {
+			int buffer = buffers[offset + i];
+			if (buffer == 0)
+				continue;
+			if (buffer == mArrayBuffer)
+				mArrayBuffer = 0;
+			if (buffer == mElementBuffer)
+				mElementBuffer = 0;
+			for (int a = 0; a < MAX_ATTRIBS; a++) {
+				if (mPointers[a * 6] == buffer)
+					mPointers[a * 6] = UNKNOWN;
+			}
+		}
+		mGL.glDeleteBuffers(n, buffers, offset);
+	}
+
+	public void glBindBuffer(int target, int buffer) {
+		if (target == GLES20.GL_ARRAY_BUFFER) {
+			if (buffer == mArrayBuffer) {
+				mFiltered++;
+				return;
+			}
+			mArrayBuffer = buffer;
+		}
+		else if (target == GLES20.GL_ELEMENT_ARRAY_BUFFER) {
+			if (buffer == mElementBuffer) {
+				mFiltered++;
+				return;
+			}
+			mElementBuffer = buffer;
+		}
+		mGL.glBindBuffer(target, buffer);
+	}
+
+	public void glBufferData(int target, int size, Buffer data, int usage) {
+		mGL.glBufferData(target, size, data, usage);
+	}
+
+	public void glBufferSubData(int target, int offset, int size, Buffer data) {
+		mGL.glBufferSubData(target, offset, size, data);
+	}
+
+	public void glEnableVertexAttribArray(int index) {
+		if (index < 0 || index >= MAX_ATTRIBS) {
+			mGL.glEnableVertexAttribArray(index);
+			return;
+		}
+		int bit = 1 << index;
+		if ((mPendingDisable & bit) != 0) {
+			// still enabled in GL; just cancel the pending disable
+			mPendingDisable &= ~bit;
+			mFiltered++;
+			return;
+		}
+		if ((mKnownArrays & mEnabledArrays & bit) != 0) {
+			mFiltered++;
+			return;
+		}
+		mKnownArrays |= bit;
+		mEnabledArrays |= bit;
+		mGL.glEnableVertexAttribArray(index);
+	}
+
+	public void glDisableVertexAttribArray(int index) {
+		if (index < 0 || index >= MAX_ATTRIBS) {
+			mGL.glDisableVertexAttribArray(index);
+			return;
+		}
+		int bit = 1 << index;
+		if ((mKnownArrays & bit) == 0) {
+			mKnownArrays |= bit;
+			mEnabledArrays &= ~bit;
+			mGL.glDisableVertexAttribArray(index);
+			return;
+		}
+		if ((mEnabledArrays & bit) == 0 || (mPendingDisable & bit) != 0) {
+			mFiltered++;
+			return;
+		}
+		mPendingDisable |= bit;
+	}
+
+	public void glVertexAttribPointer(int index, int size, int type, boolean normalized, int stride, int offset) {
+		if (index < 0 || index >= MAX_ATTRIBS || mArrayBuffer == UNKNOWN) {
+			mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+			return;
+		}
+		int o = index * 6;
+		int norm = normalized ? 1 : 0;
+		if (mPointers[o] == mArrayBuffer && mPointers[o + 1] == size && mPointers[o + 2] == type
+				&& mPointers[o + 3] == norm && mPointers[o + 4] == stride && mPointers[o + 5] == offset) {
+			mFiltered++;
+			return;
+		}
+		mPointers[o] = mArrayBuffer;
+		mPointers[o + 1] = size;
+		mPointers[o + 2] = type;
+		mPointers[o + 3] = norm;
+		mPointers[o + 4] = stride;
+		mPointers[o + 5] = offset;
+		mGL.glVertexAttribPointer(index, size, type, normalized, stride, offset);
+	}
+
+	public void glDrawArrays(int mode, int first, int count) {
+		flushArrays();
+		mGL.glDrawArrays(mode, first, count);
+	}
+
+	public void glDrawElements(int mode, int count, int type, int offset) {
+		flushArrays();
+		mGL.glDrawElements(mode, count, type, offset);
+	}
+}
@@ -0,0 +1,136 @@
+package graphics.bradley.androidglviewer;
+
+import java.util.ArrayList;
+
+// Merges geometry that never moves into one mesh per material at load time.
+// Each piece is pre-transformed by its model matrix (normals by the inverse
+// transpose of its upper 3x3), so the whole group is drawn with a single
+// call using only the camera matrices.
+public class StaticBatch {
+
+	private static class Group {
+		final Material material;
+		float[] positions = new float[256];
+		float[] normals = new float[256];
+		int[] indices = new int[256];
+		int vertexCount;
+		int indexCount;
+
+		Group(Material material) {
+			this.material = material;
+		}
+	}
+
+	private final ArrayList<Group> mGroups = new ArrayList<Group>();
+
+	// scratch for the normal matrix of the piece being added
+	private final float[] mNormalMatrix = new float[16];
+
+	// positions and normals hold 3 floats per vertex; indices may be null for
+	// unindexed triangle lists. model is a column-major 4x4 matrix.
+	public void add(float[] positions, float[] normals, int[] indices, float[] model, Material material) {
+		Group group = findGroup(material);
+
+		int vertexCount = positions.length / 3;
+		int base = group.vertexCount;
+		ensureVertexCapacity(group, base + vertexCount);
+
+		AffineMath.normalMatrix(mNormalMatrix, 0, model, 0);
+		float[] n = mNormalMatrix;
+
+		for (int v = 0; v < vertexCount; v++) {
+			float x = positions[v * 3], y = positions[v * 3 + 1], z = positions[v * 3 + 2];
+			int o = (base + v) * 3;
+			group.positions[o]     = model[0] * x + model[4] * y + model[8]  * z + model[12];
+			group.positions[o + 1] = model[1] * x + model[5] * y + model[9]  * z + model[13];
+			group.positions[o + 2] = model[2] * x + model[6] * y + model[10] * z + model[14];
+
+			float nx = normals[v * 3], ny = normals[v * 3 + 1], nz = normals[v * 3 + 2];
+			float tx = n[0] * nx + n[4] * ny + n[8] * nz;
+			float ty = n[1] * nx + n[5] * ny + n[9] * nz;
+			float tz = n[2] * nx + n[6] * ny + n[10] * nz;
+			float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+			if (length > 0) {
+				tx /= length;
+				ty /= length;
+				tz /= length;
+			}
+			group.normals[o] = tx;
+			group.normals[o + 1] = ty;
+			group.normals[o + 2] = tz;
+		}
+
+		int indexCount = indices != null ? indices.length : vertexCount;
+		ensureIndexCapacity(group, group.indexCount + indexCount);
+		for (int i = 0; i < indexCount; i++)
+			group.indices[group.indexCount + i] = base + (indices != null ? indices[i] : i);
+
+		group.vertexCount += vertexCount;
+		group.indexCount += indexCount;
+	}
+
+	private Group findGroup(Material material) {
+		for (int i = 0; i < mGroups.size(); i++) {
+			if (mGroups.get(i).material.sameAs(material))
+				return mGroups.get(i);
+		}
+		Group group = new Group(material);
+		mGroups.add(group);
+		return group;
+	}
+
+	private static void ensureVertexCapacity(Group group, int vertexCount) {
+		if (group.positions.length >= vertexCount * 3)
+			return;
+		int size = Math.max(vertexCount * 3, group.positions.length * 2);
+		float[] positions = new float[size];
+		float[] normals = new float[size];
+		System.arraycopy(group.positions, 0, positions, 0, group.vertexCount * 3);
+		System.arraycopy(group.normals, 0, normals, 0, group.vertexCount * 3);
+		group.positions = positions;
+		group.normals = normals;
+	}
+
+	private static void ensureIndexCapacity(Group group, int indexCount) {
+		if (group.indices.length >= indexCount)
+			return;
+		int[] indices = new int[Math.max(indexCount, group.indices.length * 2)];
+		System.arraycopy(group.indices, 0, indices, 0, group.indexCount);
+		group.indices = indices;
+	}
+
+	public int getGroupCount() {
+		return mGroups.size();
+	}
+
+	public Material getMaterial(int group) {
+		return mGroups.get(group).material;
+	}
+
+	// Uploads one merged mesh for the given material group.
+	public Mesh buildMesh(int index) {
+		Group group = mGroups.get(index);
+
+		float[] positions = new float[group.vertexCount * 3];
+		float[] normals = new float[group.vertexCount * 3];
+		System.arraycopy(group.positions, 0, positions, 0, positions.length);
+		System.arraycopy(group.normals, 0, normals, 0, normals.length);
+
+		// the pieces are no longer inside the unit cube once transformed
+		Mesh mesh = new Mesh(VertexLayout.FLOAT_POSITIONS_UNCOLORED, false);
+		mesh.setVertices(positions, normals, null);
+
+		if (group.vertexCount <= 65536) {
+			short[] indices = new short[group.indexCount];
+			for (int i = 0; i < indices.length; i++)
+				indices[i] = (short) group.indices[i];
+			mesh.setIndices(indices);
+		}
+		else {
+			int[] indices = new int[group.indexCount];
+			System.arraycopy(group.indices, 0, indices, 0, indices.length);
+			mesh.setIndices(indices);
+		}
+		return mesh;
+	}
+}
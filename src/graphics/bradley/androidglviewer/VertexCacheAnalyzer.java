@@ -0,0 +1,112 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import android.opengl.GLES20;
+
+// Measures how well an index list uses a post-transform vertex cache of the
+// given size, by running it through a FIFO cache (as most GPUs have) or an
+// LRU one. Two numbers come out:
+//
+//   ACMR, average cache miss ratio: vertices transformed per triangle. 3 is
+//   no reuse at all; about 0.5 is the best a large regular mesh can do.
+//   ATVR, average transform to vertex ratio: vertices transformed per
+//   vertex in the mesh. 1 means every vertex is transformed only once.
+public class VertexCacheAnalyzer {
+
+	private final int mCacheSize;
+	private final boolean mFifo;
+
+	// the cache, most recent entry first for LRU, oldest first for FIFO
+	private final int[] mCache;
+
+	private long mTransforms;
+	private long mTriangles;
+	private long mVertices;
+
+	public VertexCacheAnalyzer(int cacheSize, boolean fifo) {
+		mCacheSize = cacheSize;
+		mFifo = fifo;
+		mCache = new int[cacheSize];
+	}
+
+	// Adds the triangles of the mesh to the totals, as one draw call.
+	public void analyze(Mesh mesh) {
+		int count = mesh.getIndexCount();
+		ByteBuffer bb = ByteBuffer.allocate(count * (mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT ? 2 : 4));
+		bb.order(ByteOrder.nativeOrder());
+		mesh.getIndices(bb);
+		int[] indices = new int[count];
+		for (int i = 0; i < count; i++)
+			indices[i] = mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT ? bb.getShort(i * 2) & 0xffff : bb.getInt(i * 4);
+		analyze(indices, count, mesh.getVertexCount());
+	}
+
+	// Adds count indices, as one draw call: the cache starts out empty.
+	public void analyze(int[] indices, int count, int vertexCount) {
+		int cached = 0;
+		for (int i = 0; i < count; i++) {
+			int v = indices[i];
+			int slot = -1;
+			for (int j = 0; j < cached; j++) {
+				if (mCache[j] == v) {
+					slot = j;
+					break;
+				}
+			}
+
+			if (slot >= 0) {
+				// a hit only moves the entry of an LRU cache
+				if (!mFifo) {
+					System.arraycopy(mCache, 0, mCache, 1, slot);
+					mCache[0] = v;
+				}
+				continue;
+			}
+
+			mTransforms++;
+			if (mFifo) {
+				// the oldest entry, at the front, makes way
+				if (cached == mCacheSize) {
+					System.arraycopy(mCache, 1, mCache, 0, cached - 1);
+					cached--;
+				}
+				mCache[cached++] = v;
+			}
+			else {
+				// the least recently used entry, at the back, falls out
+				if (cached < mCacheSize)
+					cached++;
+				System.arraycopy(mCache, 0, mCache, 1, cached - 1);
+				mCache[0] = v;
+			}
+		}
+		mTriangles += count / 3;
+		mVertices += vertexCount;
+	}
+
+	public void reset() {
+		mTransforms = mTriangles = mVertices = 0;
+	}
+
+	public long getTransforms() {
+		return mTransforms;
+	}
+
+	public float getACMR() {
+		return mTriangles > 0 ? (float) mTransforms / mTriangles : 0;
+	}
+
+	public float getATVR() {
+		return mVertices > 0 ? (float) mTransforms / mVertices : 0;
+	}
+
+	public int getCacheSize() {
+		return mCacheSize;
+	}
+
+	public boolean isFifo() {
+		return mFifo;
+	}
+}
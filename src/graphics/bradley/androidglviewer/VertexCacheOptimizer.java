@@ -0,0 +1,189 @@
+package graphics.bradley.androidglviewer;
+
+// Reorders triangles so the GPU's post-transform vertex cache hits as often
+// as possible, with Tom Forsyth's linear-speed greedy method: every vertex
+// is scored by its position in a simulated LRU cache and by how few
+// triangles it still has left, and the next triangle is the best-scoring
+// one around the cached vertices. The result does not depend on the real
+// cache size, so it suits whatever GPU the mesh ends up on.
+//
+// reorderVertices() then renumbers the vertices in the order the triangles
+// first use them, so vertex fetch walks through memory instead of jumping
+// about.
+public class VertexCacheOptimizer {
+
+	// the simulated cache; larger than any real one, which is harmless
+	static final int CACHE_SIZE = 32;
+
+	private static final float CACHE_DECAY_POWER = 1.5f;
+	private static final float LAST_TRIANGLE_SCORE = 0.75f;
+	private static final float VALENCE_BOOST_SCALE = 2.0f;
+	private static final float VALENCE_BOOST_POWER = 0.5f;
+
+	// scores by cache position (the last entry is for not cached) and by
+	// the number of triangles left
+	private static final float[] CACHE_SCORES = new float[CACHE_SIZE + 1];
+	private static final float[] VALENCE_SCORES = new float[64];
+	static {
+		for (int i = 0; i < CACHE_SIZE; i++) {
+			// the three vertices of the triangle just added score the same,
+			// so that it does not matter which way round it was
+			if (i < 3)
+				CACHE_SCORES[i] = LAST_TRIANGLE_SCORE;
+			else
+				CACHE_SCORES[i] = (float) Math.pow(1 - (i - 3) / (float) (CACHE_SIZE - 3), CACHE_DECAY_POWER);
+		}
+		for (int i = 1; i < VALENCE_SCORES.length; i++)
+			VALENCE_SCORES[i] = VALENCE_BOOST_SCALE * (float) Math.pow(i, -VALENCE_BOOST_POWER);
+	}
+
+	private static float score(int cachePosition, int valence) {
+		// nothing left to draw with it
+		if (valence == 0)
+			return -1;
+		float score = cachePosition < 0 ? 0 : CACHE_SCORES[cachePosition];
+		return score + (valence < VALENCE_SCORES.length ? VALENCE_SCORES[valence]
+				: VALENCE_BOOST_SCALE * (float) Math.pow(valence, -VALENCE_BOOST_POWER));
+	}
+
+	// Reorders the count / 3 triangles starting at indices[offset] in place.
+	// Every index must be below vertexCount.
+	public static void optimize(int[] indices, int offset, int count, int vertexCount) {
+		int triangles = count / 3;
+		if (triangles < 2)
+			return;
+
+		// the triangles still to be drawn around each vertex:
+		// adjacency[first[v]] up to first[v] + valence[v]
+		int[] valence = new int[vertexCount];
+		for (int i = 0; i < triangles * 3; i++)
+			valence[indices[offset + i]]++;
+		int[] first = new int[vertexCount];
+		for (int v = 1; v < vertexCount; v++)
+			first[v] = first[v - 1] + valence[v - 1];
+		int[] adjacency = new int[triangles * 3];
+		int[] fill = new int[vertexCount];
+		for (int t = 0; t < triangles; t++) {
+			for (int j = 0; j < 3; j++) {
+				int v = indices[offset + t * 3 + j];
+				adjacency[first[v] + fill[v]++] = t;
+			}
+		}
+
+		int[] cachePosition = new int[vertexCount];
+		float[] vertexScore = new float[vertexCount];
+		for (int v = 0; v < vertexCount; v++) {
+			cachePosition[v] = -1;
+			vertexScore[v] = score(-1, valence[v]);
+		}
+		float[] triangleScore = new float[triangles];
+		for (int t = 0; t < triangles; t++) {
+			int o = offset + t * 3;
+			triangleScore[t] = vertexScore[indices[o]] + vertexScore[indices[o + 1]] + vertexScore[indices[o + 2]];
+		}
+
+		boolean[] added = new boolean[triangles];
+		int[] output = new int[triangles * 3];
+		// room for the new triangle's vertices on top of a full cache
+		int[] cache = new int[CACHE_SIZE + 3];
+		int[] newCache = new int[CACHE_SIZE + 3];
+		int cacheCount = 0;
+
+		int best = -1;
+		int cursor = 0;		// everything before it has been added
+		for (int n = 0; n < triangles; n++) {
+			if (best < 0) {
+				// nothing around the cache: carry on in the original order
+				while (added[cursor])
+					cursor++;
+				best = cursor;
+			}
+
+			int o = offset + best * 3;
+			int a = indices[o], b = indices[o + 1], c = indices[o + 2];
+			output[n * 3] = a;
+			output[n * 3 + 1] = b;
+			output[n * 3 + 2] = c;
+			added[best] = true;
+			removeTriangle(adjacency, first, valence, a, best);
+			removeTriangle(adjacency, first, valence, b, best);
+			removeTriangle(adjacency, first, valence, c, best);
+
+			// the triangle's vertices go to the front, the rest move back
+			int newCount = 0;
+			newCache[newCount++] = a;
+			newCache[newCount++] = b;
+			newCache[newCount++] = c;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				if (v != a && v != b && v != c)
+					newCache[newCount++] = v;
+			}
+			int[] swap = cache;
+			cache = newCache;
+			newCache = swap;
+			cacheCount = newCount;
+
+			// rescore everything that moved, including what fell out, and
+			// pass the change on to its remaining triangles
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				int position = i < CACHE_SIZE ? i : -1;
+				cachePosition[v] = position;
+				float score = score(position, valence[v]);
+				float delta = score - vertexScore[v];
+				vertexScore[v] = score;
+				for (int k = first[v], end = first[v] + valence[v]; k < end; k++)
+					triangleScore[adjacency[k]] += delta;
+			}
+			if (cacheCount > CACHE_SIZE)
+				cacheCount = CACHE_SIZE;
+
+			// the next triangle is the best one that uses a cached vertex
+			best = -1;
+			float bestScore = -Float.MAX_VALUE;
+			for (int i = 0; i < cacheCount; i++) {
+				int v = cache[i];
+				for (int k = first[v], end = first[v] + valence[v]; k < end; k++) {
+					int t = adjacency[k];
+					if (triangleScore[t] > bestScore) {
+						bestScore = triangleScore[t];
+						best = t;
+					}
+				}
+			}
+		}
+
+		System.arraycopy(output, 0, indices, offset, triangles * 3);
+	}
+
+	// drops triangle t from the ones left around v
+	private static void removeTriangle(int[] adjacency, int[] first, int[] valence, int v, int t) {
+		int end = first[v] + valence[v] - 1;
+		for (int k = first[v]; k <= end; k++) {
+			if (adjacency[k] == t) {
+				adjacency[k] = adjacency[end];
+				valence[v]--;
+				return;
+			}
+		}
+	}
+
+	// Renumbers the vertices in the order the first count indices use them
+	// and rewrites those indices to match. Returns the new number of each
+	// old vertex, or -1 for a vertex no index uses; the caller moves the
+	// vertex data to match.
+	public static int[] reorderVertices(int[] indices, int count, int vertexCount) {
+		int[] remap = new int[vertexCount];
+		for (int v = 0; v < vertexCount; v++)
+			remap[v] = -1;
+		int next = 0;
+		for (int i = 0; i < count; i++) {
+			int v = indices[i];
+			if (remap[v] < 0)
+				remap[v] = next++;
+			indices[i] = remap[v];
+		}
+		return remap;
+	}
+}
@@ -0,0 +1,290 @@
+package graphics.bradley.androidglviewer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+import android.opengl.GLES20;
+
+// Describes how the attributes of one vertex are packed into a single
+// interleaved stride, e.g.
+//
+//     new VertexLayout()
+//         .add(VertexLayout.POSITION, "vPosition", 3, GLES20.GL_SHORT, true)
+//         .add(VertexLayout.NORMAL, "vNormal", 3, GLES20.GL_BYTE, true)
+//         .add(VertexLayout.COLOR, "vColor", 4, GLES20.GL_UNSIGNED_BYTE, true);
+//
+// Every attribute starts on a 4 byte boundary, as the GPUs prefer.
+public class VertexLayout {
+
+	// where the data for an attribute comes from when packing
+	public static final int POSITION = 0;
+	public static final int NORMAL = 1;
+	public static final int COLOR = 2;
+	public static final int SEMANTICS = 3;
+
+	// from OES_vertex_half_float; not part of core OpenGL ES 2.0
+	public static final int GL_HALF_FLOAT_OES = 0x8D61;
+
+	// 32-bit float positions, byte normals, byte colors: 20 bytes per vertex
+	public static final VertexLayout FLOAT_POSITIONS = new VertexLayout()
+			.add(POSITION, "vPosition", 3, GLES20.GL_FLOAT, false)
+			.add(NORMAL, "vNormal", 3, GLES20.GL_BYTE, true)
+			.add(COLOR, "vColor", 4, GLES20.GL_UNSIGNED_BYTE, true);
+
+	// The same without a color attribute: 16 bytes per vertex.
+	public static final VertexLayout FLOAT_POSITIONS_UNCOLORED = new VertexLayout()
+			.add(POSITION, "vPosition", 3, GLES20.GL_FLOAT, false)
+			.add(NORMAL, "vNormal", 3, GLES20.GL_BYTE, true);
+
+	// Fixed-point positions for meshes that fit in the [-1, 1] cube, such as
+	// the unit Cube and Sphere: 16 bytes per vertex instead of 36.
+	public static final VertexLayout UNIT_POSITIONS = new VertexLayout()
+			.add(POSITION, "vPosition", 3, GLES20.GL_SHORT, true)
+			.add(NORMAL, "vNormal", 3, GLES20.GL_BYTE, true)
+			.add(COLOR, "vColor", 4, GLES20.GL_UNSIGNED_BYTE, true);
+
+	// The same without a color attribute, for shared meshes whose color comes
+	// from each object's Material instead: 12 bytes per vertex.
+	public static final VertexLayout UNIT_POSITIONS_UNCOLORED = new VertexLayout()
+			.add(POSITION, "vPosition", 3, GLES20.GL_SHORT, true)
+			.add(NORMAL, "vNormal", 3, GLES20.GL_BYTE, true);
+
+	// Half-float positions; only usable with OES_vertex_half_float.
+	public static final VertexLayout HALF_POSITIONS = new VertexLayout()
+			.add(POSITION, "vPosition", 3, GL_HALF_FLOAT_OES, false)
+			.add(NORMAL, "vNormal", 3, GLES20.GL_BYTE, true)
+			.add(COLOR, "vColor", 4, GLES20.GL_UNSIGNED_BYTE, true);
+
+	public static class Attribute {
+		public final int semantic;
+		public final String name;
+		public final int components;
+		public final int type;
+		public final boolean normalized;
+		public final int offset;
+
+		Attribute(int semantic, String name, int components, int type, boolean normalized, int offset) {
+			this.semantic = semantic;
+			this.name = name;
+			this.components = components;
+			this.type = type;
+			this.normalized = normalized;
+			this.offset = offset;
+		}
+	}
+
+	private final ArrayList<Attribute> mAttributes = new ArrayList<Attribute>();
+	private int mStride;
+
+	public VertexLayout add(int semantic, String name, int components, int type, boolean normalized) {
+		mAttributes.add(new Attribute(semantic, name, components, type, normalized, mStride));
+		mStride += align4(components * sizeOf(type));
+		return this;
+	}
+
+	public int getAttributeCount() {
+		return mAttributes.size();
+	}
+
+	public Attribute getAttribute(int i) {
+		return mAttributes.get(i);
+	}
+
+	// bytes per vertex
+	public int getStride() {
+		return mStride;
+	}
+
+	public static int sizeOf(int type) {
+		switch (type) {
+		case GLES20.GL_FLOAT:
+		case GLES20.GL_FIXED:
+			return 4;
+		case GLES20.GL_SHORT:
+		case GLES20.GL_UNSIGNED_SHORT:
+		case GL_HALF_FLOAT_OES:
+			return 2;
+		case GLES20.GL_BYTE:
+		case GLES20.GL_UNSIGNED_BYTE:
+			return 1;
+		default:
+			throw new IllegalArgumentException("Unsupported vertex type " + type);
+		}
+	}
+
+	private static int align4(int bytes) {
+		return (bytes + 3) & ~3;
+	}
+
+	// Packs per-semantic float arrays (3 floats per vertex, as Cube and Sphere
+	// produce them) into one interleaved direct buffer. A missing fourth
+	// component is written as 1, like OpenGL does for a missing w.
+	public ByteBuffer pack(int vertexCount, float[] positions, float[] normals, float[] colors) {
+		ByteBuffer bb = ByteBuffer.allocateDirect(vertexCount * mStride);
+		// use the device hardware's native byte order
+		bb.order(ByteOrder.nativeOrder());
+		pack(bb, 0, vertexCount, positions, normals, colors);
+		return bb;
+	}
+
+	// Packs count vertices, taken from the start of the arrays, into bb as
+	// vertices first to first + count - 1. Only that range of bb is written,
+	// through a view of its own, so separate ranges may be packed by
+	// separate threads at the same time.
+	public void pack(ByteBuffer bb, int first, int count, float[] positions, float[] normals, float[] colors) {
+		float[][] sources = new float[SEMANTICS][];
+		sources[POSITION] = positions;
+		sources[NORMAL] = normals;
+		sources[COLOR] = colors;
+
+		// a duplicate shares the contents but not the position, nor the order
+		ByteBuffer view = bb.duplicate();
+		view.order(bb.order());
+
+		for (int v = 0; v < count; v++) {
+			for (int a = 0; a < mAttributes.size(); a++) {
+				Attribute attr = mAttributes.get(a);
+				float[] src = sources[attr.semantic];
+
+				view.position((first + v) * mStride + attr.offset);
+				for (int c = 0; c < attr.components; c++) {
+					float value;
+					if (src == null)
+						value = 0;
+					else if (c < 3)
+						value = src[v * 3 + c];
+					else
+						value = 1;
+					put(view, attr.type, attr.normalized, value);
+				}
+			}
+		}
+	}
+
+	// Reads the first three components of the semantic's attribute back out
+	// of packed vertices into out, 3 floats per vertex. Returns false if
+	// this layout has no such attribute.
+	public boolean unpack(ByteBuffer bb, int vertexCount, int semantic, float[] out) {
+		Attribute attr = null;
+		for (int a = 0; a < mAttributes.size(); a++) {
+			if (mAttributes.get(a).semantic == semantic)
+				attr = mAttributes.get(a);
+		}
+		if (attr == null)
+			return false;
+
+		int size = sizeOf(attr.type);
+		for (int v = 0; v < vertexCount; v++) {
+			int at = v * mStride + attr.offset;
+			for (int c = 0; c < 3; c++)
+				out[v * 3 + c] = c < attr.components ? get(bb, at + c * size, attr.type, attr.normalized) : 0;
+		}
+		return true;
+	}
+
+	// the value put() wrote at index
+	public static float get(ByteBuffer bb, int index, int type, boolean normalized) {
+		switch (type) {
+		case GLES20.GL_FLOAT:
+			return bb.getFloat(index);
+		case GLES20.GL_FIXED:
+			return bb.getInt(index) / 65536f;
+		case GL_HALF_FLOAT_OES:
+			return fromHalf(bb.getShort(index));
+		case GLES20.GL_SHORT:
+			return normalized ? bb.getShort(index) / 32767f : bb.getShort(index);
+		case GLES20.GL_UNSIGNED_SHORT:
+			return normalized ? (bb.getShort(index) & 0xffff) / 65535f : bb.getShort(index) & 0xffff;
+		case GLES20.GL_BYTE:
+			return normalized ? bb.get(index) / 127f : bb.get(index);
+		case GLES20.GL_UNSIGNED_BYTE:
+			return normalized ? (bb.get(index) & 0xff) / 255f : bb.get(index) & 0xff;
+		default:
+			throw new IllegalArgumentException("Unsupported vertex type " + type);
+		}
+	}
+
+	public static void put(ByteBuffer bb, int type, boolean normalized, float value) {
+		switch (type) {
+		case GLES20.GL_FLOAT:
+			bb.putFloat(value);
+			break;
+		case GLES20.GL_FIXED:
+			// 16.16 fixed point
+			bb.putInt(Math.round(value * 65536f));
+			break;
+		case GL_HALF_FLOAT_OES:
+			bb.putShort(toHalf(value));
+			break;
+		case GLES20.GL_SHORT:
+			bb.putShort((short) (normalized ? Math.round(clamp(value, -1, 1) * 32767f) : Math.round(value)));
+			break;
+		case GLES20.GL_UNSIGNED_SHORT:
+			bb.putShort((short) (normalized ? Math.round(clamp(value, 0, 1) * 65535f) : Math.round(value)));
+			break;
+		case GLES20.GL_BYTE:
+			bb.put((byte) (normalized ? Math.round(clamp(value, -1, 1) * 127f) : Math.round(value)));
+			break;
+		case GLES20.GL_UNSIGNED_BYTE:
+			bb.put((byte) (normalized ? Math.round(clamp(value, 0, 1) * 255f) : Math.round(value)));
+			break;
+		default:
+			throw new IllegalArgumentException("Unsupported vertex type " + type);
+		}
+	}
+
+	private static float clamp(float value, float min, float max) {
+		return value < min ? min : (value > max ? max : value);
+	}
+
+	// IEEE 754 binary16, rounded to nearest even; overflow becomes infinity
+	public static short toHalf(float value) {
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = ((bits >>> 23) & 0xff) - 127 + 15;
+		int mantissa = bits & 0x7fffff;
+
+		if (exponent >= 0x1f) {
+			// overflow, infinity or NaN
+			boolean nan = ((bits >>> 23) & 0xff) == 0xff && mantissa != 0;
+			return (short) (sign | 0x7c00 | (nan ? 0x200 : 0));
+		}
+		if (exponent <= 0) {
+			// subnormal or zero
+			if (exponent < -10)
+				return (short) sign;
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			return (short) (sign | roundShift(mantissa, shift));
+		}
+
+		// a carry out of the mantissa correctly bumps the exponent
+		return (short) (sign | ((exponent << 10) + roundShift(mantissa, 13)));
+	}
+
+	public static float fromHalf(short half) {
+		int sign = (half & 0x8000) << 16;
+		int exponent = (half >>> 10) & 0x1f;
+		int mantissa = half & 0x3ff;
+
+		if (exponent == 0x1f)
+			return Float.intBitsToFloat(sign | 0x7f800000 | (mantissa << 13));
+		if (exponent == 0) {
+			// subnormal or zero: exactly mantissa * 2^-24
+			float value = mantissa / 16777216f;
+			return sign != 0 ? -value : value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+
+	// value >> shift, rounded to nearest with ties to even
+	private static int roundShift(int value, int shift) {
+		int result = value >> shift;
+		int rest = value & ((1 << shift) - 1);
+		int halfway = 1 << (shift - 1);
+		if (rest > halfway || (rest == halfway && (result & 1) != 0))
+			result++;
+		return result;
+	}
+}
@@ -0,0 +1,168 @@
+package graphics.bradley.androidglviewer;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import android.opengl.Matrix;
+
+// AffineMath against the Matrix calls it replaces, on random transforms:
+// bit for bit (up to the sign of zero) where it does the same arithmetic,
+// and to a few ulps for the inverses, which are computed differently.
+//
+// The Matrix here is not the platform's but bench/shim's reimplementation
+// of it, since android.jar only has stubs. The shim follows the platform's
+// code operation for operation, so bit-for-bit agreement with it stands for
+// agreement with a device only as far as that copy is faithful.
+public class AffineMathTest {
+
+	private static final int MATRICES = 64;
+
+	private final float[] mProj = new float[16];
+	private final float[] mParams = new float[MATRICES * 10];
+	private final float[] mInputs = new float[MATRICES * 16];
+
+	private final float[] mExpected = new float[16];
+	private final float[] mActual = new float[16];
+
+	// Random translations, rotations (a quarter of them about a coordinate
+	// axis) and scales; rigid ones have no scale.
+	private void makeInputs(boolean rigid) {
+		Random random = new Random(7);
+		Matrix.frustumM(mProj, 0, -1.7f, 1.7f, -1, 1, 1, 20);
+		for (int k = 0; k < MATRICES; k++) {
+			float[] p = mParams;
+			int o = k * 10;
+			p[o] = random.nextFloat() * 20 - 10;
+			p[o + 1] = random.nextFloat() * 20 - 10;
+			p[o + 2] = random.nextFloat() * 20 - 10;
+			p[o + 3] = random.nextFloat() * 720 - 360;
+			int axis = random.nextInt(8);
+			p[o + 4] = axis == 0 ? 1 : random.nextFloat() * 2 - 1;
+			p[o + 5] = axis == 1 ? 1 : (axis == 0 ? 0 : random.nextFloat() * 2 - 1);
+			p[o + 6] = axis <= 1 ? 0 : random.nextFloat() * 2 - 1;
+			p[o + 7] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			p[o + 8] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			p[o + 9] = rigid ? 1 : 0.1f + random.nextFloat() * 3;
+			trsMatrix(mInputs, k * 16, p, o);
+		}
+	}
+
+	// the reference: how the renderer used to compose a transform
+	private static void trsMatrix(float[] m, int offset, float[] p, int o) {
+		Matrix.setIdentityM(m, offset);
+		Matrix.translateM(m, offset, p[o], p[o + 1], p[o + 2]);
+		Matrix.rotateM(m, offset, p[o + 3], p[o + 4], p[o + 5], p[o + 6]);
+		Matrix.scaleM(m, offset, p[o + 7], p[o + 8], p[o + 9]);
+	}
+
+	private static int next(int k) {
+		return ((k + 1) & (MATRICES - 1)) * 16;
+	}
+
+	@Test
+	public void multiplyAffineMatchesMultiplyMM() {
+		makeInputs(false);
+		for (int k = 0; k < MATRICES; k++) {
+			Matrix.multiplyMM(mExpected, 0, mInputs, k * 16, mInputs, next(k));
+			AffineMath.multiplyAffine(mActual, 0, mInputs, k * 16, mInputs, next(k));
+			assertSame("multiplyAffine " + k, 0);
+		}
+	}
+
+	@Test
+	public void multiplyProjAffineMatchesMultiplyMM() {
+		makeInputs(false);
+		for (int k = 0; k < MATRICES; k++) {
+			Matrix.multiplyMM(mExpected, 0, mProj, 0, mInputs, next(k));
+			AffineMath.multiplyProjAffine(mActual, 0, mProj, 0, mInputs, next(k));
+			assertSame("multiplyProjAffine " + k, 0);
+		}
+	}
+
+	@Test
+	public void multiplyAffineBatchMatchesMultiplyMM() {
+		makeInputs(false);
+		float[] results = new float[MATRICES * 16];
+		AffineMath.multiplyAffineBatch(results, mInputs, 0, mInputs, MATRICES);
+		for (int k = 0; k < MATRICES; k++) {
+			Matrix.multiplyMM(mExpected, 0, mInputs, 0, mInputs, k * 16);
+			System.arraycopy(results, k * 16, mActual, 0, 16);
+			assertSame("multiplyAffineBatch " + k, 0);
+		}
+	}
+
+	@Test
+	public void setTRSMatchesTranslateRotateScale() {
+		makeInputs(false);
+		for (int k = 0; k < MATRICES; k++) {
+			float[] p = mParams;
+			int o = k * 10;
+			trsMatrix(mExpected, 0, p, o);
+			AffineMath.setTRS(mActual, 0, p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4], p[o + 5], p[o + 6],
+					p[o + 7], p[o + 8], p[o + 9]);
+			assertSame("setTRS " + k, 0);
+		}
+	}
+
+	@Test
+	public void normalMatrixMatchesInverseTranspose() {
+		makeInputs(false);
+		for (int k = 0; k < MATRICES; k++) {
+			inverseTranspose(k);
+			AffineMath.normalMatrix(mActual, 0, mInputs, k * 16);
+			assertSameUpper3x3("normalMatrix " + k);
+		}
+	}
+
+	@Test
+	public void normalMatrixRigidMatchesInverseTranspose() {
+		makeInputs(true);
+		for (int k = 0; k < MATRICES; k++) {
+			inverseTranspose(k);
+			AffineMath.normalMatrixRigid(mActual, 0, mInputs, k * 16);
+			assertSameUpper3x3("normalMatrixRigid " + k);
+		}
+	}
+
+	@Test
+	public void invertRigidMatchesInvertM() {
+		makeInputs(true);
+		for (int k = 0; k < MATRICES; k++) {
+			Matrix.invertM(mExpected, 0, mInputs, k * 16);
+			AffineMath.invertRigid(mActual, 0, mInputs, k * 16);
+			assertSame("invertRigid " + k, 1e-5f);
+		}
+	}
+
+	private void inverseTranspose(int k) {
+		float[] temp = new float[16];
+		assertTrue(Matrix.invertM(temp, 0, mInputs, k * 16));
+		Matrix.transposeM(mExpected, 0, temp, 0);
+	}
+
+	// only the upper 3x3 is used on normals, which have w = 0
+	private void assertSameUpper3x3(String what) {
+		for (int i = 3; i < 16; i += 4)
+			mExpected[i] = mActual[i];
+		for (int i = 12; i < 15; i++)
+			mExpected[i] = mActual[i];
+		assertSame(what, 1e-5f);
+	}
+
+	// Exact when tolerance is 0 (+0 and -0 count as equal), otherwise
+	// relative to the largest element.
+	private void assertSame(String what, float tolerance) {
+		float scale = 0;
+		for (int i = 0; i < 16; i++)
+			scale = Math.max(scale, Math.abs(mExpected[i]));
+		for (int i = 0; i < 16; i++) {
+			boolean same = tolerance == 0
+					? Float.floatToIntBits(mExpected[i]) == Float.floatToIntBits(mActual[i]) || mExpected[i] == mActual[i]
+					: Math.abs(mExpected[i] - mActual[i]) <= tolerance * scale;
+			assertTrue(what + ": element " + i + " is " + mActual[i] + ", Matrix gives " + mExpected[i], same);
+		}
+	}
+}
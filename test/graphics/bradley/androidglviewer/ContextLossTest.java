@@ -0,0 +1,65 @@
+package graphics.bradley.androidglviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+// A new EGL context after the scene has been drawn: only what the next
+// frame draws with is linked and uploaded again.
+public class ContextLossTest {
+
+	private MyGL20Renderer mRenderer;
+
+	@After
+	public void tearDown() {
+		if (mRenderer != null)
+			mRenderer.setLightingMode(Lighting.AUTO);
+	}
+
+	private static void surfaceCreated(MyGL20Renderer renderer) {
+		renderer.onSurfaceCreated(null, null);
+		renderer.onSurfaceChanged(null, 1280, 720);
+		while (MeshLoader.getPendingCount() > 0) {
+			MeshLoader.poll();
+			Thread.yield();
+		}
+	}
+
+	@Test
+	public void onlyProgramsInUseAreLinkedAgain() {
+		RecordingBackend backend = new RecordingBackend();
+		mRenderer = new MyGL20Renderer(backend);
+		mRenderer.getFramePacer().setTargetRate(0);
+		surfaceCreated(mRenderer);
+
+		// every tier once, which leaves a program variant for each behind
+		for (int tier = Lighting.TIERS - 1; tier >= 0; tier--) {
+			mRenderer.setLightingMode(tier);
+			mRenderer.onDrawFrame(null);
+		}
+		int registered = ShaderRegistry.size();
+		assertTrue(registered > 2);
+
+		backend.beginFrame();
+		surfaceCreated(mRenderer);
+		mRenderer.onDrawFrame(null);
+
+		// at the gouraud tier the table and the balls share one program
+		assertEquals(1, backend.getCallCount(RecordingBackend.LINK_PROGRAM));
+		assertEquals(registered, ShaderRegistry.size());
+		assertEquals(5, backend.getDrawCalls());
+		assertTrue(backend.getCallCount(RecordingBackend.BUFFER_DATA) > 0);
+
+		// a variant from before the loss links when it is next needed
+		backend.beginFrame();
+		mRenderer.setLightingMode(Lighting.PHONG);
+		mRenderer.onDrawFrame(null);
+		assertEquals(1, backend.getCallCount(RecordingBackend.LINK_PROGRAM));
+
+		backend.beginFrame();
+		mRenderer.onDrawFrame(null);
+		assertEquals(0, backend.getCallCount(RecordingBackend.LINK_PROGRAM));
+	}
+}
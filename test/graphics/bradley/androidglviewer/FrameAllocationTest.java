@@ -0,0 +1,87 @@
+package graphics.bradley.androidglviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// Steady-state frames must not allocate: every object made per frame is
+// garbage the collector has to stop the GL thread for sooner or later.
+public class FrameAllocationTest {
+
+	private static final int WARMUP_FRAMES = 2000;
+	private static final int FRAMES = 500;
+
+	private RecordingBackend mBackend;
+	private MyGL20Renderer mRenderer;
+
+	@Before
+	public void setUp() {
+		mBackend = new RecordingBackend();
+		mRenderer = new MyGL20Renderer(mBackend);
+		// draw frames back to back, without waiting for the next one
+		mRenderer.getFramePacer().setTargetRate(0);
+		// a pause on a busy machine would make the auto mode switch tiers,
+		// which looks up another program: not a steady-state frame
+		mRenderer.setLightingMode(Lighting.PHONG);
+		mRenderer.onSurfaceCreated(null, null);
+		mRenderer.onSurfaceChanged(null, 1280, 720);
+		// the spheres are built in the background; wait for all of them
+		while (MeshLoader.getPendingCount() > 0) {
+			MeshLoader.poll();
+			Thread.yield();
+		}
+	}
+
+	// Looked up once: getThreadMXBean() allocates a little, and not always
+	// the same amount, which would swamp what is measured.
+	private static final java.lang.management.ThreadMXBean sThreads = ManagementFactory.getThreadMXBean();
+
+	// bytes this thread has allocated on the heap so far, or -1
+	private static long allocatedBytes() {
+		if (sThreads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) sThreads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+
+	// Heap bytes the frames' onDrawFrame calls allocated. Camera input is
+	// left out: each change is a new immutable CameraState by design, and is
+	// made on the UI thread.
+	private long drawFrames(int frames, boolean moving) {
+		// what reading the counter costs by itself
+		long start = allocatedBytes();
+		long overhead = allocatedBytes() - start;
+
+		long allocated = 0;
+		for (int i = 0; i < frames; i++) {
+			if (moving) {
+				mRenderer.getCameraInput().rotate(0.5f, 0.25f, i * 16L);
+				mRenderer.getCameraInput().publish();
+			}
+			mBackend.beginFrame();
+			start = allocatedBytes();
+			mRenderer.onDrawFrame(null);
+			allocated += allocatedBytes() - start - overhead;
+		}
+		return allocated;
+	}
+
+	private long allocatedPerFrames(boolean moving) {
+		assumeTrue(allocatedBytes() >= 0);
+		drawFrames(WARMUP_FRAMES, moving);
+		return drawFrames(FRAMES, moving);
+	}
+
+	@Test
+	public void stillFramesDoNotAllocate() {
+		assertEquals(0, allocatedPerFrames(false));
+	}
+
+	@Test
+	public void movingFramesDoNotAllocate() {
+		assertEquals(0, allocatedPerFrames(true));
+	}
+}
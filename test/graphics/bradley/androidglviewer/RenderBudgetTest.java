@@ -0,0 +1,85 @@
+package graphics.bradley.androidglviewer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+// What a steady-state frame of the default scene may ask of the driver. The
+// scene is the table, baked into one mesh per material, and three balls,
+// all of them on screen from the start.
+public class RenderBudgetTest {
+
+	// two table materials and three balls, one draw call each
+	private static final int DRAW_CALLS = 5;
+
+	// the queue is sorted by program: one bind for the table, one for the balls
+	private static final int MAX_PROGRAM_BINDS = 2;
+
+	// program binds plus a buffer binding and attribute setup per mesh
+	// change; 17 as of writing
+	private static final int MAX_STATE_CHANGES = 20;
+
+	// at most the three matrices of each object; still frames re-upload only
+	// what differs between objects sharing a program
+	private static final int MAX_UNIFORM_UPLOADS = DRAW_CALLS * 3;
+
+	private RecordingBackend mBackend;
+	private MyGL20Renderer mRenderer;
+
+	@Before
+	public void setUp() {
+		mBackend = new RecordingBackend();
+		mRenderer = new MyGL20Renderer(mBackend);
+		mRenderer.getFramePacer().setTargetRate(0);
+		// the auto mode could switch tiers after a pause, and a new tier
+		// may have a program to link
+		mRenderer.setLightingMode(Lighting.PHONG);
+		mRenderer.onSurfaceCreated(null, null);
+		mRenderer.onSurfaceChanged(null, 1280, 720);
+		while (MeshLoader.getPendingCount() > 0) {
+			MeshLoader.poll();
+			Thread.yield();
+		}
+		// the first frame uploads the meshes and the uniforms
+		mBackend.beginFrame();
+		mRenderer.onDrawFrame(null);
+	}
+
+	private void assertWithinBudget(String frame) {
+		assertEquals(frame + " draw calls", DRAW_CALLS, mBackend.getDrawCalls());
+		assertTrue(frame + " program binds: " + mBackend.getProgramBinds(),
+				mBackend.getProgramBinds() <= MAX_PROGRAM_BINDS);
+		assertTrue(frame + " state changes: " + mBackend.getStateChanges(),
+				mBackend.getStateChanges() <= MAX_STATE_CHANGES);
+		assertTrue(frame + " uniform uploads: " + mBackend.getUniformUploads(),
+				mBackend.getUniformUploads() <= MAX_UNIFORM_UPLOADS);
+
+		// everything is in GPU buffers already
+		assertEquals(frame + " buffer uploads", 0, mBackend.getCallCount(RecordingBackend.BUFFER_DATA)
+				+ mBackend.getCallCount(RecordingBackend.BUFFER_SUB_DATA));
+		assertEquals(frame + " shader work", 0, mBackend.getCallCount(RecordingBackend.COMPILE_SHADER)
+				+ mBackend.getCallCount(RecordingBackend.LINK_PROGRAM));
+	}
+
+	@Test
+	public void stillFramesStayWithinBudget() {
+		for (int i = 0; i < 10; i++) {
+			mBackend.beginFrame();
+			mRenderer.onDrawFrame(null);
+			assertWithinBudget("still frame " + i);
+		}
+	}
+
+	@Test
+	public void movingFramesStayWithinBudget() {
+		for (int i = 0; i < 10; i++) {
+			mRenderer.getCameraInput().rotate(5f, 3f, i * 16L);
+			mRenderer.getCameraInput().publish();
+			mBackend.beginFrame();
+			mRenderer.onDrawFrame(null);
+			assertWithinBudget("moving frame " + i);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package graphics.bradley.androidglviewer;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import android.opengl.GLES20;
+
+// The indexed sphere against the unindexed vertex stream it replaced: the
+// indices, expanded, must give the same triangles in the same order.
+public class SphereTest {
+
+	// packed normals are signed bytes
+	private static final float NORMAL_DELTA = 0.5f / 127;
+
+	// positions of a unit sphere are normalized shorts
+	private static final float UNIT_DELTA = 0.5f / 32767;
+
+	// The old createSphere: lats*longs quads of two triangles each, with
+	// every vertex written out in full. Its positions were those of the unit
+	// sphere whatever the radius, and so were its normals.
+	private static float[] oldSphere(int lats, int longs) {
+		float[] vertices = new float[lats * longs * 6 * 3];
+		int triIndex = 0;
+		for (int i = 0; i < lats; i++) {
+			double lat0 = Math.PI * (-0.5 + (double) (i) / lats);
+			double z0 = Math.sin(lat0);
+			double zr0 = Math.cos(lat0);
+
+			double lat1 = Math.PI * (-0.5 + (double) (i + 1) / lats);
+			double z1 = Math.sin(lat1);
+			double zr1 = Math.cos(lat1);
+
+			for (int j = 0; j < longs; j++) {
+				double lng = 2 * Math.PI * (double) (j - 1) / longs;
+				double x = Math.cos(lng);
+				double y = Math.sin(lng);
+
+				lng = 2 * Math.PI * (double) (j) / longs;
+				double x1 = Math.cos(lng);
+				double y1 = Math.sin(lng);
+
+				put(vertices, triIndex++, x * zr0, y * zr0, z0, x * zr1, y * zr1, z1, x1 * zr0, y1 * zr0, z0);
+				put(vertices, triIndex++, x1 * zr0, y1 * zr0, z0, x * zr1, y * zr1, z1, x1 * zr1, y1 * zr1, z1);
+			}
+		}
+		return vertices;
+	}
+
+	private static void put(float[] vertices, int triangle, double... coords) {
+		for (int k = 0; k < 9; k++)
+			vertices[triangle * 9 + k] = (float) coords[k];
+	}
+
+	private static int[] indicesOf(Mesh mesh) {
+		int count = mesh.getIndexCount();
+		boolean shorts = mesh.getIndexType() == GLES20.GL_UNSIGNED_SHORT;
+		ByteBuffer bb = ByteBuffer.allocate(count * (shorts ? 2 : 4));
+		bb.order(ByteOrder.nativeOrder());
+		mesh.getIndices(bb);
+		int[] indices = new int[count];
+		for (int i = 0; i < count; i++)
+			indices[i] = shorts ? bb.getShort(i * 2) & 0xffff : bb.getInt(i * 4);
+		return indices;
+	}
+
+	// the mesh's triangles written out in full, 9 floats each
+	private static float[] expand(Mesh mesh, int semantic) {
+		float[] unpacked = new float[mesh.getVertexCount() * 3];
+		mesh.getLayout().unpack(mesh.getVertexData(), mesh.getVertexCount(), semantic, unpacked);
+		int[] indices = indicesOf(mesh);
+		float[] expanded = new float[indices.length * 3];
+		for (int i = 0; i < indices.length; i++)
+			System.arraycopy(unpacked, indices[i] * 3, expanded, i * 3, 3);
+		return expanded;
+	}
+
+	private static void assertMatches(int lats, int longs, double r, float positionDelta) {
+		Mesh mesh = Sphere.createSphere(r, lats, longs, false);
+		float[] expected = oldSphere(lats, longs);
+		float[] positions = expand(mesh, VertexLayout.POSITION);
+		float[] normals = expand(mesh, VertexLayout.NORMAL);
+		assertEquals(expected.length, positions.length);
+
+		for (int i = 0; i < expected.length; i++) {
+			String where = lats + "x" + longs + ", triangle " + i / 9 + ", vertex " + i % 9 / 3;
+			assertEquals(where, (float) (r * expected[i]), positions[i], positionDelta);
+			assertEquals(where, expected[i], normals[i], NORMAL_DELTA);
+		}
+	}
+
+	@Test
+	public void unitSphereMatchesOldStream() {
+		assertMatches(30, 60, 1, UNIT_DELTA);
+		assertMatches(4, 8, 1, UNIT_DELTA);
+		assertMatches(1, 3, 1, UNIT_DELTA);
+	}
+
+	@Test
+	public void floatPositionsMatchOldStreamExactly() {
+		// scaling by 2 is exact, so float positions must match bit for bit
+		assertMatches(30, 60, 2, 0);
+	}
+
+	@Test
+	public void intIndicesMatchOldStream() {
+		Mesh mesh = Sphere.createSphere(1, 200, 400, false);
+		assertEquals(GLES20.GL_UNSIGNED_INT, mesh.getIndexType());
+		assertMatches(200, 400, 1, UNIT_DELTA);
+	}
+
+	// the vertex cache order only changes the order of the triangles
+	@Test
+	public void optimizedSphereHasTheSameTriangles() {
+		int[] lats = { 30, 4, 200 };
+		int[] longs = { 60, 8, 400 };
+		for (int s = 0; s < lats.length; s++) {
+			float[] plain = expand(Sphere.createSphere(1, lats[s], longs[s], false), VertexLayout.POSITION);
+			float[] optimized = expand(Sphere.createSphere(1, lats[s], longs[s], true), VertexLayout.POSITION);
+			assertEquals(triangles(plain), triangles(optimized));
+		}
+	}
+
+	private static List<String> triangles(float[] expanded) {
+		List<String> triangles = new ArrayList<String>();
+		for (int t = 0; t < expanded.length; t += 9) {
+			StringBuilder sb = new StringBuilder();
+			for (int k = 0; k < 9; k++)
+				sb.append(Float.floatToIntBits(expanded[t + k])).append(' ');
+			triangles.add(sb.toString());
+		}
+		Collections.sort(triangles);
+		return triangles;
+	}
+}
@@ -0,0 +1,60 @@
+#!/bin/sh
+# Builds the plain-Java part of the app and the JUnit tests against
+# android.jar and runs them on this JVM. Arguments pick test classes by
+# simple name; with none, every *Test class runs, e.g.
+#
+#     test/run.sh
+#     test/run.sh SphereTest
+#
+# ANDROID_JAR defaults to the android-17 platform of the SDK in ANDROID_HOME.
+# JUNIT_JAR and HAMCREST_JAR default to JUnit 4.13.2 and hamcrest-core 1.3,
+# fetched from Maven Central into test/build/lib the first time.
+set -e
+cd "$(dirname "$0")/.."
+
+ANDROID_JAR=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-17/android.jar}
+if [ ! -f "$ANDROID_JAR" ]; then
+	echo "android.jar not found; set ANDROID_JAR or ANDROID_HOME" >&2
+	exit 1
+fi
+
+LIB=test/build/lib
+MAVEN=https://repo1.maven.org/maven2
+fetch() {
+	if [ ! -f "$LIB/$2" ]; then
+		mkdir -p "$LIB"
+		curl -sSfL -o "$LIB/$2" "$MAVEN/$1/$2"
+	fi
+}
+if [ -z "$JUNIT_JAR" ]; then
+	fetch junit/junit/4.13.2 junit-4.13.2.jar
+	JUNIT_JAR=$LIB/junit-4.13.2.jar
+fi
+if [ -z "$HAMCREST_JAR" ]; then
+	fetch org/hamcrest/hamcrest-core/1.3 hamcrest-core-1.3.jar
+	HAMCREST_JAR=$LIB/hamcrest-core-1.3.jar
+fi
+
+OUT=test/build/classes
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+# Everything but the activity, which needs the generated R class. As for the
+# benchmarks, the Matrix shim goes ahead of android.jar, whose methods only
+# throw.
+find src -name '*.java' ! -name MainGLActivity.java > test/build/sources.txt
+find bench/shim test -name '*.java' >> test/build/sources.txt
+CP="$JUNIT_JAR:$HAMCREST_JAR:$ANDROID_JAR"
+javac -nowarn -encoding UTF-8 -cp "$CP" -d "$OUT" @test/build/sources.txt
+
+if [ $# -eq 0 ]; then
+	set -- $(cd test && find . -name '*Test.java' | sed 's|^\./||; s|\.java$||' | sort)
+fi
+CLASSES=
+for name in "$@"; do
+	case "$name" in
+	*/*) CLASSES="$CLASSES $(echo "$name" | tr / .)" ;;
+	*) CLASSES="$CLASSES graphics.bradley.androidglviewer.$name" ;;
+	esac
+done
+java -cp "$OUT:$CP" org.junit.runner.JUnitCore $CLASSES
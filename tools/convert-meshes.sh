@@ -0,0 +1,27 @@
+#!/bin/sh
+# Builds MeshConverter with the plain-Java part of the app against
+# android.jar and writes the built-in meshes as mesh files, e.g.
+#
+#     tools/convert-meshes.sh assets/meshes
+#     tools/convert-meshes.sh assets/meshes cube sphere 1 100 200
+#
+# ANDROID_JAR defaults to the android-17 platform of the SDK in ANDROID_HOME.
+set -e
+cd "$(dirname "$0")/.."
+
+ANDROID_JAR=${ANDROID_JAR:-$ANDROID_HOME/platforms/android-17/android.jar}
+if [ ! -f "$ANDROID_JAR" ]; then
+	echo "android.jar not found; set ANDROID_JAR or ANDROID_HOME" >&2
+	exit 1
+fi
+
+OUT=tools/build
+rm -rf "$OUT"
+mkdir -p "$OUT"
+
+# everything but the activity, which needs the generated R class
+find src -name '*.java' ! -name MainGLActivity.java > "$OUT/sources.txt"
+find tools/graphics -name '*.java' >> "$OUT/sources.txt"
+javac -nowarn -encoding UTF-8 -cp "$ANDROID_JAR" -d "$OUT" @"$OUT/sources.txt"
+
+java -cp "$OUT:$ANDROID_JAR" graphics.bradley.androidglviewer.MeshConverter "$@"
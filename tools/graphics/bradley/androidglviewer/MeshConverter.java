@@ -0,0 +1,92 @@
+package graphics.bradley.androidglviewer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+// Writes the app's built-in meshes as MeshFiles. Use tools/convert-meshes.sh:
+//
+//     tools/convert-meshes.sh OUTDIR                   # the cube and the balls
+//     tools/convert-meshes.sh OUTDIR cube sphere 1 100 200
+//
+// "sphere R LATS LONGS" writes every level of that sphere's LOD chain.
+// Each written file is read back and checked before moving on.
+//
+// For every indexed mesh the vertex cache use is reported as ACMR and ATVR
+// (see VertexCacheAnalyzer) for a CACHE_SIZE entry FIFO, before and after
+// VertexCacheOptimizer reordered it.
+public class MeshConverter {
+
+	static final int CACHE_SIZE = 16;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: MeshConverter OUTDIR [cube] [sphere R LATS LONGS]...");
+			System.exit(1);
+		}
+		File dir = new File(args[0]);
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("Cannot create " + dir);
+
+		if (args.length == 1) {
+			// what MyGL20Renderer.buildScene() uses
+			convertCube(dir);
+			convertSphere(dir, 1, 30, 60);
+			return;
+		}
+
+		for (int i = 1; i < args.length; i++) {
+			if (args[i].equals("cube"))
+				convertCube(dir);
+			else if (args[i].equals("sphere") && i + 3 < args.length) {
+				convertSphere(dir, Double.parseDouble(args[i + 1]),
+						Integer.parseInt(args[i + 2]), Integer.parseInt(args[i + 3]));
+				i += 3;
+			}
+			else {
+				System.err.println("Unknown mesh: " + args[i]);
+				System.exit(1);
+			}
+		}
+	}
+
+	private static void convertCube(File dir) throws IOException {
+		convert(Cube.getSharedMesh(), null, new File(dir, "cube.mesh"));
+	}
+
+	private static void convertSphere(File dir, double r, int lats, int longs) throws IOException {
+		for (int level = 0; level < Sphere.levelCount(longs); level++) {
+			int levelLats = Sphere.levelLats(lats, level);
+			int levelLongs = Sphere.levelLongs(longs, level);
+			String name = String.format(Locale.US, "sphere_%s_%dx%d.mesh", r, levelLats, levelLongs);
+			convert(Sphere.createSphere(r, levelLats, levelLongs),
+					Sphere.createSphere(r, levelLats, levelLongs, false), new File(dir, name));
+		}
+	}
+
+	// unoptimized is the same mesh in its original order, or null
+	private static void convert(Mesh mesh, Mesh unoptimized, File file) throws IOException {
+		MeshFile.write(mesh, file);
+
+		Mesh copy = MeshFile.map(file);
+		if (copy.getVertexCount() != mesh.getVertexCount() || copy.getIndexCount() != mesh.getIndexCount()
+				|| copy.getLayout().getStride() != mesh.getLayout().getStride())
+			throw new IOException(file + " does not read back as it was written");
+
+		System.out.printf(Locale.US, "%-28s %7d vertices %8d indices %9d bytes",
+				file.getName(), mesh.getVertexCount(), mesh.getIndexCount(), file.length());
+		if (mesh.getIndexCount() > 0) {
+			VertexCacheAnalyzer after = new VertexCacheAnalyzer(CACHE_SIZE, true);
+			after.analyze(mesh);
+			if (unoptimized != null) {
+				VertexCacheAnalyzer before = new VertexCacheAnalyzer(CACHE_SIZE, true);
+				before.analyze(unoptimized);
+				System.out.printf(Locale.US, "  ACMR %.3f -> %.3f  ATVR %.3f -> %.3f",
+						before.getACMR(), after.getACMR(), before.getATVR(), after.getATVR());
+			}
+			else
+				System.out.printf(Locale.US, "  ACMR %.3f  ATVR %.3f", after.getACMR(), after.getATVR());
+		}
+		System.out.println();
+	}
+}